@@ -0,0 +1,144 @@
+package fr.upem.matou.server.network;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.upem.matou.shared.network.NetworkCommunication;
+import fr.upem.matou.shared.network.NetworkProtocol;
+import fr.upem.matou.shared.network.Username;
+
+/**
+ * Benchmark of the broadcast fan-out : a MSGBC frame is encoded and forwarded by ServerDataBase.updateStateReadAll to
+ * all the authenticated sessions of a reactor. The reactor is driven by the benchmark thread, and its sessions are
+ * connected to local sockets that are never read.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BroadcastBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	private int sessions;
+
+	private ServerSocketChannel ssc;
+	private ServerDataBase db;
+	private ServerReactor reactor;
+	private final ArrayList<SocketChannel> clients = new ArrayList<>();
+	private final ArrayList<ServerSession> authenticated = new ArrayList<>();
+	private final Username sender = new Username("user0");
+	private final ByteBuffer message = NetworkCommunication.encodeMessage("Hello world !").get();
+
+	/**
+	 * Connects and authenticates all the sessions.
+	 * 
+	 * @throws IOException
+	 *             If a local connection fails.
+	 */
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		ServerSettings.setMaxSessions(sessions);
+		ServerSettings.setMaxUnauthenticated(sessions);
+		ServerSettings.setMaxSessionsPerAddress(0);
+		ServerSettings.setHandshakeTimeout(0);
+
+		ssc = ServerSocketChannel.open();
+		ssc.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		db = new ServerDataBase();
+		reactor = new ServerReactor(db, "benchmark");
+		db.addReactor(reactor);
+
+		for (int i = 0; i < sessions; i++) {
+			SocketChannel client = SocketChannel.open(ssc.getLocalAddress());
+			clients.add(client);
+			reactor.register(ssc.accept());
+
+			DataOutputStream output = new DataOutputStream(Channels.newOutputStream(client));
+			byte[] username = ("user" + i).getBytes(StandardCharsets.UTF_8);
+			output.writeInt(NetworkProtocol.COREQ.ordinal());
+			output.writeInt(username.length);
+			output.write(username);
+			output.flush();
+		}
+
+		for (int i = 0; i < sessions; i++) {
+			Username username = new Username("user" + i);
+			while (!db.sessionOf(username).isPresent()) {
+				reactor.runNow();
+			}
+			authenticated.add(db.sessionOf(username).get());
+		}
+		clearOutboundQueues();
+	}
+
+	/**
+	 * Binds the reactor to the benchmark thread.
+	 * 
+	 * @throws IOException
+	 *             If the reactor fails.
+	 */
+	@Setup(Level.Iteration)
+	public void bind() throws IOException {
+		reactor.runNow();
+	}
+
+	/**
+	 * Closes all the connections.
+	 * 
+	 * @throws IOException
+	 *             If a connection cannot be closed.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		for (SocketChannel client : clients) {
+			client.close();
+		}
+		ssc.close(); // The loop of the reactor was never started : its selector is released with the fork
+	}
+
+	/*
+	 * Releases all the frames queued by the sessions (as if they were written).
+	 */
+	private void clearOutboundQueues() {
+		for (ServerSession session : authenticated) {
+			session.getOutboundQueue().clear();
+		}
+	}
+
+	/**
+	 * Encodes a MSGBC frame, forwards it to all the sessions, then releases it from all the outbound queues.
+	 */
+	@Benchmark
+	public void updateStateReadAll() {
+		SharedFrame frame = SharedFrame.allocate();
+		ServerCommunication.addRequestMSGBC(frame.getEncodingBuffer(), sender, message.duplicate());
+		db.updateStateReadAll(frame);
+		clearOutboundQueues();
+	}
+
+}
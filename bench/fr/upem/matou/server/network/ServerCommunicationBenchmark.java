@@ -0,0 +1,88 @@
+package fr.upem.matou.server.network;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.upem.matou.shared.network.NetworkCommunication;
+import fr.upem.matou.shared.network.Username;
+
+/**
+ * Benchmarks of the request encoders and of the string decoder of the server.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ServerCommunicationBenchmark {
+
+	@Param({ "16", "128", "512" })
+	private int messageSize;
+
+	private final Username username = new Username("benchmark");
+	private ByteBuffer bbWrite;
+	private ByteBuffer bbEncoded; // Encoded message in read mode
+
+	/**
+	 * Prepares the buffers and the message of the given size.
+	 */
+	@Setup
+	public void setup() {
+		StringBuilder builder = new StringBuilder(messageSize);
+		for (int i = 0; i < messageSize; i++) {
+			builder.append((char) ('a' + i % 26));
+		}
+		bbWrite = ByteBuffer.allocateDirect(ServerCommunication.getServerBroadcastBufferSize());
+		bbEncoded = NetworkCommunication.encodeMessage(builder.toString()).get();
+	}
+
+	/**
+	 * Encodes a MSGBC request.
+	 * 
+	 * @return The encoding buffer.
+	 */
+	@Benchmark
+	public ByteBuffer addRequestMSGBC() {
+		bbWrite.clear();
+		bbEncoded.rewind();
+		ServerCommunication.addRequestMSGBC(bbWrite, username, bbEncoded);
+		return bbWrite;
+	}
+
+	/**
+	 * Encodes a CONOTIF request.
+	 * 
+	 * @return The encoding buffer.
+	 */
+	@Benchmark
+	public ByteBuffer addRequestCONOTIF() {
+		bbWrite.clear();
+		ServerCommunication.addRequestCONOTIF(bbWrite, username);
+		return bbWrite;
+	}
+
+	/**
+	 * Decodes a message.
+	 * 
+	 * @return The decoded message.
+	 */
+	@Benchmark
+	public String decodeString() {
+		bbEncoded.rewind();
+		return ServerCommunication.decodeString(bbEncoded);
+	}
+
+}
@@ -0,0 +1,67 @@
+package fr.upem.matou.shared.network;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the message validation and encoding.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NetworkCommunicationBenchmark {
+
+	@Param({ "16", "128", "512" })
+	private int messageSize;
+
+	private String message;
+
+	/**
+	 * Prepares a message of the given size.
+	 */
+	@Setup
+	public void setup() {
+		StringBuilder builder = new StringBuilder(messageSize);
+		for (int i = 0; i < messageSize; i++) {
+			builder.append((char) ('a' + i % 26));
+		}
+		message = builder.toString();
+	}
+
+	/**
+	 * Checks the validity of the message.
+	 * 
+	 * @return The validity of the message.
+	 */
+	@Benchmark
+	public boolean checkMessageValidity() {
+		return NetworkCommunication.checkMessageValidity(message);
+	}
+
+	/**
+	 * Encodes the message.
+	 * 
+	 * @return The encoded message.
+	 */
+	@Benchmark
+	public Optional<ByteBuffer> encodeMessage() {
+		return NetworkCommunication.encodeMessage(message);
+	}
+
+}
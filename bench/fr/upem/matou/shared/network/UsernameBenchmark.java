@@ -0,0 +1,71 @@
+package fr.upem.matou.shared.network;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the username comparison, used by every lookup of the server database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UsernameBenchmark {
+
+	private Username username;
+	private Username sameIgnoringCase;
+	private Username other;
+
+	/**
+	 * Prepares the usernames.
+	 */
+	@Setup
+	public void setup() {
+		username = new Username("Benchmark_User");
+		sameIgnoringCase = new Username("benchmark_user");
+		other = new Username("Benchmark_Usex");
+	}
+
+	/**
+	 * Compares two equal usernames.
+	 * 
+	 * @return The result of the comparison.
+	 */
+	@Benchmark
+	public boolean equalsSame() {
+		return username.equals(sameIgnoringCase);
+	}
+
+	/**
+	 * Compares two different usernames.
+	 * 
+	 * @return The result of the comparison.
+	 */
+	@Benchmark
+	public boolean equalsOther() {
+		return username.equals(other);
+	}
+
+	/**
+	 * Computes the hash code of a username.
+	 * 
+	 * @return The hash code.
+	 */
+	@Benchmark
+	public int hashCodeUsername() {
+		return username.hashCode();
+	}
+
+}
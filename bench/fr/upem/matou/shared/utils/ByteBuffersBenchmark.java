@@ -0,0 +1,59 @@
+package fr.upem.matou.shared.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the buffer utilities.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ByteBuffersBenchmark {
+
+	@Param({ "64", "1024" })
+	private int size;
+
+	private ByteBuffer target;
+	private ByteBuffer source;
+
+	/**
+	 * Prepares a source buffer of the given size (in write mode).
+	 */
+	@Setup
+	public void setup() {
+		target = ByteBuffer.allocateDirect(size);
+		source = ByteBuffer.allocateDirect(size);
+		while (source.hasRemaining()) {
+			source.put((byte) source.position());
+		}
+	}
+
+	/**
+	 * Appends the source buffer to the target buffer.
+	 * 
+	 * @return The target buffer.
+	 */
+	@Benchmark
+	public ByteBuffer append() {
+		target.clear();
+		ByteBuffers.append(target, source);
+		return target;
+	}
+
+}
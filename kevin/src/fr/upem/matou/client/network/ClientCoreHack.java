@@ -20,10 +20,12 @@ import fr.upem.matou.shared.network.Username;
 public class ClientCoreHack implements Closeable {
 
 	private final SocketChannel sc;
+	private final ClientReader reader;
 
 	public ClientCoreHack(String hostname, int port) throws IOException {
 		InetSocketAddress address = new InetSocketAddress(hostname, port);
 		sc = SocketChannel.open(address);
+		reader = new ClientReader(sc, NetworkProtocol.Communicator.SERVER);
 	}
 
 	@Override
@@ -32,26 +34,26 @@ public class ClientCoreHack implements Closeable {
 	}
 
 	private void readServerAnswer() throws IOException {
-		NetworkProtocol protocol = ClientCommunication.receiveRequestType(sc);
+		NetworkProtocol protocol = ClientCommunication.receiveRequestType(reader);
 		System.out.println("PROTOCOL : " + protocol);
 
 		switch (protocol) {
 
 		case ERROR: {
-			ErrorType type = ClientCommunication.receiveRequestERROR(sc);
+			ErrorType type = ClientCommunication.receiveRequestERROR(reader);
 			System.out.println("ERROR : " + type);
 
 			break;
 		}
 
 		case CORES: {
-			boolean acceptation = ClientCommunication.receiveRequestCORES(sc);
+			boolean acceptation = ClientCommunication.receiveRequestCORES(reader);
 			System.out.println("ACCEPTATION : " + acceptation);
 			break;
 		}
 
 		case MSGBC: {
-			Message message = ClientCommunication.receiveRequestMSGBC(sc);
+			Message message = ClientCommunication.receiveRequestMSGBC(reader);
 			System.out.println("USERNAME : " + message.getUsername());
 			System.out.println("MESSAGE : " + message.getContent());
 
@@ -59,28 +61,28 @@ public class ClientCoreHack implements Closeable {
 		}
 
 		case CONOTIF: {
-			Username connected = ClientCommunication.receiveRequestCONOTIF(sc);
+			Username connected = ClientCommunication.receiveRequestCONOTIF(reader);
 			System.out.println("USERNAME : " + connected);
 
 			break;
 		}
 
 		case DISCONOTIF: {
-			Username disconnected = ClientCommunication.receiveRequestDISCONOTIF(sc);
+			Username disconnected = ClientCommunication.receiveRequestDISCONOTIF(reader);
 			System.out.println("USERNAME : " + disconnected);
 
 			break;
 		}
 
 		case PVCOREQNOTIF: {
-			Username requester = ClientCommunication.receiveRequestPVCOREQNOTIF(sc);
+			Username requester = ClientCommunication.receiveRequestPVCOREQNOTIF(reader);
 			System.out.println("USERNAME : " + requester);
 
 			break;
 		}
 
 		case PVCOESTASRC: {
-			SourceConnectionData sourceInfo = ClientCommunication.receiveRequestPVCOESTASRC(sc);
+			SourceConnectionData sourceInfo = ClientCommunication.receiveRequestPVCOESTASRC(reader);
 			Username username = sourceInfo.getUsername();
 			InetAddress address = sourceInfo.getAddress();
 			System.out.println("USERNAME : " + username);
@@ -90,7 +92,7 @@ public class ClientCoreHack implements Closeable {
 		}
 
 		case PVCOESTADST: {
-			DestinationConnectionData destinationInfo = ClientCommunication.receiveRequestPVCOESTADST(sc);
+			DestinationConnectionData destinationInfo = ClientCommunication.receiveRequestPVCOESTADST(reader);
 			Username username = destinationInfo.getUsername();
 			InetAddress address = destinationInfo.getAddress();
 			int portMessage = destinationInfo.getPortMessage();
@@ -61,6 +61,40 @@ public class ClientMatou {
 			Logger.activateHeader(activation);
 			break;
 		}
+		case "MAPPED_FILES": {
+			boolean activation = Boolean.parseBoolean(argument);
+			ClientCore.activateMappedFiles(activation);
+			break;
+		}
+		case "MULTIPLEXING": {
+			boolean activation = Boolean.parseBoolean(argument);
+			ClientCore.activateMultiplexing(activation);
+			break;
+		}
+		case "FILE_STREAMS": {
+			int streams = Integer.parseInt(argument.trim());
+			ClientCore.setFileStreams(streams);
+			break;
+		}
+		case "FILE_WORKERS": {
+			int workers = Integer.parseInt(argument.trim());
+			ClientCore.setFileWorkers(workers);
+			break;
+		}
+		case "FILE_RATE_LIMIT": {
+			long rate = Long.parseLong(argument.trim());
+			ClientCore.setFileRateLimit(rate);
+			break;
+		}
+		case "FILE_PROGRESS_PERIOD": {
+			long period = Long.parseLong(argument.trim());
+			ClientCore.setFileProgressPeriod(period);
+			break;
+		}
+		case "FILE_CHECKSUM": {
+			ClientCore.setFileChecksum(argument);
+			break;
+		}
 		default:
 			break;
 		}
@@ -0,0 +1,177 @@
+package fr.upem.matou.client;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+import fr.upem.matou.client.network.LoadGenerator;
+import fr.upem.matou.shared.logger.Logger;
+
+/**
+ * Main class of the load generator of the server Matou.
+ */
+public class LoadMatou {
+
+	private LoadMatou() {
+	}
+
+	private static void usage() {
+		System.err.println("Usage : [options] host port clients" + "\nAvailable options :"
+				+ "\n-help : displays all options"
+				+ "\n-threads n : runs the clients on n threads (default : number of processors)"
+				+ "\n-rate n : sends n messages per second, all clients together (default : 100)"
+				+ "\n-sizes size:weight,... : mix of message sizes in bytes (default : 16:70,128:25,512:5)"
+				+ "\n-warmup s : sends messages during s seconds before the measure (default : 5)"
+				+ "\n-duration s : measures during s seconds (default : 30)"
+				+ "\n-handshakes n : connects at most n clients at the same time (default : 8)"
+				+ "\n-prefix name : prefix of the usernames of the clients (default : load)"
+				+ "\n-logger path : redirects the normal output of the logger to the given path"
+				+ "\n-exception path : redirects the exception output of the logger to the given path"
+				+ "\nThe server must accept \"clients\" clients and at least \"n\" unauthenticated clients.");
+	}
+
+	/*
+	 * Parses a mix of message sizes ("size:weight,size:weight...") and gives it to the generator.
+	 */
+	private static void parseSizes(LoadGenerator generator, String argument) {
+		String[] entries = argument.split(",");
+		int[] sizes = new int[entries.length];
+		int[] weights = new int[entries.length];
+		for (int i = 0; i < entries.length; i++) {
+			String[] entry = entries[i].split(":");
+			if (entry.length != 2) {
+				throw new IllegalArgumentException("Invalid message size : " + entries[i]);
+			}
+			sizes[i] = Integer.parseInt(entry[0].trim());
+			weights[i] = Integer.parseInt(entry[1].trim());
+		}
+		generator.setMessageSizes(sizes, weights);
+	}
+
+	/**
+	 * Main method of the load generator program.
+	 *
+	 * @param args
+	 *            Command line arguments
+	 * @throws IOException
+	 *             If an I/O error occurs during initialization (parsing the command line arguments)
+	 * @throws InterruptedException
+	 *             If the main thread is interrupted
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+
+		Integer threads = null; // Optional arguments
+		Double rate = null;
+		String sizes = null;
+		Integer handshakes = null;
+		String prefix = null;
+		long warmup = 5;
+		long duration = 30;
+
+		int opt;
+		try {
+			for (opt = 0; opt < args.length; opt++) {
+
+				if (!args[opt].startsWith("-")) {
+					break;
+				}
+
+				switch (args[opt]) {
+
+				case "-threads":
+					threads = Integer.parseInt(args[++opt]);
+					break;
+
+				case "-rate":
+					rate = Double.parseDouble(args[++opt]);
+					break;
+
+				case "-sizes":
+					sizes = args[++opt];
+					break;
+
+				case "-warmup":
+					warmup = Long.parseLong(args[++opt]);
+					break;
+
+				case "-duration":
+					duration = Long.parseLong(args[++opt]);
+					break;
+
+				case "-handshakes":
+					handshakes = Integer.parseInt(args[++opt]);
+					break;
+
+				case "-prefix":
+					prefix = args[++opt];
+					break;
+
+				case "-logger": {
+					PrintStream ps = new PrintStream(args[++opt]);
+					Logger.attachOutput(ps);
+					break;
+				}
+
+				case "-exception": {
+					PrintStream ps = new PrintStream(args[++opt]);
+					Logger.attachException(ps);
+					break;
+				}
+
+				case "-help": {
+					usage();
+					return;
+				}
+
+				default:
+					System.err.println("Unknown option : " + args[opt]);
+					usage();
+					return;
+
+				}
+			}
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+			System.err.println("Invalid option : " + e);
+			usage();
+			return;
+		}
+		// Now "opt" is the first index of non optional arguments
+
+		if (args.length - opt != 3) {
+			// Incorrect number of remaining arguments
+			usage();
+			return;
+		}
+
+		LoadGenerator generator;
+		try {
+			generator = new LoadGenerator(args[opt], Integer.parseInt(args[opt + 1]), Integer.parseInt(args[opt + 2]));
+			if (threads != null) {
+				generator.setThreads(threads);
+			}
+			if (rate != null) {
+				generator.setRate(rate);
+			}
+			if (sizes != null) {
+				parseSizes(generator, sizes);
+			}
+			if (handshakes != null) {
+				generator.setHandshakes(handshakes);
+			}
+			if (prefix != null) {
+				generator.setPrefix(prefix);
+			}
+		} catch (IllegalArgumentException e) { // Includes NumberFormatException
+			System.err.println(e.toString());
+			usage();
+			return;
+		}
+
+		try {
+			generator.run(warmup * 1000, duration * 1000, System.out);
+		} catch (IOException e) {
+			Logger.error(e.toString());
+			Logger.exception(e);
+		}
+
+	}
+}
@@ -1,14 +1,8 @@
 package fr.upem.matou.client.network;
 
 import static fr.upem.matou.shared.logger.Logger.formatNetworkData;
-import static java.nio.file.StandardOpenOption.CREATE;
-import static java.nio.file.StandardOpenOption.READ;
-import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
-import static java.nio.file.StandardOpenOption.WRITE;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
@@ -19,36 +13,203 @@ import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Optional;
+import java.util.zip.Checksum;
 
 import fr.upem.matou.shared.logger.Logger;
 import fr.upem.matou.shared.network.ErrorType;
+import fr.upem.matou.shared.network.FrameDecoder;
 import fr.upem.matou.shared.network.NetworkCommunication;
 import fr.upem.matou.shared.network.NetworkProtocol;
+import fr.upem.matou.shared.network.NetworkProtocol.Communicator;
 import fr.upem.matou.shared.network.Username;
 
 /*
  * This class consists only of static methods. These methods are used by the client to ensure that communications meet
  * the protocol.
  * 
- * All "sendRequest" methods check arguments validity and return false if at least one argument is not valid.
+ * All "sendRequest" methods check arguments validity and return false if at least one argument is not valid. The
+ * requests are assembled and written by a ClientWriter ; the "write" methods are kept for crash tests only.
  * 
- * All "receiveRequest" methods throw an IOException if the SocketChannel is closed.
+ * All "receiveRequest" methods read the last request of a ClientReader. Reading a request throws an IOException if
+ * the SocketChannel is closed.
  */
 class ClientCommunication {
 
 	private static final Charset PROTOCOL_CHARSET = NetworkCommunication.getProtocolCharset();
-	private static final int USERNAME_MAX_SIZE = NetworkCommunication.getUsernameMaxSize();
-	private static final int MESSAGE_MAX_SIZE = NetworkCommunication.getMessageMaxSize();
-	private static final int FILENAME_MAX_SIZE = NetworkCommunication.getFilenameMaxSize();
-	private static final int CHUNK_SIZE = NetworkCommunication.getFileChunkSize();
 
-	private static final Path FILE_PATH = Paths.get("./files/");
-	private static final String FILENAME_SEPARATOR = "_";
+	private static final long PART_MIN_SIZE = 1024 * 1024; // Smaller files are not split
+	private static final int MAX_FILE_STREAMS = 16;
+	private static final int READ_MIN_SIZE = 4096;
+	private static final int WRITE_MIN_SIZE = 4096;
+	private static final int FILE_CHUNK_SIZE = 64 * 1024; // Checked file contents are read and written in chunks
+	private static final int FILE_TRANSFER_SIZE = 1024 * 1024; // Other file contents are transferred by steps
+
+	private static volatile boolean mappedFiles = false;
+	private static volatile boolean multiplexing = false;
+	private static volatile int fileStreams = 1;
+	private static volatile int fileWorkers = 4;
+	private static volatile long fileRateLimit = 0;
+	private static volatile long fileProgressPeriod = 2000;
+	private static volatile FileChecksum fileChecksum = FileChecksum.NONE;
 
 	private ClientCommunication() {
 	}
 
+	/*
+	 * Enables or disables the reception of the files through memory mappings.
+	 */
+	static void activateMappedFiles(boolean activation) {
+		mappedFiles = activation;
+	}
+
+	/*
+	 * Enables or disables the multiplexed private connections, established by this client as a source.
+	 */
+	static void activateMultiplexing(boolean activation) {
+		multiplexing = activation;
+	}
+
+	/*
+	 * Returns true if this client opens multiplexed private connections as a source.
+	 */
+	static boolean isMultiplexing() {
+		return multiplexing;
+	}
+
+	/*
+	 * Sets the number of file connections opened for each private connection.
+	 */
+	static void setFileStreams(int streams) {
+		if (streams < 1 || streams > MAX_FILE_STREAMS) {
+			throw new IllegalArgumentException("Invalid number of file streams : " + streams);
+		}
+		fileStreams = streams;
+	}
+
+	/*
+	 * Returns the number of file connections opened for each private connection.
+	 */
+	static int getFileStreams() {
+		return fileStreams;
+	}
+
+	/*
+	 * Sets the number of files (or parts of files) uploaded at the same time by a client.
+	 */
+	static void setFileWorkers(int workers) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("Invalid number of file workers : " + workers);
+		}
+		fileWorkers = workers;
+	}
+
+	/*
+	 * Returns the number of files (or parts of files) uploaded at the same time by a client.
+	 */
+	static int getFileWorkers() {
+		return fileWorkers;
+	}
+
+	/*
+	 * Sets the limit of all the file uploads of a client together, in bytes per second (0 for no limit).
+	 */
+	static void setFileRateLimit(long rate) {
+		if (rate < 0) {
+			throw new IllegalArgumentException("Invalid file rate limit : " + rate);
+		}
+		fileRateLimit = rate;
+	}
+
+	/*
+	 * Returns the limit of all the file uploads of a client together, in bytes per second (0 for no limit).
+	 */
+	static long getFileRateLimit() {
+		return fileRateLimit;
+	}
+
+	/*
+	 * Sets the period of the progress of the file uploads, in milliseconds (0 to never display the progress).
+	 */
+	static void setFileProgressPeriod(long period) {
+		if (period < 0) {
+			throw new IllegalArgumentException("Invalid file progress period : " + period);
+		}
+		fileProgressPeriod = period;
+	}
+
+	/*
+	 * Returns the period of the progress of the file uploads, in milliseconds (0 to never display the progress).
+	 */
+	static long getFileProgressPeriod() {
+		return fileProgressPeriod;
+	}
+
+	/*
+	 * Sets the checksum computed during the file uploads. The received files are checked with the checksum chosen by
+	 * their sender.
+	 */
+	static void setFileChecksum(FileChecksum type) {
+		fileChecksum = type;
+	}
+
+	/*
+	 * Returns the maximum number of file connections accepted for each private connection.
+	 */
+	static int getMaxFileStreams() {
+		return MAX_FILE_STREAMS;
+	}
+
+	/*
+	 * Returns the size of a client read buffer. A read buffer can hold at least one request of any type.
+	 */
+	static int getClientReadBufferSize(Communicator source) {
+		return Math.max(READ_MIN_SIZE, NetworkProtocol.getMaxRequestSize(source, Communicator.CLIENT));
+	}
+
+	/*
+	 * Returns the size of a client write buffer. A write buffer can hold at least one request of any type.
+	 */
+	static int getClientWriteBufferSize(Communicator target) {
+		return Math.max(WRITE_MIN_SIZE, NetworkProtocol.getMaxRequestSize(Communicator.CLIENT, target));
+	}
+
+	/*
+	 * Returns the size of the chunks through which the checked file contents are read and written.
+	 */
+	static int getFileChunkSize() {
+		return FILE_CHUNK_SIZE;
+	}
+
+	/*
+	 * Returns the maximum size of the file contents transferred by the system at once, so that the uploads can be
+	 * limited and followed.
+	 */
+	static int getFileTransferSize() {
+		return FILE_TRANSFER_SIZE;
+	}
+
+	/*
+	 * Accepts a pending connection to the given address. All other pending connections are refused.
+	 * 
+	 * The ServerSocketChannel stays open after this call.
+	 */
+	static SocketChannel acceptNextConnection(ServerSocketChannel ssc, InetAddress address) throws IOException {
+		SocketChannel pv;
+		while (true) {
+			pv = ssc.accept();
+			InetAddress connected = ((InetSocketAddress) pv.getRemoteAddress()).getAddress();
+			if (!address.equals(connected)) { // the accepted address is not the expected address
+				Logger.debugNetworkData(pv, "CONNECTION REFUSED");
+				NetworkCommunication.silentlyClose(pv);
+				continue;
+			}
+			Logger.debugNetworkData(pv, "CONNECTION ACCEPTED");
+			return pv;
+		}
+	}
+
 	/*
 	 * Accepts a pending connection to the given address. All other pending connections are refused.
 	 * 
@@ -56,18 +217,7 @@ class ClientCommunication {
 	 */
 	static SocketChannel acceptConnection(ServerSocketChannel ssc, InetAddress address) throws IOException {
 		try (ServerSocketChannel listening = ssc) {
-			SocketChannel pv;
-			while (true) {
-				pv = ssc.accept();
-				InetAddress connected = ((InetSocketAddress) pv.getRemoteAddress()).getAddress();
-				if (!address.equals(connected)) { // the accepted address is not the expected address
-					Logger.debug(formatNetworkData(pv, "CONNECTION REFUSED"));
-					NetworkCommunication.silentlyClose(pv);
-					continue;
-				}
-				Logger.debug(formatNetworkData(pv, "CONNECTION ACCEPTED"));
-				return pv;
-			}
+			return acceptNextConnection(ssc, address);
 		} // close the ssc correctly
 	}
 
@@ -76,7 +226,9 @@ class ClientCommunication {
 	 */
 	private static void writeFully(SocketChannel sc, ByteBuffer bb) throws IOException {
 		bb.flip();
-		sc.write(bb);
+		while (bb.hasRemaining()) {
+			sc.write(bb);
+		}
 	}
 
 	/*
@@ -97,15 +249,6 @@ class ClientCommunication {
 		writeFully(sc, bb);
 	}
 
-	/*
-	 * Writes a long.
-	 */
-	static void writeLong(SocketChannel sc, long value) throws IOException {
-		ByteBuffer bb = ByteBuffer.allocate(Long.BYTES);
-		bb.putLong(value);
-		writeFully(sc, bb);
-	}
-
 	/*
 	 * Writes an encoded string.
 	 * 
@@ -129,106 +272,257 @@ class ClientCommunication {
 	}
 
 	/*
-	 * Writes file by chunks.
+	 * Adds a request with a single string argument to the buffer. The encoded string is not modified.
 	 */
-	private static void writeFileChunks(SocketChannel sc, Path path) throws IOException {
-		Logger.debug(formatNetworkData(sc, "FILE UPLOADING START : " + path));
-		try (InputStream is = Files.newInputStream(path, READ)) {
-			byte[] chunk = new byte[CHUNK_SIZE];
-			int read = 0;
-			while ((read = is.read(chunk)) != -1) { // Reads and writes by chunks
-				ByteBuffer wrap = ByteBuffer.wrap(chunk, 0, read);
-				sc.write(wrap);
-			}
+	private static boolean addRequestString(ByteBuffer bbWrite, NetworkProtocol protocol, ByteBuffer encoded) {
+		int size = encoded.remaining();
+		int length = Integer.BYTES + Integer.BYTES + size;
+		if (bbWrite.remaining() < length) {
+			return false;
+		}
+
+		bbWrite.putInt(protocol.ordinal());
+		bbWrite.putInt(size).put(encoded.duplicate());
+
+		return true;
+	}
+
+	/*
+	 * Adds a COREQ request to the buffer. The encoded username is not modified.
+	 * 
+	 * [!] The encoded username must be in read mode (as returned by NetworkCommunication.encodeUsername).
+	 */
+	static boolean addRequestCOREQ(ByteBuffer bbWrite, ByteBuffer encodedUsername) {
+		return addRequestString(bbWrite, NetworkProtocol.COREQ, encodedUsername);
+	}
+
+	/*
+	 * Adds a MSG request to the buffer. The encoded message is not modified.
+	 * 
+	 * [!] The encoded message must be in read mode (as returned by NetworkCommunication.encodeMessage).
+	 */
+	static boolean addRequestMSG(ByteBuffer bbWrite, ByteBuffer encodedMessage) {
+		return addRequestString(bbWrite, NetworkProtocol.MSG, encodedMessage);
+	}
+
+	/*
+	 * Adds a PVCOREQ request to the buffer. The encoded username is not modified.
+	 * 
+	 * [!] The encoded username must be in read mode (as returned by NetworkCommunication.encodeUsername).
+	 */
+	static boolean addRequestPVCOREQ(ByteBuffer bbWrite, ByteBuffer encodedUsername) {
+		return addRequestString(bbWrite, NetworkProtocol.PVCOREQ, encodedUsername);
+	}
+
+	/*
+	 * Adds a PVCOACC request to the buffer. The encoded username is not modified.
+	 * 
+	 * [!] The encoded username must be in read mode (as returned by NetworkCommunication.encodeUsername).
+	 */
+	static boolean addRequestPVCOACC(ByteBuffer bbWrite, ByteBuffer encodedUsername) {
+		return addRequestString(bbWrite, NetworkProtocol.PVCOACC, encodedUsername);
+	}
+
+	/*
+	 * Adds a PVCOPORT request to the buffer. The encoded username is not modified.
+	 * 
+	 * [!] The encoded username must be in read mode (as returned by NetworkCommunication.encodeUsername).
+	 */
+	static boolean addRequestPVCOPORT(ByteBuffer bbWrite, ByteBuffer encodedUsername, int portMessage,
+			int portFile) {
+		int sizeUsername = encodedUsername.remaining();
+		int length = Integer.BYTES + Integer.BYTES + sizeUsername + Integer.BYTES + Integer.BYTES;
+		if (bbWrite.remaining() < length) {
+			return false;
+		}
+
+		bbWrite.putInt(NetworkProtocol.PVCOPORT.ordinal());
+		bbWrite.putInt(sizeUsername).put(encodedUsername.duplicate());
+		bbWrite.putInt(portMessage).putInt(portFile);
+
+		return true;
+	}
+
+	/*
+	 * Adds a PVMSG request to the buffer. The encoded message is not modified.
+	 * 
+	 * [!] The encoded message must be in read mode (as returned by NetworkCommunication.encodeMessage).
+	 */
+	static boolean addRequestPVMSG(ByteBuffer bbWrite, ByteBuffer encodedMessage) {
+		return addRequestString(bbWrite, NetworkProtocol.PVMSG, encodedMessage);
+	}
+
+	/*
+	 * Adds a PVFILE request to the buffer, without the content of the file. The encoded file name is not modified. If
+	 * the type of checksum is not NONE, a PVFILECHECKED request is added instead : its content is followed by its
+	 * checksum.
+	 * 
+	 * [!] The encoded file name must be in read mode (as returned by NetworkCommunication.encodePath).
+	 */
+	static boolean addRequestPVFILE(ByteBuffer bbWrite, ByteBuffer encodedFilename, long totalSize,
+			FileChecksum type) {
+		boolean checked = type != FileChecksum.NONE;
+		int sizeFilename = encodedFilename.remaining();
+		int length = Integer.BYTES + Integer.BYTES + sizeFilename + Long.BYTES + (checked ? Byte.BYTES : 0);
+		if (bbWrite.remaining() < length) {
+			return false;
 		}
-		Logger.debug(formatNetworkData(sc, "FILE UPLOADING END : " + path));
+
+		bbWrite.putInt((checked ? NetworkProtocol.PVFILECHECKED : NetworkProtocol.PVFILE).ordinal());
+		bbWrite.putInt(sizeFilename).put(encodedFilename.duplicate());
+		bbWrite.putLong(totalSize);
+		if (checked) {
+			bbWrite.put((byte) type.ordinal());
+		}
+
+		return true;
+	}
+
+	/*
+	 * Adds a request that describes a part of a file to the buffer. The encoded file name is not modified.
+	 */
+	private static boolean addRequestFileRange(ByteBuffer bbWrite, NetworkProtocol protocol, int transferId,
+			ByteBuffer encodedFilename, long totalSize, long offset, long size) {
+		int sizeFilename = encodedFilename.remaining();
+		int length = Integer.BYTES + Integer.BYTES + Integer.BYTES + sizeFilename + Long.BYTES * 3;
+		if (bbWrite.remaining() < length) {
+			return false;
+		}
+
+		bbWrite.putInt(protocol.ordinal());
+		bbWrite.putInt(transferId);
+		bbWrite.putInt(sizeFilename).put(encodedFilename.duplicate());
+		bbWrite.putLong(totalSize).putLong(offset).putLong(size);
+
+		return true;
+	}
+
+	/*
+	 * Adds a PVFILEPART request to the buffer, without the content of the part. The header announces the type of the
+	 * checksum that follows the content (none if the type is NONE). The encoded file name is not modified.
+	 * 
+	 * [!] The encoded file name must be in read mode (as returned by NetworkCommunication.encodePath).
+	 */
+	static boolean addRequestPVFILEPART(ByteBuffer bbWrite, int transferId, ByteBuffer encodedFilename,
+			long totalSize, long offset, long size, FileChecksum type) {
+		int length = Integer.BYTES * 3 + encodedFilename.remaining() + Long.BYTES * 3 + Byte.BYTES;
+		if (bbWrite.remaining() < length) {
+			return false;
+		}
+
+		addRequestFileRange(bbWrite, NetworkProtocol.PVFILEPART, transferId, encodedFilename, totalSize, offset, size);
+		bbWrite.put((byte) type.ordinal());
+
+		return true;
+	}
+
+	/*
+	 * Adds a PVFILERESUME request to the buffer. The encoded file name is not modified.
+	 * 
+	 * [!] The encoded file name must be in read mode (as returned by NetworkCommunication.encodePath).
+	 */
+	static boolean addRequestPVFILERESUME(ByteBuffer bbWrite, int transferId, ByteBuffer encodedFilename,
+			long totalSize, long offset, long size) {
+		return addRequestFileRange(bbWrite, NetworkProtocol.PVFILERESUME, transferId, encodedFilename, totalSize,
+				offset, size);
+	}
+
+	/*
+	 * Adds a PVFILECHECKSUM request to the buffer.
+	 */
+	static boolean addRequestPVFILECHECKSUM(ByteBuffer bbWrite, FileChecksum type, long value) {
+		int length = Integer.BYTES + Byte.BYTES + Long.BYTES;
+		if (bbWrite.remaining() < length) {
+			return false;
+		}
+
+		bbWrite.putInt(NetworkProtocol.PVFILECHECKSUM.ordinal());
+		bbWrite.put((byte) type.ordinal());
+		bbWrite.putLong(value);
+
+		return true;
 	}
 
 	/*
 	 * Sends a COREQ request.
 	 */
-	static boolean sendRequestCOREQ(SocketChannel sc, String username) throws IOException {
+	static boolean sendRequestCOREQ(ClientWriter writer, String username) throws IOException {
 		Optional<ByteBuffer> optional = NetworkCommunication.encodeUsername(username);
 		if (!optional.isPresent()) {
 			return false;
 		}
-		writeProtocol(sc, NetworkProtocol.COREQ);
-		writeString(sc, optional.get());
-		return true;
+		ByteBuffer encoded = optional.get();
+		return writer.send(bb -> addRequestCOREQ(bb, encoded));
 	}
 
 	/*
 	 * Sends a MSG request.
 	 */
-	static boolean sendRequestMSG(SocketChannel sc, String message) throws IOException {
+	static boolean sendRequestMSG(ClientWriter writer, String message) throws IOException {
 		Optional<ByteBuffer> optional = NetworkCommunication.encodeMessage(message);
 		if (!optional.isPresent()) {
 			return false;
 		}
-		writeProtocol(sc, NetworkProtocol.MSG);
-		writeString(sc, optional.get());
-		return true;
+		ByteBuffer encoded = optional.get();
+		return writer.send(bb -> addRequestMSG(bb, encoded));
 	}
 
 	/*
 	 * Sends a PVCOREQ request.
 	 */
-	static boolean sendRequestPVCOREQ(SocketChannel sc, String username) throws IOException {
+	static boolean sendRequestPVCOREQ(ClientWriter writer, String username) throws IOException {
 		Optional<ByteBuffer> optional = NetworkCommunication.encodeUsername(username);
 		if (!optional.isPresent()) {
 			return false;
 		}
-		writeProtocol(sc, NetworkProtocol.PVCOREQ);
-		writeString(sc, optional.get());
-		return true;
+		ByteBuffer encoded = optional.get();
+		return writer.send(bb -> addRequestPVCOREQ(bb, encoded));
 	}
 
 	/*
 	 * Sends a PVCOACC request.
 	 */
-	static boolean sendRequestPVCOACC(SocketChannel sc, String username) throws IOException {
+	static boolean sendRequestPVCOACC(ClientWriter writer, String username) throws IOException {
 		Optional<ByteBuffer> optional = NetworkCommunication.encodeUsername(username);
 		if (!optional.isPresent()) {
 			return false;
 		}
-		writeProtocol(sc, NetworkProtocol.PVCOACC);
-		writeString(sc, optional.get());
-		return true;
+		ByteBuffer encoded = optional.get();
+		return writer.send(bb -> addRequestPVCOACC(bb, encoded));
 	}
 
 	/*
 	 * Sends a PVCOPORT request.
 	 */
-	static boolean sendRequestPVCOPORT(SocketChannel sc, String username, int portMessage, int portFile)
+	static boolean sendRequestPVCOPORT(ClientWriter writer, String username, int portMessage, int portFile)
 			throws IOException {
 		Optional<ByteBuffer> optional = NetworkCommunication.encodeUsername(username);
 		if (!optional.isPresent()) {
 			return false;
 		}
-		writeProtocol(sc, NetworkProtocol.PVCOPORT);
-		writeString(sc, optional.get());
-		writeInt(sc, portMessage);
-		writeInt(sc, portFile);
-		return true;
+		ByteBuffer encoded = optional.get();
+		return writer.send(bb -> addRequestPVCOPORT(bb, encoded, portMessage, portFile));
 	}
 
 	/*
 	 * Sends a PVMSG request.
 	 */
-	static boolean sendRequestPVMSG(SocketChannel sc, String message) throws IOException {
+	static boolean sendRequestPVMSG(ClientWriter writer, String message) throws IOException {
 		Optional<ByteBuffer> optional = NetworkCommunication.encodeMessage(message);
 		if (!optional.isPresent()) {
 			return false;
 		}
-		writeProtocol(sc, NetworkProtocol.PVMSG);
-		writeString(sc, optional.get());
-		return true;
+		ByteBuffer encoded = optional.get();
+		return writer.send(bb -> addRequestPVMSG(bb, encoded));
 	}
 
 	/*
-	 * Sends a PVFILE request.
+	 * Sends a file on the file connections of a private connection. The content of the file is uploaded by the
+	 * scheduler : if there are several file connections and the file is large enough, it is split into PVFILEPART
+	 * requests sent in parallel, one per connection. Otherwise, it is sent by a PVFILE request.
 	 */
-	static boolean sendRequestPVFILE(SocketChannel sc, Path path) throws IOException {
+	static boolean sendRequestPVFILE(FileTransferScheduler scheduler, Username username,
+			PrivateFileConnections connections, Path path) throws IOException {
 		try {
 
 			long totalSize = Files.size(path);
@@ -236,18 +530,26 @@ class ClientCommunication {
 			if (!optional.isPresent()) {
 				return false;
 			}
-			writeProtocol(sc, NetworkProtocol.PVFILE);
-			writeString(sc, optional.get());
-			writeLong(sc, totalSize);
-
-			new Thread(() -> {
-				try {
-					writeFileChunks(sc, path);
-				} catch (IOException e) {
-					Logger.warning(e.toString());
-				}
-			}, "private file uploader : " + path).start();
+			ByteBuffer encoded = optional.get();
+
+			FileChecksum type = fileChecksum;
+			List<ClientWriter> writers = connections.getWriters();
+			int parts = (int) Math.min(writers.size(), totalSize / PART_MIN_SIZE);
+			if (parts <= 1) {
+				scheduler.submit(username, connections.getWriter(),
+						bb -> addRequestPVFILE(bb, encoded, totalSize, type), path, 0, totalSize, type);
+				return true;
+			}
 
+			int transferId = connections.nextTransferId();
+			long partSize = totalSize / parts;
+			for (int i = 0; i < parts; i++) {
+				long offset = i * partSize;
+				long size = (i == parts - 1) ? totalSize - offset : partSize; // The last part takes the remainder
+				scheduler.submit(username, writers.get(i),
+						bb -> addRequestPVFILEPART(bb, transferId, encoded, totalSize, offset, size, type), path, offset,
+						size, type);
+			}
 			return true;
 
 		} catch (@SuppressWarnings("unused") NoSuchFileException __) {
@@ -257,146 +559,96 @@ class ClientCommunication {
 	}
 
 	/*
-	 * Reads buffer until it is full. If the channel is closed, an IOException is thrown.
-	 */
-	private static void readFully(SocketChannel sc, ByteBuffer bb) throws IOException {
-		while (bb.hasRemaining()) {
-			int read = sc.read(bb);
-			if (read == -1) {
-				throw new IOException("Connection closed");
-			}
-		}
-	}
-
-	/*
-	 * Reads a byte.
+	 * Sends a part of a file asked again by its receiver, through the scheduler. Returns false if the file has changed
+	 * since its first upload.
 	 */
-	private static byte readByte(SocketChannel sc) throws IOException {
-		ByteBuffer bb = ByteBuffer.allocate(Byte.BYTES);
-		readFully(sc, bb);
-		bb.flip();
-		return bb.get();
-	}
-
-	/*
-	 * Reads an integer.
-	 */
-	private static int readInt(SocketChannel sc) throws IOException {
-		ByteBuffer bb = ByteBuffer.allocate(Integer.BYTES);
-		readFully(sc, bb);
-		bb.flip();
-		return bb.getInt();
-	}
+	static boolean sendRequestPVFILEPART(FileTransferScheduler scheduler, Username username,
+			PrivateFileConnections connections, Path path, FileRangeData range) throws IOException {
+		try {
 
-	/*
-	 * Reads a long.
-	 */
-	private static long readLong(SocketChannel sc) throws IOException {
-		ByteBuffer bb = ByteBuffer.allocate(Long.BYTES);
-		readFully(sc, bb);
-		bb.flip();
-		return bb.getLong();
-	}
+			long totalSize = range.getTotalSize();
+			long offset = range.getOffset();
+			long size = range.getSize();
+			if (Files.size(path) != totalSize || offset < 0 || size < 0 || offset > totalSize - size) {
+				return false;
+			}
+			Optional<ByteBuffer> optional = NetworkCommunication.encodePath(path.getFileName());
+			if (!optional.isPresent()) {
+				return false;
+			}
+			ByteBuffer encoded = optional.get();
 
-	/*
-	 * Reads a string of a fixed size.
-	 */
-	private static String readString(SocketChannel sc, int size) throws IOException {
-		ByteBuffer bb = ByteBuffer.allocate(size);
-		readFully(sc, bb);
-		bb.flip();
-		return PROTOCOL_CHARSET.decode(bb).toString();
-	}
+			int transferId = range.getTransferId();
+			FileChecksum type = fileChecksum;
+			scheduler.submit(username, connections.getWriter(),
+					bb -> addRequestPVFILEPART(bb, transferId, encoded, totalSize, offset, size, type), path, offset,
+					size, type);
+			return true;
 
-	/*
-	 * Reads a username (preceded by its size). Size is checked before reading.
-	 */
-	private static Username readUsername(SocketChannel sc) throws IOException {
-		int size = readInt(sc);
-		if (size > USERNAME_MAX_SIZE) {
-			throw new IOException("Protocol violation - Invalid username size : " + size);
+		} catch (@SuppressWarnings("unused") NoSuchFileException __) {
+			Logger.warning("This file does not exist : " + path);
+			return false;
 		}
-		return new Username(readString(sc, size));
 	}
 
 	/*
-	 * Reads a message (preceded by its size). Size is checked before reading.
+	 * Resumes the interrupted receptions of the files sent by a user : the missing parts of each file are asked to the
+	 * sender by PVFILERESUME requests.
 	 */
-	private static String readMessage(SocketChannel sc) throws IOException {
-		int size = readInt(sc);
-		if (size > MESSAGE_MAX_SIZE) {
-			throw new IOException("Protocol violation - Invalid message size : " + size);
-		}
-		return readString(sc, size);
-	}
+	static void sendRequestPVFILERESUME(PrivateFileConnections connections, String username) throws IOException {
+		for (FileDownload download : FileDownload.resumeAll(username, mappedFiles)) {
+			String filename = download.getFilename();
+			long totalSize = download.getTotalSize();
+			Optional<ByteBuffer> optional = NetworkCommunication.encodePath(Paths.get(filename));
+			if (!optional.isPresent()) {
+				download.suspend();
+				continue;
+			}
+			ByteBuffer encoded = optional.get();
 
-	/*
-	 * Reads a file name (preceded by its size). Size is checked before reading.
-	 */
-	private static String readFilename(SocketChannel sc) throws IOException {
-		int size = readInt(sc);
-		if (size > FILENAME_MAX_SIZE) {
-			throw new IOException("Protocol violation - Invalid filename size : " + size);
+			List<long[]> missingRanges = download.getMissingRanges();
+			if (missingRanges.isEmpty()) { // Interrupted before its last checksum
+				Path path = download.complete();
+				Logger.warning("File received without its last checksum (not verified) : " + path);
+				continue;
+			}
+			int transferId = connections.addResumedDownload(download);
+			for (long[] missing : missingRanges) {
+				long offset = missing[0];
+				long size = missing[1];
+				Logger.debug("FILE DOWNLOADING RESUME : " + filename + " @" + offset + "+" + size);
+				connections.getWriter()
+						.send(bb -> addRequestPVFILERESUME(bb, transferId, encoded, totalSize, offset, size));
+			}
 		}
-		return readString(sc, size);
 	}
 
 	/*
-	 * Reads an IP address (preceded by its size). Size is checked before reading.
+	 * Decodes a username argument of the last request.
 	 */
-	private static InetAddress readAddress(SocketChannel sc) throws IOException {
-		int size = readInt(sc);
-		if (size != 4 && size != 16) {
-			throw new IOException("Protocol violation - Invalid address size : " + size);
-		}
-		ByteBuffer bb = ByteBuffer.allocate(size);
-		readFully(sc, bb);
-		bb.flip();
-		byte[] addr = new byte[size];
-		for (int i = 0; i < size; i++) {
-			byte b = bb.get();
-			addr[i] = b;
-		}
-		return InetAddress.getByAddress(addr);
+	private static Username readUsername(FrameDecoder decoder, int argument) {
+		return decoder.getUsername(argument);
 	}
 
 	/*
-	 * Reads a file by chunks and writes it in the file system.
+	 * Decodes a string argument (message or file name) of the last request.
 	 */
-	private static void saveFileChunks(SocketChannel sc, Path path, long totalSize) throws IOException {
-		try (OutputStream os = Files.newOutputStream(path, WRITE, CREATE, TRUNCATE_EXISTING)) {
-			ByteBuffer bb = ByteBuffer.allocate(CHUNK_SIZE);
-			for (long totalRead = 0; totalRead < totalSize;) {
-				long diff = totalSize - totalRead; // remaining bytes to read
-				long capacity = diff <= CHUNK_SIZE ? diff : CHUNK_SIZE; // bytes of the directly next chunk
-				bb.limit((int) capacity);
-				readFully(sc, bb);
-				bb.flip();
-				byte[] chunk = bb.array();
-				int read = bb.remaining();
-				totalRead += read; // updates the number of bytes already read
-				os.write(chunk, 0, read);
-			}
-		}
+	private static String readString(FrameDecoder decoder, int argument) {
+		return decoder.getString(argument);
 	}
 
 	/*
-	 * Receives a protocol type request.
+	 * Receives a protocol type request. The arguments of the request are then available until the next call.
 	 */
-	static NetworkProtocol receiveRequestType(SocketChannel sc) throws IOException {
-		int ordinal = readInt(sc);
-		Optional<NetworkProtocol> protocol = NetworkProtocol.getProtocol(ordinal);
-		if (!protocol.isPresent()) {
-			throw new IOException("Protocol violation - Invalid protocol type : " + ordinal);
-		}
-		return protocol.get();
+	static NetworkProtocol receiveRequestType(ClientReader reader) throws IOException {
+		return reader.readRequest();
 	}
 
 	/*
 	 * Receives an ERROR request.
 	 */
-	static ErrorType receiveRequestERROR(SocketChannel sc) throws IOException {
-		int ordinal = readInt(sc);
+	static ErrorType receiveRequestERROR(ClientReader reader) throws IOException {
+		int ordinal = reader.getDecoder().getInt(0);
 		Optional<ErrorType> error = ErrorType.getError(ordinal);
 		if (!error.isPresent()) {
 			throw new IOException("Protocol violation - Invalid error type : " + ordinal);
@@ -407,87 +659,187 @@ class ClientCommunication {
 	/*
 	 * Receives a CORES request.
 	 */
-	static boolean receiveRequestCORES(SocketChannel sc) throws IOException {
-		byte acceptation = readByte(sc);
+	static boolean receiveRequestCORES(ClientReader reader) {
+		byte acceptation = reader.getDecoder().getByte(0);
 		return acceptation != 0;
 	}
 
 	/*
 	 * Receives a MSGBG request.
 	 */
-	static Message receiveRequestMSGBC(SocketChannel sc) throws IOException {
-		Username username = readUsername(sc);
-		String message = readMessage(sc);
+	static Message receiveRequestMSGBC(ClientReader reader) {
+		FrameDecoder decoder = reader.getDecoder();
+		Username username = readUsername(decoder, 0);
+		String message = readString(decoder, 1);
 		return new Message(username, message);
 	}
 
 	/*
 	 * Receives a CONOTIF request.
 	 */
-	static Username receiveRequestCONOTIF(SocketChannel sc) throws IOException {
-		Username username = readUsername(sc);
-		return username;
+	static Username receiveRequestCONOTIF(ClientReader reader) {
+		return readUsername(reader.getDecoder(), 0);
 	}
 
 	/*
 	 * Receives a DISCONOTIF request.
 	 */
-	static Username receiveRequestDISCONOTIF(SocketChannel sc) throws IOException {
-		Username username = readUsername(sc);
-		return username;
+	static Username receiveRequestDISCONOTIF(ClientReader reader) {
+		return readUsername(reader.getDecoder(), 0);
 	}
 
 	/*
 	 * Receives a PVCOREQNOTIF request.
 	 */
-	static Username receiveRequestPVCOREQNOTIF(SocketChannel sc) throws IOException {
-		Username username = readUsername(sc);
-		return username;
+	static Username receiveRequestPVCOREQNOTIF(ClientReader reader) {
+		return readUsername(reader.getDecoder(), 0);
 	}
 
 	/*
 	 * Receives a PVCOESTASRC request.
 	 */
-	static SourceConnectionData receiveRequestPVCOESTASRC(SocketChannel sc) throws IOException {
-		Username username = readUsername(sc);
-		InetAddress address = readAddress(sc);
+	static SourceConnectionData receiveRequestPVCOESTASRC(ClientReader reader) {
+		FrameDecoder decoder = reader.getDecoder();
+		Username username = readUsername(decoder, 0);
+		InetAddress address = decoder.getAddress(1);
 		return new SourceConnectionData(username, address);
 	}
 
 	/*
 	 * Receives a PVCOESTADST request.
 	 */
-	static DestinationConnectionData receiveRequestPVCOESTADST(SocketChannel sc) throws IOException {
-		Username username = readUsername(sc);
-		InetAddress address = readAddress(sc);
-		int portMessage = readInt(sc);
-		int portFile = readInt(sc);
+	static DestinationConnectionData receiveRequestPVCOESTADST(ClientReader reader) {
+		FrameDecoder decoder = reader.getDecoder();
+		Username username = readUsername(decoder, 0);
+		InetAddress address = decoder.getAddress(1);
+		int portMessage = decoder.getInt(2);
+		int portFile = decoder.getInt(3);
 		return new DestinationConnectionData(username, address, portMessage, portFile);
 	}
 
 	/*
 	 * Receives a PVMSG request.
 	 */
-	static Message receiveRequestPVMSG(SocketChannel sc, Username username) throws IOException {
-		String message = readMessage(sc);
+	static Message receiveRequestPVMSG(ClientReader reader, Username username) {
+		String message = readString(reader.getDecoder(), 0);
 		return new Message(username, message, true);
 	}
 
 	/*
-	 * Receives a PVFILE request.
+	 * Decodes the type of checksum announced by the header of a file (or a part of a file).
+	 */
+	private static FileChecksum readChecksumType(FrameDecoder decoder, int argument) throws IOException {
+		int ordinal = decoder.getByte(argument);
+		Optional<FileChecksum> type = FileChecksum.getChecksum(ordinal);
+		if (!type.isPresent()) {
+			throw new IOException("Protocol violation - Invalid checksum type : " + ordinal);
+		}
+		return type.get();
+	}
+
+	/*
+	 * Receives the PVFILECHECKSUM request that follows the content of a file (or a part of a file), and compares it to
+	 * the checksum computed during the reception with the type announced by the header. The content is not verified if
+	 * the header announced no checksum : no PVFILECHECKSUM request follows it then.
+	 */
+	private static FileIntegrity receiveRequestPVFILECHECKSUM(ClientReader reader, FileChecksum type,
+			Optional<Checksum> checksum) throws IOException {
+		if (!checksum.isPresent()) {
+			return FileIntegrity.UNVERIFIED;
+		}
+		NetworkProtocol protocol = reader.readRequest();
+		if (protocol != NetworkProtocol.PVFILECHECKSUM) {
+			throw new IOException("Protocol violation - Missing file checksum : " + protocol);
+		}
+		FrameDecoder decoder = reader.getDecoder();
+		FileChecksum received = readChecksumType(decoder, 0);
+		long value = decoder.getLong(1);
+		if (received != type) {
+			throw new IOException("Protocol violation - Unexpected checksum type : " + received + " / " + type);
+		}
+		return (checksum.get().getValue() == value) ? FileIntegrity.VERIFIED : FileIntegrity.CORRUPTED;
+	}
+
+	/*
+	 * Receives a PVFILE request, or a PVFILECHECKED request and its checksum. The file is received under a partial name,
+	 * then renamed at once when it is complete. If the reception is interrupted, the partial file is kept to be resumed.
+	 */
+	static ReceivedFileData receiveRequestPVFILE(ClientReader reader, String username) throws IOException {
+		FrameDecoder decoder = reader.getDecoder();
+		String filename = readString(decoder, 0);
+		long totalSize = decoder.getLong(1);
+		SocketChannel sc = reader.getChannel();
+
+		if (totalSize < 0) {
+			throw new IOException("Protocol violation - Invalid file size : " + totalSize);
+		}
+
+		FileChecksum type = (decoder.getProtocol() == NetworkProtocol.PVFILECHECKED) ? readChecksumType(decoder, 2)
+				: FileChecksum.NONE;
+		Optional<Checksum> checksum = type.newChecksum();
+		FileDownload download = FileDownload.create(username, filename, totalSize, mappedFiles);
+		Path path;
+
+		Logger.debugNetworkData(sc, "FILE DOWNLOADING START", filename);
+		try {
+			download.receivePart(reader, filename, totalSize, 0, totalSize, checksum);
+			FileIntegrity integrity = receiveRequestPVFILECHECKSUM(reader, type, checksum);
+			if (integrity == FileIntegrity.CORRUPTED) {
+				Logger.warning(formatNetworkData(sc, "Invalid checksum : " + filename));
+			}
+			path = download.completePart(integrity);
+		} catch (IOException e) {
+			download.suspend();
+			throw e;
+		}
+		Logger.debugNetworkData(sc, "FILE DOWNLOADING END", path);
+
+		return new ReceivedFileData(path, download.getIntegrity());
+	}
+
+	/*
+	 * Receives a PVFILEPART request and its checksum. Returns the received file if this part completes it.
 	 */
-	static Path receiveRequestPVFILE(SocketChannel sc, String username) throws IOException {
-		String filename = readFilename(sc);
-		long totalSize = readLong(sc);
+	static Optional<ReceivedFileData> receiveRequestPVFILEPART(ClientReader reader, String username,
+			PrivateFileConnections connections) throws IOException {
+		FrameDecoder decoder = reader.getDecoder();
+		int transferId = decoder.getInt(0);
+		String filename = readString(decoder, 1);
+		long totalSize = decoder.getLong(2);
+		long offset = decoder.getLong(3);
+		long size = decoder.getLong(4);
+		FileChecksum type = readChecksumType(decoder, 5);
+		SocketChannel sc = reader.getChannel();
 
-		// Ensures creation of a new file
-		Path path = Files.createTempFile(FILE_PATH, username + FILENAME_SEPARATOR, FILENAME_SEPARATOR + filename);
+		Optional<Checksum> checksum = type.newChecksum();
+		FileDownload download = connections.getDownload(transferId, username, filename, totalSize, mappedFiles);
 
-		Logger.debug(formatNetworkData(sc, "FILE DOWNLOADING START : " + path));
-		saveFileChunks(sc, path, totalSize);
-		Logger.debug(formatNetworkData(sc, "FILE DOWNLOADING END : " + path));
+		Logger.debugNetworkData(sc, "FILE PART DOWNLOADING START", filename + " @" + offset);
+		download.receivePart(reader, filename, totalSize, offset, size, checksum);
+		FileIntegrity integrity = receiveRequestPVFILECHECKSUM(reader, type, checksum);
+		if (integrity == FileIntegrity.CORRUPTED) {
+			Logger.warning(formatNetworkData(sc, "Invalid checksum : " + filename + " @" + offset));
+		}
+		Logger.debugNetworkData(sc, "FILE PART DOWNLOADING END", filename + " @" + offset);
+		Path path = download.completePart(integrity);
+		if (path == null) {
+			return Optional.empty();
+		}
+		connections.removeDownload(transferId);
+		return Optional.of(new ReceivedFileData(path, download.getIntegrity()));
+	}
 
-		return path;
+	/*
+	 * Receives a PVFILERESUME request.
+	 */
+	static FileRangeData receiveRequestPVFILERESUME(ClientReader reader) {
+		FrameDecoder decoder = reader.getDecoder();
+		int transferId = decoder.getInt(0);
+		String filename = readString(decoder, 1);
+		long totalSize = decoder.getLong(2);
+		long offset = decoder.getLong(3);
+		long size = decoder.getLong(4);
+		return new FileRangeData(transferId, filename, totalSize, offset, size);
 	}
 
 }
@@ -33,6 +33,107 @@ public class ClientCore implements Closeable {
 		address = new InetSocketAddress(hostname, port);
 	}
 
+	/**
+	 * Enables or disables the reception of the files through memory mappings. When enabled, a received file is
+	 * allocated to its final size, then written through a window of the file mapped in memory. This mode is disabled
+	 * by default.
+	 * 
+	 * @param activation
+	 *            true to enable, false to disable.
+	 */
+	public static void activateMappedFiles(boolean activation) {
+		ClientCommunication.activateMappedFiles(activation);
+	}
+
+	/**
+	 * Sets the number of file connections opened when this client accepts a private connection. With several file
+	 * connections, the large files are sent in parts over all the connections at the same time. The default value is 1
+	 * (no parallel parts).
+	 * 
+	 * The other client must support the parallel parts : it accepts the additional connections and sends its files over
+	 * them too.
+	 * 
+	 * @param streams
+	 *            The number of file connections (between 1 and 16).
+	 * @throws IllegalArgumentException
+	 *             If the number of file connections is not valid.
+	 */
+	public static void setFileStreams(int streams) {
+		ClientCommunication.setFileStreams(streams);
+	}
+
+	/**
+	 * Enables or disables the multiplexed private connections : disabled by default. When enabled, the private
+	 * connections accepted by the other users are established on a single connection, which carries both the messages
+	 * and the files : the messages are sent between the parts of the files, so they are never delayed by a large file.
+	 * The files are then sent on this connection only (no parallel parts).
+	 * 
+	 * @param activation
+	 *            true to enable the multiplexed private connections, false to disable them.
+	 */
+	public static void activateMultiplexing(boolean activation) {
+		ClientCommunication.activateMultiplexing(activation);
+	}
+
+	/**
+	 * Sets the number of private files (or parts of files) uploaded at the same time : 4 by default. The files sent on
+	 * the same file connection are queued and uploaded one after the other, the files sent on different connections are
+	 * uploaded in parallel by this number of workers.
+	 * 
+	 * @param workers
+	 *            The number of workers (at least 1).
+	 * @throws IllegalArgumentException
+	 *             If the number of workers is not valid.
+	 */
+	public static void setFileWorkers(int workers) {
+		ClientCommunication.setFileWorkers(workers);
+	}
+
+	/**
+	 * Limits the rate of all the private file uploads together : no limit by default. The limit can be changed while
+	 * the chat is running, and the uploads to a user or each upload can be limited too.
+	 * 
+	 * @param rate
+	 *            The limit in kibibytes per second, or 0 for no limit.
+	 * @throws IllegalArgumentException
+	 *             If the limit is negative or too large.
+	 */
+	public static void setFileRateLimit(long rate) {
+		if (rate < 0 || rate > Long.MAX_VALUE / 1024) {
+			throw new IllegalArgumentException("Invalid file rate limit : " + rate);
+		}
+		ClientCommunication.setFileRateLimit(rate * 1024);
+	}
+
+	/**
+	 * Sets the period of the progress events of the private file uploads : every 2 seconds by default.
+	 * 
+	 * @param period
+	 *            The period in milliseconds, or 0 to disable the progress events.
+	 * @throws IllegalArgumentException
+	 *             If the period is negative.
+	 */
+	public static void setFileProgressPeriod(long period) {
+		ClientCommunication.setFileProgressPeriod(period);
+	}
+
+	/**
+	 * Sets the checksum computed during the private file uploads : CRC32, ADLER32 or NONE (default). The checksum of
+	 * each file is computed while it is sent, and announced in the header of the file : the receiver computes the same
+	 * checksum while it receives the file, and reports the file as corrupted if they do not match. With NONE, the files
+	 * are transferred by the system without being copied by the client, and are reported as not verified by their
+	 * receiver. NONE is the default since the clients that do not support the checksums cannot receive the files
+	 * announced with a checksum ; the files received with a checksum are verified whatever this setting.
+	 * 
+	 * @param type
+	 *            The name of the checksum.
+	 * @throws IllegalArgumentException
+	 *             If the checksum is not supported.
+	 */
+	public static void setFileChecksum(String type) {
+		ClientCommunication.setFileChecksum(FileChecksum.valueOf(type.trim().toUpperCase()));
+	}
+
 	/**
 	 * Starts a chat with a predefined username. If this username is not available or not valid, the chat session will
 	 * end immediately.
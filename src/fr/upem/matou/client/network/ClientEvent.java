@@ -172,6 +172,105 @@ public interface ClientEvent {
 
 	}
 
+	/**
+	 * Displaying the private file uploads.
+	 */
+	public static class ClientEventShowTransfers implements ClientEvent {
+
+		@Override
+		public boolean execute(ClientSession session) {
+			requireNonNull(session);
+			return session.showTransfers();
+		}
+
+	}
+
+	/**
+	 * Limiting the rate of all the private file uploads together.
+	 */
+	public static class ClientEventLimitGlobalRate implements ClientEvent {
+		private final long rate;
+
+		/**
+		 * Global rate limit event.
+		 * 
+		 * @param rate
+		 *            The limit in kibibytes per second, or 0 for no limit.
+		 */
+		public ClientEventLimitGlobalRate(long rate) {
+			if (rate < 0) {
+				throw new IllegalArgumentException("Invalid rate : " + rate);
+			}
+			this.rate = rate;
+		}
+
+		@Override
+		public boolean execute(ClientSession session) {
+			requireNonNull(session);
+			return session.limitGlobalFileRate(rate);
+		}
+
+	}
+
+	/**
+	 * Limiting the rate of the private file uploads to a user together.
+	 */
+	public static class ClientEventLimitUserRate implements ClientEvent {
+		private final Username username;
+		private final long rate;
+
+		/**
+		 * User rate limit event.
+		 * 
+		 * @param username
+		 *            The target username.
+		 * @param rate
+		 *            The limit in kibibytes per second, or 0 for no limit.
+		 */
+		public ClientEventLimitUserRate(String username, long rate) {
+			requireNonNull(username);
+			if (rate < 0) {
+				throw new IllegalArgumentException("Invalid rate : " + rate);
+			}
+			this.username = new Username(username);
+			this.rate = rate;
+		}
+
+		@Override
+		public boolean execute(ClientSession session) {
+			requireNonNull(session);
+			return session.limitUserFileRate(username, rate);
+		}
+
+	}
+
+	/**
+	 * Limiting the rate of each private file upload.
+	 */
+	public static class ClientEventLimitTransferRate implements ClientEvent {
+		private final long rate;
+
+		/**
+		 * Transfer rate limit event.
+		 * 
+		 * @param rate
+		 *            The limit in kibibytes per second, or 0 for no limit.
+		 */
+		public ClientEventLimitTransferRate(long rate) {
+			if (rate < 0) {
+				throw new IllegalArgumentException("Invalid rate : " + rate);
+			}
+			this.rate = rate;
+		}
+
+		@Override
+		public boolean execute(ClientSession session) {
+			requireNonNull(session);
+			return session.limitTransferFileRate(rate);
+		}
+
+	}
+
 	/**
 	 * Closing a private connection.
 	 */
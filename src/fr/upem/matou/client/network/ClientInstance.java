@@ -1,7 +1,6 @@
 package fr.upem.matou.client.network;
 
 import static fr.upem.matou.shared.logger.Logger.formatNetworkData;
-import static fr.upem.matou.shared.logger.Logger.formatNetworkRequest;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -17,7 +16,9 @@ import fr.upem.matou.client.ui.UserInterface;
 import fr.upem.matou.shared.logger.Logger;
 import fr.upem.matou.shared.logger.Logger.NetworkLogType;
 import fr.upem.matou.shared.network.ErrorType;
+import fr.upem.matou.shared.network.NetworkCommunication;
 import fr.upem.matou.shared.network.NetworkProtocol;
+import fr.upem.matou.shared.network.NetworkProtocol.Communicator;
 import fr.upem.matou.shared.network.Username;
 
 /*
@@ -29,7 +30,9 @@ class ClientInstance implements Closeable {
 	private final Object monitor = new Object();
 	private final ThreadGroup threadGroup = new ThreadGroup("ChatThreads");
 	private final SocketChannel sc;
+	private final ClientReader reader; // Used by the username receiver, then by the public receiver
 	private final ClientSession session;
+	private final FileTransferScheduler scheduler;
 	private final UserInterface ui;
 
 	private boolean exit = false;
@@ -37,7 +40,10 @@ class ClientInstance implements Closeable {
 	ClientInstance(InetSocketAddress address, UserInterface ui) throws IOException {
 		this.ui = ui;
 		sc = SocketChannel.open(address);
-		session = new ClientSession(sc);
+		reader = new ClientReader(sc, Communicator.SERVER);
+		scheduler = new FileTransferScheduler(ClientCommunication.getFileWorkers(), ui,
+				ClientCommunication.getFileRateLimit(), ClientCommunication.getFileProgressPeriod());
+		session = new ClientSession(sc, ui, scheduler);
 	}
 
 	/*
@@ -88,20 +94,27 @@ class ClientInstance implements Closeable {
 	 * Receives the public connection response for this username.
 	 */
 	private boolean usernameReceiver(String username) throws IOException {
-		NetworkProtocol protocol = ClientCommunication.receiveRequestType(sc);
-		Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "PROTOCOL : " + protocol));
+		NetworkProtocol protocol = ClientCommunication.receiveRequestType(reader);
+		Logger.infoNetworkRequest(sc, NetworkLogType.READ, "PROTOCOL", protocol);
 
 		switch (protocol) {
 
 		case CORES: {
-			boolean acceptation = ClientCommunication.receiveRequestCORES(sc);
-			Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "ACCEPTATION : " + acceptation));
+			boolean acceptation = ClientCommunication.receiveRequestCORES(reader);
+			Logger.infoNetworkRequest(sc, NetworkLogType.READ, "ACCEPTATION", acceptation);
 			if (!acceptation) {
 				ui.warnUnavailableUsername(username);
 			}
 			return acceptation;
 		}
 
+		case ERROR: {
+			ErrorType type = ClientCommunication.receiveRequestERROR(reader);
+			Logger.infoNetworkRequest(sc, NetworkLogType.READ, "ERROR", type);
+			ui.warnError(type);
+			throw new IOException("Connection refused by the server : " + type);
+		}
+
 		default:
 			throw new IOException("Unexpected protocol request : " + protocol);
 
@@ -129,58 +142,58 @@ class ClientInstance implements Closeable {
 	 * Reads requests from the server.
 	 */
 	private void publicReceiver() throws IOException {
-		NetworkProtocol protocol = ClientCommunication.receiveRequestType(sc);
-		Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "PROTOCOL : " + protocol));
+		NetworkProtocol protocol = ClientCommunication.receiveRequestType(reader);
+		Logger.infoNetworkRequest(sc, NetworkLogType.READ, "PROTOCOL", protocol);
 
 		switch (protocol) {
 
 		case ERROR: {
-			ErrorType type = ClientCommunication.receiveRequestERROR(sc);
-			Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "ERROR : " + type));
+			ErrorType type = ClientCommunication.receiveRequestERROR(reader);
+			Logger.infoNetworkRequest(sc, NetworkLogType.READ, "ERROR", type);
 			ui.warnError(type);
 
 			break;
 		}
 
 		case MSGBC: {
-			Message message = ClientCommunication.receiveRequestMSGBC(sc);
-			Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "USERNAME : " + message.getUsername()));
-			Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "MESSAGE : " + message.getContent()));
+			Message message = ClientCommunication.receiveRequestMSGBC(reader);
+			Logger.infoNetworkRequest(sc, NetworkLogType.READ, "USERNAME", message.getUsername());
+			Logger.infoNetworkRequest(sc, NetworkLogType.READ, "MESSAGE", message.getContent());
 			ui.displayNewMessage(message);
 
 			break;
 		}
 
 		case CONOTIF: {
-			Username connected = ClientCommunication.receiveRequestCONOTIF(sc);
-			Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "USERNAME : " + connected));
+			Username connected = ClientCommunication.receiveRequestCONOTIF(reader);
+			Logger.infoNetworkRequest(sc, NetworkLogType.READ, "USERNAME", connected);
 			ui.displayNewConnection(connected);
 
 			break;
 		}
 
 		case DISCONOTIF: {
-			Username disconnected = ClientCommunication.receiveRequestDISCONOTIF(sc);
-			Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "USERNAME : " + disconnected));
+			Username disconnected = ClientCommunication.receiveRequestDISCONOTIF(reader);
+			Logger.infoNetworkRequest(sc, NetworkLogType.READ, "USERNAME", disconnected);
 			ui.displayNewDisconnection(disconnected);
 
 			break;
 		}
 
 		case PVCOREQNOTIF: {
-			Username requester = ClientCommunication.receiveRequestPVCOREQNOTIF(sc);
-			Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "USERNAME : " + requester));
+			Username requester = ClientCommunication.receiveRequestPVCOREQNOTIF(reader);
+			Logger.infoNetworkRequest(sc, NetworkLogType.READ, "USERNAME", requester);
 			ui.displayNewPrivateRequest(requester);
 
 			break;
 		}
 
 		case PVCOESTASRC: {
-			SourceConnectionData sourceInfo = ClientCommunication.receiveRequestPVCOESTASRC(sc);
+			SourceConnectionData sourceInfo = ClientCommunication.receiveRequestPVCOESTASRC(reader);
 			Username username = sourceInfo.getUsername();
 			InetAddress address = sourceInfo.getAddress();
-			Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "USERNAME : " + username));
-			Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "ADDRESS : " + address));
+			Logger.infoNetworkRequest(sc, NetworkLogType.READ, "USERNAME", username);
+			Logger.infoNetworkRequest(sc, NetworkLogType.READ, "ADDRESS", address);
 			ui.displayNewPrivateAcception(username);
 			launchPrivateConnection(username, address);
 
@@ -188,15 +201,15 @@ class ClientInstance implements Closeable {
 		}
 
 		case PVCOESTADST: {
-			DestinationConnectionData destinationInfo = ClientCommunication.receiveRequestPVCOESTADST(sc);
+			DestinationConnectionData destinationInfo = ClientCommunication.receiveRequestPVCOESTADST(reader);
 			Username username = destinationInfo.getUsername();
 			InetAddress address = destinationInfo.getAddress();
 			int portMessage = destinationInfo.getPortMessage();
 			int portFile = destinationInfo.getPortFile();
-			Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "USERNAME : " + username));
-			Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "ADDRESS : " + address));
-			Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "PORT MESSAGE : " + portMessage));
-			Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "PORT FILE : " + portFile));
+			Logger.infoNetworkRequest(sc, NetworkLogType.READ, "USERNAME", username);
+			Logger.infoNetworkRequest(sc, NetworkLogType.READ, "ADDRESS", address);
+			Logger.infoNetworkRequest(sc, NetworkLogType.READ, "PORT MESSAGE", portMessage);
+			Logger.infoNetworkRequest(sc, NetworkLogType.READ, "PORT FILE", portFile);
 			ui.displayNewPrivateAcception(username);
 			launchPrivateConnection(username, address, portMessage, portFile);
 
@@ -211,28 +224,36 @@ class ClientInstance implements Closeable {
 	}
 
 	/*
-	 * Reads message requests from a client.
+	 * Reads a message request from a client.
 	 */
-	private void privateMessageReceiver(SocketChannel pv, Username username) throws IOException {
-		while (true) {
-			NetworkProtocol protocol = ClientCommunication.receiveRequestType(pv);
-			Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "PROTOCOL : " + protocol));
+	private void privateMessageReception(ClientReader pvReader, Username username) throws IOException {
+		NetworkProtocol protocol = ClientCommunication.receiveRequestType(pvReader);
+		Logger.infoNetworkRequest(sc, NetworkLogType.READ, "PROTOCOL", protocol);
 
-			switch (protocol) {
+		switch (protocol) {
 
-			case PVMSG: {
-				Message message = ClientCommunication.receiveRequestPVMSG(pv, username);
-				Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "USERNAME : " + message.getUsername()));
-				Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "MESSAGE : " + message.getContent()));
-				ui.displayNewMessage(message);
+		case PVMSG: {
+			Message message = ClientCommunication.receiveRequestPVMSG(pvReader, username);
+			Logger.infoNetworkRequest(sc, NetworkLogType.READ, "USERNAME", message.getUsername());
+			Logger.infoNetworkRequest(sc, NetworkLogType.READ, "MESSAGE", message.getContent());
+			ui.displayNewMessage(message);
 
-				break;
-			}
+			break;
+		}
 
-			default:
-				throw new IOException("Unsupported protocol request : " + protocol);
+		default:
+			throw new IOException("Unsupported protocol request : " + protocol);
 
-			}
+		}
+	}
+
+	/*
+	 * Reads message requests from a client.
+	 */
+	private void privateMessageReceiver(SocketChannel pv, Username username) throws IOException {
+		ClientReader pvReader = new ClientReader(pv, Communicator.CLIENT);
+		while (true) {
+			privateMessageReception(pvReader, username);
 		}
 	}
 
@@ -240,17 +261,55 @@ class ClientInstance implements Closeable {
 	 * Reads file requests from a client.
 	 */
 	private void privateFileReceiver(SocketChannel pv, Username username) throws IOException {
+		privateFileReceiver(new ClientReader(pv, Communicator.CLIENT), username);
+	}
+
+	/*
+	 * Reads file requests from a client through the given reader.
+	 */
+	private void privateFileReceiver(ClientReader pvReader, Username username) throws IOException {
 		while (true) {
-			NetworkProtocol protocol = ClientCommunication.receiveRequestType(pv);
-			Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "PROTOCOL : " + protocol));
+			NetworkProtocol protocol = ClientCommunication.receiveRequestType(pvReader);
+			Logger.infoNetworkRequest(sc, NetworkLogType.READ, "PROTOCOL", protocol);
 
 			switch (protocol) {
 
-			case PVFILE: {
-				Path path = ClientCommunication.receiveRequestPVFILE(pv, username.toString());
-				Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "USERNAME : " + username));
-				Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "FILENAME : " + path.getFileName()));
-				ui.displayNewFileReception(username.toString(), path);
+			case PVFILE:
+			case PVFILECHECKED: {
+				ReceivedFileData file = ClientCommunication.receiveRequestPVFILE(pvReader, username.toString());
+				Logger.infoNetworkRequest(sc, NetworkLogType.READ, "USERNAME", username);
+				Logger.infoNetworkRequest(sc, NetworkLogType.READ, "FILENAME", file.getPath().getFileName());
+				ui.displayNewFileReception(username.toString(), file.getPath(), file.getIntegrity());
+
+				break;
+			}
+
+			case PVFILEPART: {
+				Optional<PrivateFileConnections> connections = session.getPrivateFileConnections(username);
+				if (!connections.isPresent()) {
+					throw new IOException("Private file connections closed : " + username);
+				}
+				Optional<ReceivedFileData> file = ClientCommunication.receiveRequestPVFILEPART(pvReader,
+						username.toString(), connections.get());
+				if (file.isPresent()) {
+					Path path = file.get().getPath();
+					Logger.infoNetworkRequest(sc, NetworkLogType.READ, "USERNAME", username);
+					Logger.infoNetworkRequest(sc, NetworkLogType.READ, "FILENAME", path.getFileName());
+					ui.displayNewFileReception(username.toString(), path, file.get().getIntegrity());
+				}
+
+				break;
+			}
+
+			case PVFILERESUME: {
+				FileRangeData range = ClientCommunication.receiveRequestPVFILERESUME(pvReader);
+				Logger.infoNetworkRequest(sc, NetworkLogType.READ, "USERNAME", username);
+				Logger.infoNetworkRequest(sc, NetworkLogType.READ, "FILENAME", range.getFilename());
+				Logger.infoNetworkRequest(sc, NetworkLogType.READ, "OFFSET", range.getOffset());
+				Logger.infoNetworkRequest(sc, NetworkLogType.READ, "SIZE", range.getSize());
+				if (!session.resumePrivateFile(username, range)) {
+					Logger.warning("Cannot resume the file " + range.getFilename() + " for " + username);
+				}
 
 				break;
 			}
@@ -262,6 +321,47 @@ class ClientInstance implements Closeable {
 		}
 	}
 
+	/*
+	 * Reads message and file requests from a client on a multiplexed connection. The messages are read by the file
+	 * receiver, between two frames of file.
+	 */
+	private void privateMultiplexedReceiver(SocketChannel pv, Username username) throws IOException {
+		PrivateMultiplexer multiplexer = new PrivateMultiplexer(pv);
+		ClientReader messageReader = new ClientReader(pv, multiplexer.getMessageInput(), Communicator.CLIENT);
+		ClientReader fileReader = new ClientReader(pv,
+				multiplexer.getFileInput(() -> privateMessageReception(messageReader, username)), Communicator.CLIENT);
+		if (session.addNewMultiplexedChannel(username, multiplexer)) {
+			session.resumePrivateDownloads(username);
+			privateFileReceiver(fileReader, username);
+		}
+	}
+
+	/*
+	 * Establishes a multiplexed private connection as a source : the same port is sent for the messages and the files.
+	 */
+	private void privateMultiplexedCommunicationSource(Username username, InetAddress addressDst) throws IOException {
+		ServerSocketChannel ssc = ServerSocketChannel.open();
+		ssc.bind(null);
+
+		int port = ((InetSocketAddress) ssc.getLocalAddress()).getPort();
+		Logger.debug(() -> "[SOURCE] MULTIPLEXED PORT : " + port);
+
+		session.sendPrivatePorts(username, port, port);
+
+		new Thread(threadGroup, () -> {
+			try (SocketChannel pv = ClientCommunication.acceptConnection(ssc, addressDst)) {
+				Logger.debugNetworkData(pv, "[SOURCE] MULTIPLEXED CONNECTED");
+				privateMultiplexedReceiver(pv, username);
+			} catch (IOException e) {
+				Logger.warning(e.toString());
+			} finally {
+				session.closePrivateConnection(username);
+				ui.displayNewPrivateMessageDisconnection(username);
+				ui.displayNewPrivateFileDisconnection(username);
+			}
+		}, "private receiver : " + username).start();
+	}
+
 	/*
 	 * Establishes a private connection as a source.
 	 */
@@ -273,14 +373,14 @@ class ClientInstance implements Closeable {
 
 		int portMessage = ((InetSocketAddress) sscMessage.getLocalAddress()).getPort();
 		int portFile = ((InetSocketAddress) sscFile.getLocalAddress()).getPort();
-		Logger.debug("[SOURCE] MESSAGE PORT : " + portMessage);
-		Logger.debug("[SOURCE] FILE PORT : " + portFile);
+		Logger.debug(() -> "[SOURCE] MESSAGE PORT : " + portMessage);
+		Logger.debug(() -> "[SOURCE] FILE PORT : " + portFile);
 
-		ClientCommunication.sendRequestPVCOPORT(sc, username.toString(), portMessage, portFile);
+		session.sendPrivatePorts(username, portMessage, portFile);
 
 		new Thread(threadGroup, () -> {
 			try (SocketChannel scMessage = ClientCommunication.acceptConnection(sscMessage, addressDst)) {
-				Logger.debug(formatNetworkData(scMessage, "[SOURCE] MESSAGE CONNECTED"));
+				Logger.debugNetworkData(scMessage, "[SOURCE] MESSAGE CONNECTED");
 				session.addNewPrivateMessageChannel(username, scMessage);
 				privateMessageReceiver(scMessage, username);
 			} catch (IOException e) {
@@ -292,20 +392,85 @@ class ClientInstance implements Closeable {
 		}, "private message receiver : " + username).start();
 
 		new Thread(threadGroup, () -> {
-			try (SocketChannel scFile = ClientCommunication.acceptConnection(sscFile, addressDst)) {
-				Logger.debug(formatNetworkData(scFile, "[SOURCE] FILE CONNECTED"));
-				session.addNewPrivateFileChannel(username, scFile);
-				privateFileReceiver(scFile, username);
+			try (SocketChannel scFile = ClientCommunication.acceptNextConnection(sscFile, addressDst)) {
+				Logger.debugNetworkData(scFile, "[SOURCE] FILE CONNECTED");
+				if (session.addNewPrivateFileChannel(username, scFile)
+						&& session.setPrivateFileListener(username, sscFile)) {
+					acceptAdditionalFileConnections(username, sscFile, addressDst);
+					session.resumePrivateDownloads(username);
+					privateFileReceiver(scFile, username);
+				}
 			} catch (IOException e) {
 				Logger.warning(e.toString());
 				session.closePrivateConnection(username);
 			} finally {
+				NetworkCommunication.silentlyClose(sscFile);
 				ui.displayNewPrivateFileDisconnection(username);
 			}
 		}, "private file receiver : " + username).start();
 
 	}
 
+	/*
+	 * Receives files on an additional file connection.
+	 */
+	private void launchAdditionalFileReceiver(Username username, SocketChannel scFile) {
+		new Thread(threadGroup, () -> {
+			try (SocketChannel pv = scFile) {
+				if (session.addNewPrivateFileChannel(username, pv)) {
+					privateFileReceiver(pv, username);
+				}
+			} catch (IOException e) {
+				Logger.warning(e.toString());
+				session.closePrivateConnection(username);
+			}
+		}, "private file receiver : " + username).start();
+	}
+
+	/*
+	 * Accepts the additional file connections opened by the destination of a private connection. The ServerSocketChannel
+	 * is closed with the private connection.
+	 */
+	private void acceptAdditionalFileConnections(Username username, ServerSocketChannel sscFile,
+			InetAddress addressDst) {
+		new Thread(threadGroup, () -> {
+			try {
+				for (int i = 1; i < ClientCommunication.getMaxFileStreams(); i++) {
+					SocketChannel scFile = ClientCommunication.acceptNextConnection(sscFile, addressDst);
+					Logger.debugNetworkData(scFile, "[SOURCE] ADDITIONAL FILE CONNECTED");
+					launchAdditionalFileReceiver(username, scFile);
+				}
+			} catch (IOException e) {
+				Logger.debug(e.toString()); // The private connection is closed
+			} finally {
+				NetworkCommunication.silentlyClose(sscFile);
+			}
+		}, "private file acceptor : " + username).start();
+	}
+
+	/*
+	 * Establishes a multiplexed private connection as a destination.
+	 */
+	private void privateMultiplexedCommunicationDestination(Username username, InetAddress addressSrc, int port)
+			throws IOException {
+		SocketChannel pv = SocketChannel.open(new InetSocketAddress(addressSrc, port));
+
+		Logger.debug(() -> "[DESTINATION] MULTIPLEXED PORT : " + port);
+		Logger.debugNetworkData(pv, "[DESTINATION] MULTIPLEXED CONNECTED");
+
+		new Thread(threadGroup, () -> {
+			try (SocketChannel channel = pv) {
+				privateMultiplexedReceiver(channel, username);
+			} catch (IOException e) {
+				Logger.warning(e.toString());
+			} finally {
+				session.closePrivateConnection(username);
+				ui.displayNewPrivateMessageDisconnection(username);
+				ui.displayNewPrivateFileDisconnection(username);
+			}
+		}, "private receiver : " + username).start();
+	}
+
 	/*
 	 * Establishes a private connection as a destination.
 	 */
@@ -314,11 +479,11 @@ class ClientInstance implements Closeable {
 		SocketChannel scMessage = SocketChannel.open(new InetSocketAddress(addressSrc, portMessage));
 		SocketChannel scFile = SocketChannel.open(new InetSocketAddress(addressSrc, portFile));
 
-		Logger.debug("[DESTINATION] MESSAGE PORT : " + portMessage);
-		Logger.debug("[DESTINATION] FILE PORT : " + portFile);
+		Logger.debug(() -> "[DESTINATION] MESSAGE PORT : " + portMessage);
+		Logger.debug(() -> "[DESTINATION] FILE PORT : " + portFile);
 
-		Logger.debug(formatNetworkData(scMessage, "[DESTINATION] MESSAGE CONNECTED"));
-		Logger.debug(formatNetworkData(scFile, "[DESTINATION] FILE CONNECTED"));
+		Logger.debugNetworkData(scMessage, "[DESTINATION] MESSAGE CONNECTED");
+		Logger.debugNetworkData(scFile, "[DESTINATION] FILE CONNECTED");
 
 		new Thread(threadGroup, () -> {
 			try {
@@ -334,8 +499,10 @@ class ClientInstance implements Closeable {
 
 		new Thread(threadGroup, () -> {
 			try {
-				session.addNewPrivateFileChannel(username, scFile);
-				privateFileReceiver(scFile, username);
+				if (session.addNewPrivateFileChannel(username, scFile)) {
+					session.resumePrivateDownloads(username);
+					privateFileReceiver(scFile, username);
+				}
 			} catch (IOException e) {
 				Logger.warning(e.toString());
 				session.closePrivateConnection(username);
@@ -343,6 +510,19 @@ class ClientInstance implements Closeable {
 				ui.displayNewPrivateFileDisconnection(username);
 			}
 		}, "private file receiver : " + username).start();
+
+		// Additional file connections to send the large files in parallel parts
+		for (int i = 1; i < ClientCommunication.getFileStreams(); i++) {
+			SocketChannel scAdditional;
+			try {
+				scAdditional = SocketChannel.open(new InetSocketAddress(addressSrc, portFile));
+			} catch (IOException e) {
+				Logger.warning(e.toString());
+				break;
+			}
+			Logger.debugNetworkData(scAdditional, "[DESTINATION] ADDITIONAL FILE CONNECTED");
+			launchAdditionalFileReceiver(username, scAdditional);
+		}
 	}
 
 	/*
@@ -351,7 +531,11 @@ class ClientInstance implements Closeable {
 	private void launchPrivateConnection(Username username, InetAddress addressDst) {
 		new Thread(threadGroup, () -> {
 			try {
-				privateCommunicationSource(username, addressDst);
+				if (ClientCommunication.isMultiplexing()) {
+					privateMultiplexedCommunicationSource(username, addressDst);
+				} else {
+					privateCommunicationSource(username, addressDst);
+				}
 			} catch (IOException e) {
 				Logger.warning(e.toString());
 			}
@@ -364,7 +548,11 @@ class ClientInstance implements Closeable {
 	private void launchPrivateConnection(Username username, InetAddress addressSrc, int portMessage, int portFile) {
 		new Thread(threadGroup, () -> {
 			try {
-				privateCommunicationDestination(username, addressSrc, portMessage, portFile);
+				if (portMessage == portFile) { // The source multiplexes the private connection
+					privateMultiplexedCommunicationDestination(username, addressSrc, portMessage);
+				} else {
+					privateCommunicationDestination(username, addressSrc, portMessage, portFile);
+				}
 			} catch (IOException e) {
 				Logger.warning(e.toString());
 			}
@@ -450,8 +638,9 @@ class ClientInstance implements Closeable {
 
 	@Override
 	public void close() throws IOException {
-		Logger.debug(formatNetworkData(sc, "CHAT INSTANCE CLOSING"));
+		Logger.debugNetworkData(sc, "CHAT INSTANCE CLOSING");
 		sc.close();
+		scheduler.shutdown();
 		interruptAllThreads();
 	}
 
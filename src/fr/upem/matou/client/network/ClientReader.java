@@ -0,0 +1,189 @@
+package fr.upem.matou.client.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.util.zip.Checksum;
+
+import fr.upem.matou.shared.network.FrameDecoder;
+import fr.upem.matou.shared.network.FrameDecoder.Status;
+import fr.upem.matou.shared.network.NetworkProtocol;
+import fr.upem.matou.shared.network.NetworkProtocol.Communicator;
+
+/*
+ * This class reads the requests of a blocking channel through a reusable buffer. Each read fills the buffer with all
+ * the available bytes, so several requests may be received with a single system call, and the requests are decoded in
+ * place by a FrameDecoder.
+ *
+ * Once a request is read, its arguments are available from the decoder until the next call to readRequest.
+ *
+ * This class is not thread-safe : a reader must only be used by the receiver thread of its channel.
+ */
+class ClientReader {
+
+	private final SocketChannel sc;
+	private final ReadableByteChannel in; // The channel itself, or a stream of a multiplexed channel
+	private final ByteBuffer bb; // In read mode
+	private final FrameDecoder decoder;
+	private boolean pending = false; // The last request is not consumed yet
+	private ByteBuffer chunk = null; // Allocated by the first checked file content
+
+	ClientReader(SocketChannel sc, Communicator source) {
+		this(sc, sc, source);
+	}
+
+	/*
+	 * Creates a reader of the given input, which is a stream of the given channel.
+	 */
+	ClientReader(SocketChannel sc, ReadableByteChannel in, Communicator source) {
+		this.sc = sc;
+		this.in = in;
+		this.bb = ByteBuffer.allocateDirect(ClientCommunication.getClientReadBufferSize(source));
+		this.bb.flip(); // Empty
+		this.decoder = new FrameDecoder(bb, source, Communicator.CLIENT);
+	}
+
+	SocketChannel getChannel() {
+		return sc;
+	}
+
+	FrameDecoder getDecoder() {
+		return decoder;
+	}
+
+	/*
+	 * Reads the available bytes of the channel after the buffered ones. Blocks until at least one byte is read.
+	 */
+	private void fill() throws IOException {
+		bb.compact();
+		try {
+			if (in.read(bb) == -1) {
+				throw new IOException("Connection closed");
+			}
+		} finally {
+			bb.flip();
+		}
+	}
+
+	/*
+	 * Reads the next request. Blocks until the request is complete.
+	 */
+	NetworkProtocol readRequest() throws IOException {
+		if (pending) {
+			decoder.next();
+			pending = false;
+		}
+		while (true) {
+			Status status = decoder.decode();
+			switch (status) {
+			case COMPLETE:
+				pending = true;
+				return decoder.getProtocol();
+			case INCOMPLETE:
+				fill();
+				break;
+			case INVALID_PROTOCOL:
+				throw new IOException("Protocol violation - Invalid protocol type : " + bb.getInt(bb.position()));
+			case INVALID_SIZE:
+				throw new IOException("Protocol violation - Invalid size argument : " + decoder.getProtocol());
+			default:
+				throw new AssertionError("Status " + status + " is not supported");
+			}
+		}
+	}
+
+	/*
+	 * Reads raw bytes that follow the last request until the given buffer (in write mode) is full. The buffered bytes
+	 * are read first.
+	 */
+	void readFully(ByteBuffer dst) throws IOException {
+		if (pending) {
+			decoder.next();
+			pending = false;
+		}
+		if (bb.hasRemaining()) {
+			ByteBuffer buffered = bb.duplicate();
+			int count = Math.min(buffered.remaining(), dst.remaining());
+			buffered.limit(buffered.position() + count);
+			dst.put(buffered);
+			bb.position(bb.position() + count);
+		}
+		while (dst.hasRemaining()) {
+			if (in.read(dst) == -1) {
+				throw new IOException("Connection closed");
+			}
+		}
+	}
+
+	/*
+	 * Reads the given number of raw bytes that follow the last request and writes them in a file from the given
+	 * position. The buffered bytes are written first, then the bytes are transferred from the channel to the file by
+	 * the system when possible. The bytes are not seen by the client : see the checked variant below.
+	 */
+	void readFully(FileChannel fc, long start, long size) throws IOException {
+		if (pending) {
+			decoder.next();
+			pending = false;
+		}
+		long position = start;
+		long end = start + size;
+		while (position < end) {
+			if (!bb.hasRemaining()) {
+				long transferred = fc.transferFrom(in, position, end - position);
+				if (transferred > 0) {
+					position += transferred;
+					continue;
+				}
+				fill(); // Nothing transferred : waits for data through the buffer (and detects the end of stream)
+			}
+			int count = (int) Math.min(bb.remaining(), end - position);
+			ByteBuffer buffered = bb.duplicate();
+			buffered.limit(buffered.position() + count);
+			while (buffered.hasRemaining()) {
+				position += fc.write(buffered, position);
+			}
+			bb.position(bb.position() + count);
+		}
+	}
+
+	/*
+	 * Reads the given number of raw bytes that follow the last request and writes them in a file from the given
+	 * position, and updates the checksum with these bytes. The buffered bytes are written first, then the bytes are
+	 * read in chunks : each chunk is added to the checksum then written, so the bytes are read only once.
+	 */
+	void readFully(FileChannel fc, long start, long size, Checksum checksum) throws IOException {
+		if (pending) {
+			decoder.next();
+			pending = false;
+		}
+		if (chunk == null) {
+			chunk = ByteBuffer.allocateDirect(ClientCommunication.getFileChunkSize());
+		}
+		long position = start;
+		long end = start + size;
+		while (position < end) {
+			ByteBuffer src;
+			if (bb.hasRemaining()) {
+				int count = (int) Math.min(bb.remaining(), end - position);
+				src = bb.duplicate();
+				src.limit(src.position() + count);
+				bb.position(bb.position() + count);
+			} else {
+				chunk.clear();
+				chunk.limit((int) Math.min(chunk.capacity(), end - position));
+				if (in.read(chunk) == -1) {
+					throw new IOException("Connection closed");
+				}
+				chunk.flip();
+				src = chunk;
+			}
+			FileChecksum.update(checksum, src.duplicate());
+			while (src.hasRemaining()) {
+				position += fc.write(src, position);
+			}
+		}
+	}
+
+}
@@ -1,17 +1,22 @@
 package fr.upem.matou.client.network;
 
 import static fr.upem.matou.shared.logger.Logger.formatNetworkData;
-import static fr.upem.matou.shared.logger.Logger.formatNetworkRequest;
 
 import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 
+import fr.upem.matou.client.ui.UserInterface;
 import fr.upem.matou.shared.logger.Logger;
 import fr.upem.matou.shared.logger.Logger.NetworkLogType;
 import fr.upem.matou.shared.network.NetworkCommunication;
 import fr.upem.matou.shared.network.NetworkProtocol;
+import fr.upem.matou.shared.network.NetworkProtocol.Communicator;
 import fr.upem.matou.shared.network.Username;
 
 /*
@@ -20,12 +25,21 @@ import fr.upem.matou.shared.network.Username;
  */
 @SuppressWarnings("resource")
 class ClientSession {
+	private static final int MAX_UPLOADS = 16; // Uploaded files remembered for each user
+
 	private final SocketChannel publicChannel;
-	private final ConcurrentHashMap<Username, SocketChannel> privateMessages = new ConcurrentHashMap<>();
-	private final ConcurrentHashMap<Username, SocketChannel> privateFiles = new ConcurrentHashMap<>();
+	private final ClientWriter publicWriter;
+	private final UserInterface ui;
+	private final FileTransferScheduler scheduler;
+	private final ConcurrentHashMap<Username, ClientWriter> privateMessages = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Username, PrivateFileConnections> privateFiles = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Username, Map<String, Path>> uploads = new ConcurrentHashMap<>(); // Kept after the private connections
 
-	ClientSession(SocketChannel publicChannel) {
+	ClientSession(SocketChannel publicChannel, UserInterface ui, FileTransferScheduler scheduler) {
 		this.publicChannel = publicChannel;
+		this.publicWriter = new ClientWriter(publicChannel, Communicator.SERVER);
+		this.ui = ui;
+		this.scheduler = scheduler;
 	}
 
 	SocketChannel getPublicChannel() {
@@ -33,47 +47,122 @@ class ClientSession {
 	}
 
 	void addNewPrivateMessageChannel(Username username, SocketChannel sc) {
-		privateMessages.put(username, sc);
+		privateMessages.put(username, new ClientWriter(sc, Communicator.CLIENT));
+	}
+
+	/*
+	 * Adds a file connection to a private connection. Returns false if the file connections of this private connection
+	 * are already closed.
+	 */
+	boolean addNewPrivateFileChannel(Username username, SocketChannel sc) {
+		PrivateFileConnections connections = privateFiles.computeIfAbsent(username,
+				name -> new PrivateFileConnections());
+		return connections.add(new ClientWriter(sc, Communicator.CLIENT));
 	}
 
-	void addNewPrivateFileChannel(Username username, SocketChannel sc) {
-		privateFiles.put(username, sc);
+	/*
+	 * Adds a multiplexed connection, which carries both the messages and the files of a private connection. Returns
+	 * false if the file connections of this private connection are already closed.
+	 */
+	boolean addNewMultiplexedChannel(Username username, PrivateMultiplexer multiplexer) {
+		SocketChannel sc = multiplexer.getChannel();
+		privateMessages.put(username,
+				new ClientWriter(sc, multiplexer.getOutput(PrivateMultiplexer.MESSAGE_STREAM), Communicator.CLIENT));
+		PrivateFileConnections connections = privateFiles.computeIfAbsent(username,
+				name -> new PrivateFileConnections());
+		return connections
+				.add(new ClientWriter(sc, multiplexer.getOutput(PrivateMultiplexer.FILE_STREAM), Communicator.CLIENT));
+	}
+
+	/*
+	 * Sets the channel that accepts the additional file connections of a private connection. Returns false if the file
+	 * connections of this private connection are already closed.
+	 */
+	boolean setPrivateFileListener(Username username, ServerSocketChannel ssc) {
+		PrivateFileConnections connections = privateFiles.get(username);
+		return connections != null && connections.setListener(ssc);
+	}
+
+	/*
+	 * Returns the file connections of a private connection.
+	 */
+	Optional<PrivateFileConnections> getPrivateFileConnections(Username username) {
+		return Optional.ofNullable(privateFiles.get(username));
+	}
+
+	/*
+	 * Remembers a file sent to a user, so that its missing parts can be sent again. Only the last files are kept.
+	 */
+	private void addUpload(Username username, Path path) {
+		Map<String, Path> files = uploads.computeIfAbsent(username, name -> new LinkedHashMap<String, Path>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Path> eldest) {
+				return size() > MAX_UPLOADS;
+			}
+		});
+		synchronized (files) {
+			files.put(path.getFileName().toString(), path);
+		}
+	}
+
+	/*
+	 * Returns a file sent to a user.
+	 */
+	private Optional<Path> getUpload(Username username, String filename) {
+		Map<String, Path> files = uploads.get(username);
+		if (files == null) {
+			return Optional.empty();
+		}
+		synchronized (files) {
+			return Optional.ofNullable(files.get(filename));
+		}
 	}
 
 	boolean sendUsernameRequest(Username username) throws IOException {
-		Logger.info(formatNetworkRequest(publicChannel, NetworkLogType.WRITE, "PROTOCOL : " + NetworkProtocol.COREQ));
-		Logger.info(formatNetworkRequest(publicChannel, NetworkLogType.WRITE, "USERNAME : " + username));
-		return ClientCommunication.sendRequestCOREQ(publicChannel, username.toString());
+		Logger.infoNetworkRequest(publicChannel, NetworkLogType.WRITE, "PROTOCOL", NetworkProtocol.COREQ);
+		Logger.infoNetworkRequest(publicChannel, NetworkLogType.WRITE, "USERNAME", username);
+		return ClientCommunication.sendRequestCOREQ(publicWriter, username.toString());
 	}
 
 	boolean sendMessage(String message) throws IOException {
-		Logger.info(formatNetworkRequest(publicChannel, NetworkLogType.WRITE, "PROTOCOL : " + NetworkProtocol.MSG));
-		Logger.info(formatNetworkRequest(publicChannel, NetworkLogType.WRITE, "MESSAGE : " + message));
-		return ClientCommunication.sendRequestMSG(publicChannel, message);
+		Logger.infoNetworkRequest(publicChannel, NetworkLogType.WRITE, "PROTOCOL", NetworkProtocol.MSG);
+		Logger.infoNetworkRequest(publicChannel, NetworkLogType.WRITE, "MESSAGE", message);
+		return ClientCommunication.sendRequestMSG(publicWriter, message);
 	}
 
 	boolean openPrivateConnection(Username username) throws IOException {
-		Logger.info(formatNetworkRequest(publicChannel, NetworkLogType.WRITE, "PROTOCOL : " + NetworkProtocol.PVCOREQ));
-		Logger.info(formatNetworkRequest(publicChannel, NetworkLogType.WRITE, "USERNAME : " + username));
-		return ClientCommunication.sendRequestPVCOREQ(publicChannel, username.toString());
+		Logger.infoNetworkRequest(publicChannel, NetworkLogType.WRITE, "PROTOCOL", NetworkProtocol.PVCOREQ);
+		Logger.infoNetworkRequest(publicChannel, NetworkLogType.WRITE, "USERNAME", username);
+		return ClientCommunication.sendRequestPVCOREQ(publicWriter, username.toString());
+	}
+
+	boolean sendPrivatePorts(Username username, int portMessage, int portFile) throws IOException {
+		Logger.infoNetworkRequest(publicChannel, NetworkLogType.WRITE, "PROTOCOL", NetworkProtocol.PVCOPORT);
+		Logger.infoNetworkRequest(publicChannel, NetworkLogType.WRITE, "USERNAME", username);
+		Logger.infoNetworkRequest(publicChannel, NetworkLogType.WRITE, "PORT MESSAGE", portMessage);
+		Logger.infoNetworkRequest(publicChannel, NetworkLogType.WRITE, "PORT FILE", portFile);
+		return ClientCommunication.sendRequestPVCOPORT(publicWriter, username.toString(), portMessage, portFile);
 	}
 
 	boolean acceptPrivateConnection(Username username) throws IOException {
-		Logger.info(formatNetworkRequest(publicChannel, NetworkLogType.WRITE, "PROTOCOL : " + NetworkProtocol.PVCOACC));
-		Logger.info(formatNetworkRequest(publicChannel, NetworkLogType.WRITE, "USERNAME : " + username));
-		return ClientCommunication.sendRequestPVCOACC(publicChannel, username.toString());
+		Logger.infoNetworkRequest(publicChannel, NetworkLogType.WRITE, "PROTOCOL", NetworkProtocol.PVCOACC);
+		Logger.infoNetworkRequest(publicChannel, NetworkLogType.WRITE, "USERNAME", username);
+		return ClientCommunication.sendRequestPVCOACC(publicWriter, username.toString());
 	}
 
 	boolean sendPrivateMessage(Username username, String message) {
-		SocketChannel sc = privateMessages.get(username);
-		if (sc == null) {
+		ClientWriter writer = privateMessages.get(username);
+		if (writer == null) {
 			return false;
 		}
-		Logger.info(formatNetworkRequest(sc, NetworkLogType.WRITE, "PROTOCOL : " + NetworkProtocol.PVMSG));
-		Logger.info(formatNetworkRequest(sc, NetworkLogType.WRITE, "USERNAME : " + username));
-		Logger.info(formatNetworkRequest(sc, NetworkLogType.WRITE, "MESSAGE : " + message));
+		SocketChannel sc = writer.getChannel();
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "PROTOCOL", NetworkProtocol.PVMSG);
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "USERNAME", username);
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "MESSAGE", message);
 		try {
-			return ClientCommunication.sendRequestPVMSG(sc, message);
+			return ClientCommunication.sendRequestPVMSG(writer, message);
 		} catch (IOException e) {
 			Logger.warning(formatNetworkData(sc, e.toString()));
 			closePrivateConnection(username);
@@ -82,15 +171,20 @@ class ClientSession {
 	}
 
 	boolean sendPrivateFile(Username username, Path path) {
-		SocketChannel sc = privateFiles.get(username);
-		if (sc == null) {
+		PrivateFileConnections connections = privateFiles.get(username);
+		if (connections == null) {
 			return false;
 		}
-		Logger.info(formatNetworkRequest(sc, NetworkLogType.WRITE, "PROTOCOL : " + NetworkProtocol.PVFILE));
-		Logger.info(formatNetworkRequest(sc, NetworkLogType.WRITE, "USERNAME : " + username));
-		Logger.info(formatNetworkRequest(sc, NetworkLogType.WRITE, "FILENAME : " + path.getFileName()));
+		SocketChannel sc = connections.getWriter().getChannel();
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "PROTOCOL", NetworkProtocol.PVFILE);
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "USERNAME", username);
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "FILENAME", path.getFileName());
 		try {
-			return ClientCommunication.sendRequestPVFILE(sc, path);
+			if (!ClientCommunication.sendRequestPVFILE(scheduler, username, connections, path)) {
+				return false;
+			}
+			addUpload(username, path);
+			return true;
 		} catch (IOException e) {
 			Logger.warning(formatNetworkData(sc, e.toString()));
 			closePrivateConnection(username);
@@ -98,17 +192,86 @@ class ClientSession {
 		}
 	}
 
+	/*
+	 * Sends again a part of a file asked by a user. Returns false if the file is unknown or has changed.
+	 */
+	boolean resumePrivateFile(Username username, FileRangeData range) {
+		PrivateFileConnections connections = privateFiles.get(username);
+		Optional<Path> path = getUpload(username, range.getFilename());
+		if (connections == null || !path.isPresent()) {
+			return false;
+		}
+		SocketChannel sc = connections.getWriter().getChannel();
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "PROTOCOL", NetworkProtocol.PVFILEPART);
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "USERNAME", username);
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "FILENAME", range.getFilename());
+		try {
+			return ClientCommunication.sendRequestPVFILEPART(scheduler, username, connections, path.get(), range);
+		} catch (IOException e) {
+			Logger.warning(formatNetworkData(sc, e.toString()));
+			return false;
+		}
+	}
+
+	/*
+	 * Displays the queued, active and last ended file uploads.
+	 */
+	boolean showTransfers() {
+		ui.displayTransfers(scheduler.getTransfers());
+		return true;
+	}
+
+	/*
+	 * Limits the rate of all the file uploads together, in kibibytes per second (0 for no limit).
+	 */
+	boolean limitGlobalFileRate(long rate) {
+		scheduler.setGlobalRate(Math.multiplyExact(rate, 1024));
+		return true;
+	}
+
+	/*
+	 * Limits the rate of the file uploads to a user together, in kibibytes per second (0 for no limit).
+	 */
+	boolean limitUserFileRate(Username username, long rate) {
+		scheduler.setUserRate(username, Math.multiplyExact(rate, 1024));
+		return true;
+	}
+
+	/*
+	 * Limits the rate of each file upload, in kibibytes per second (0 for no limit).
+	 */
+	boolean limitTransferFileRate(long rate) {
+		scheduler.setTransferRate(Math.multiplyExact(rate, 1024));
+		return true;
+	}
+
+	/*
+	 * Asks a user for the missing parts of the files interrupted with a previous private connection.
+	 */
+	void resumePrivateDownloads(Username username) {
+		PrivateFileConnections connections = privateFiles.get(username);
+		if (connections == null) {
+			return;
+		}
+		try {
+			ClientCommunication.sendRequestPVFILERESUME(connections, username.toString());
+		} catch (IOException e) {
+			Logger.warning(e.toString());
+			closePrivateConnection(username);
+		}
+	}
+
 	boolean closePrivateConnection(Username username) {
-		SocketChannel scMessage = privateMessages.remove(username);
-		SocketChannel scFile = privateFiles.remove(username);
-		boolean closed = (scMessage != null) || (scFile != null);
-		if (scMessage != null) {
-			Logger.debug(formatNetworkData(scMessage, "SILENTLY CLOSE (PV MESSAGE)"));
+		ClientWriter writerMessage = privateMessages.remove(username);
+		PrivateFileConnections connectionsFile = privateFiles.remove(username);
+		boolean closed = (writerMessage != null) || (connectionsFile != null);
+		if (writerMessage != null) {
+			SocketChannel scMessage = writerMessage.getChannel();
+			Logger.debugNetworkData(scMessage, "SILENTLY CLOSE (PV MESSAGE)");
 			NetworkCommunication.silentlyClose(scMessage);
 		}
-		if (scFile != null) {
-			Logger.debug(formatNetworkData(scFile, "SILENTLY CLOSE (PV FILE)"));
-			NetworkCommunication.silentlyClose(scFile);
+		if (connectionsFile != null) {
+			connectionsFile.close();
 		}
 		return closed;
 	}
@@ -0,0 +1,174 @@
+package fr.upem.matou.client.network;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.zip.Checksum;
+
+import fr.upem.matou.shared.network.NetworkProtocol.Communicator;
+
+/*
+ * This class writes the requests of a blocking channel through a reusable buffer. Each request is assembled in the
+ * buffer by a builder of ClientCommunication, then written with as few system calls as possible.
+ *
+ * This class is thread-safe : a request is always written entirely before the next one, so requests sent by several
+ * threads on the same channel are never interleaved.
+ */
+class ClientWriter {
+
+	/*
+	 * Controls the upload of the content of a file : each step of the upload is granted before being written, then
+	 * notified once written.
+	 */
+	static interface FileProgress {
+
+		/*
+		 * Waits until some bytes may be written, and returns their number (at least 1, at most the given size).
+		 */
+		long acquire(long size);
+
+		/*
+		 * Notifies that the given number of bytes were written.
+		 */
+		void written(long count);
+
+	}
+
+	private final SocketChannel sc;
+	private final WritableByteChannel out; // The channel itself, or a stream of a multiplexed channel
+	private final ByteBuffer bb; // In write mode
+	private ByteBuffer chunk = null; // Allocated by the first checked file content
+
+	ClientWriter(SocketChannel sc, Communicator target) {
+		this(sc, sc, target);
+	}
+
+	/*
+	 * Creates a writer of the given output, which is a stream of the given channel.
+	 */
+	ClientWriter(SocketChannel sc, WritableByteChannel out, Communicator target) {
+		this.sc = sc;
+		this.out = out;
+		this.bb = ByteBuffer.allocateDirect(ClientCommunication.getClientWriteBufferSize(target));
+	}
+
+	SocketChannel getChannel() {
+		return sc;
+	}
+
+	/*
+	 * Writes all the buffer.
+	 */
+	private void drain() throws IOException {
+		bb.flip();
+		try {
+			while (bb.hasRemaining()) {
+				out.write(bb);
+			}
+		} finally {
+			bb.clear();
+		}
+	}
+
+	/*
+	 * Assembles a request with the given builder and writes it. Returns false (and writes nothing) if the builder
+	 * refuses the request.
+	 */
+	synchronized boolean send(Predicate<ByteBuffer> builder) throws IOException {
+		bb.clear();
+		if (!builder.test(bb)) {
+			bb.clear();
+			return false;
+		}
+		drain();
+		return true;
+	}
+
+	/*
+	 * Writes a range of a file. The content of the file is transferred from the file to the channel by the system,
+	 * without being copied by the client, by steps of limited size. Each step is granted by the progress before being
+	 * written.
+	 */
+	private void transfer(FileChannel fc, Path path, long start, long size, FileProgress progress)
+			throws IOException {
+		long end = start + size;
+		for (long position = start; position < end;) {
+			long step = progress.acquire(Math.min(ClientCommunication.getFileTransferSize(), end - position));
+			long transferred = fc.transferTo(position, step, out);
+			if (transferred == 0 && position >= fc.size()) {
+				throw new IOException("File truncated during the upload : " + path);
+			}
+			position += transferred;
+			progress.written(transferred);
+		}
+	}
+
+	/*
+	 * Writes a range of a file in chunks, and updates the checksum with each chunk before writing it, so the file is
+	 * read only once. Each chunk is granted by the progress before being read.
+	 */
+	private void transfer(FileChannel fc, Path path, long start, long size, Checksum checksum, FileProgress progress)
+			throws IOException {
+		if (chunk == null) {
+			chunk = ByteBuffer.allocateDirect(ClientCommunication.getFileChunkSize());
+		}
+		long end = start + size;
+		for (long position = start; position < end;) {
+			chunk.clear();
+			chunk.limit((int) progress.acquire(Math.min(chunk.capacity(), end - position)));
+			if (fc.read(chunk, position) == -1) {
+				throw new IOException("File truncated during the upload : " + path);
+			}
+			chunk.flip();
+			int count = chunk.remaining();
+			FileChecksum.update(checksum, chunk.duplicate());
+			while (chunk.hasRemaining()) {
+				out.write(chunk);
+			}
+			position += count;
+			progress.written(count);
+		}
+	}
+
+	/*
+	 * Assembles a request with the given builder and writes it, followed by the given range of a file and by a
+	 * PVFILECHECKSUM request. The checksum of the range is computed while it is written, unless the type is NONE : the
+	 * content is then transferred by the system without being copied. No other request is written on the channel
+	 * before the end of the checksum. The steps of the content are granted by the progress before being written. Returns
+	 * false (and writes nothing) if the builder refuses the request.
+	 */
+	synchronized boolean send(Predicate<ByteBuffer> builder, Path path, long start, long size, FileChecksum type,
+			FileProgress progress) throws IOException {
+		try (FileChannel fc = FileChannel.open(path, READ)) {
+			bb.clear();
+			if (!builder.test(bb)) {
+				bb.clear();
+				return false;
+			}
+			drain();
+
+			Optional<Checksum> checksum = type.newChecksum();
+			if (checksum.isPresent()) {
+				transfer(fc, path, start, size, checksum.get(), progress);
+			} else {
+				transfer(fc, path, start, size, progress);
+			}
+
+			if (checksum.isPresent()) {
+				if (!ClientCommunication.addRequestPVFILECHECKSUM(bb, type, checksum.get().getValue())) {
+					throw new AssertionError("The buffer can hold any request");
+				}
+				drain();
+			}
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,57 @@
+package fr.upem.matou.client.network;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.zip.Adler32;
+import java.util.zip.Checksum;
+
+/*
+ * This enumeration lists the checksums that can be computed during the private file transfers. The type of checksum is
+ * announced by the header of a PVFILECHECKED or PVFILEPART request : the checksum of its content is computed while the
+ * content is sent and received, then sent after the content in a PVFILECHECKSUM request.
+ */
+enum FileChecksum {
+
+	NONE, CRC32, ADLER32;
+
+	/*
+	 * Returns a new checksum of this type, or empty if this type computes nothing.
+	 */
+	Optional<Checksum> newChecksum() {
+		switch (this) {
+		case NONE:
+			return Optional.empty();
+		case CRC32:
+			return Optional.of(new java.util.zip.CRC32());
+		case ADLER32:
+			return Optional.of(new Adler32());
+		default:
+			throw new AssertionError("Checksum " + this + " is not supported");
+		}
+	}
+
+	/*
+	 * Updates a checksum with the remaining bytes of a buffer. The position of the buffer is moved to its limit.
+	 */
+	static void update(Checksum checksum, ByteBuffer bb) {
+		if (checksum instanceof java.util.zip.CRC32) {
+			((java.util.zip.CRC32) checksum).update(bb);
+		} else if (checksum instanceof Adler32) {
+			((Adler32) checksum).update(bb);
+		} else {
+			throw new AssertionError("Checksum " + checksum.getClass() + " is not supported");
+		}
+	}
+
+	/*
+	 * Returns the checksum type associated with this ordinal number.
+	 */
+	static Optional<FileChecksum> getChecksum(int ordinal) {
+		FileChecksum[] values = values();
+		if (ordinal < 0 || ordinal >= values.length) {
+			return Optional.empty();
+		}
+		return Optional.of(values[ordinal]);
+	}
+
+}
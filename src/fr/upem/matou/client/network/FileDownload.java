@@ -0,0 +1,403 @@
+package fr.upem.matou.client.network;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Checksum;
+
+import fr.upem.matou.shared.logger.Logger;
+import fr.upem.matou.shared.network.NetworkCommunication;
+
+/*
+ * This class represents a file received from a user. The file is received under a partial name, next to a resume
+ * record that lists the bytes already committed to the disk. The file is allocated to its final size first, then it
+ * is received in parts (a single part for a PVFILE request, one part per connection for PVFILEPART requests), each part
+ * written at its offset. Once all the bytes are received, the file is moved to its final name and its record is
+ * removed.
+ *
+ * If the reception is interrupted, the partial file and its record stay in the directory : the missing parts are asked
+ * again to the sender when a new private connection is established with the same user.
+ *
+ * When the file is received through memory, each part slides a single window over its bytes : the window of a commit
+ * is released before mapping the next one, so the mappings do not pile up until their collection, and no mapping of
+ * the file is alive when it is moved to its final name.
+ *
+ * This class is thread-safe : the parts of a file are received concurrently by the receivers of the file connections.
+ */
+class FileDownload {
+
+	private static final Path FILE_PATH = Paths.get("./files/");
+	private static final String FILENAME_SEPARATOR = "_";
+	private static final String PARTIAL_SUFFIX = ".part";
+	private static final String RECORD_SUFFIX = ".resume";
+	private static final String RECORD_TMP_SUFFIX = ".tmp";
+	private static final long COMMIT_SIZE = 16 * 1024 * 1024; // Bytes received between two commits
+	private static final Set<Path> ACTIVE = ConcurrentHashMap.newKeySet(); // Partial files of this process
+
+	/*
+	 * A part of the file : the bytes between "start" and "committed" are on the disk.
+	 */
+	private static class Range {
+		private final long start;
+		private final long end;
+		private long committed;
+
+		Range(long start, long committed, long end) {
+			this.start = start;
+			this.committed = committed;
+			this.end = end;
+		}
+	}
+
+	private final String filename;
+	private final long totalSize;
+	private final boolean mapped;
+	private final Path partial;
+	private final Path record;
+	private final FileChannel fc;
+	private final ArrayList<Range> ranges = new ArrayList<>(); // Guarded by this
+	private final Object recordLock = new Object(); // Guards the writing of the record
+	private boolean completed = false; // Guarded by recordLock
+	private boolean released = false; // Guarded by this
+	private FileIntegrity integrity = FileIntegrity.VERIFIED; // Guarded by this
+	private int openParts = 0; // Parts received but not checked yet - Guarded by this
+
+	private FileDownload(String filename, long totalSize, boolean mapped, Path partial, FileChannel fc) {
+		this.filename = filename;
+		this.totalSize = totalSize;
+		this.mapped = mapped;
+		this.partial = partial;
+		this.record = partial.resolveSibling(partial.getFileName() + RECORD_SUFFIX);
+		this.fc = fc;
+	}
+
+	/*
+	 * Starts the reception of a new file. The file is received through a window mapped in memory if "mapped" is true,
+	 * through its channel otherwise.
+	 */
+	static FileDownload create(String username, String filename, long totalSize, boolean mapped) throws IOException {
+		// Ensures creation of a new file
+		Path partial = Files.createTempFile(FILE_PATH, username + FILENAME_SEPARATOR,
+				FILENAME_SEPARATOR + filename + PARTIAL_SUFFIX);
+		ACTIVE.add(partial);
+		FileChannel fc = null;
+		try {
+			fc = FileChannel.open(partial, READ, WRITE, CREATE);
+			if (totalSize > 0) {
+				fc.write(ByteBuffer.allocate(1), totalSize - 1); // Allocates the file to its final size
+			}
+			FileDownload download = new FileDownload(filename, totalSize, mapped, partial, fc);
+			download.writeRecord();
+			return download;
+		} catch (IOException e) {
+			if (fc != null) {
+				NetworkCommunication.silentlyClose(fc);
+			}
+			Files.deleteIfExists(partial);
+			ACTIVE.remove(partial);
+			throw e;
+		}
+	}
+
+	/*
+	 * Reopens an interrupted reception from its record.
+	 */
+	private static FileDownload load(Path record, boolean mapped) throws IOException {
+		String name = record.getFileName().toString();
+		Path partial = record.resolveSibling(name.substring(0, name.length() - RECORD_SUFFIX.length()));
+		List<String> lines = Files.readAllLines(record, UTF_8);
+		if (lines.size() < 2) {
+			throw new IOException("Invalid resume record : " + record);
+		}
+		long totalSize;
+		ArrayList<Range> committed = new ArrayList<>();
+		try {
+			totalSize = Long.parseLong(lines.get(0));
+			for (String line : lines.subList(2, lines.size())) {
+				String[] tokens = line.split(" ");
+				if (tokens.length != 2) {
+					throw new IOException("Invalid resume record : " + record);
+				}
+				long start = Long.parseLong(tokens[0]);
+				long end = Long.parseLong(tokens[1]);
+				if (start < 0 || start > end || end > totalSize) {
+					throw new IOException("Invalid resume record : " + record);
+				}
+				committed.add(new Range(start, end, end));
+			}
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid resume record : " + record, e);
+		}
+
+		FileDownload download = new FileDownload(lines.get(1), totalSize, mapped, partial,
+				FileChannel.open(partial, READ, WRITE));
+		download.ranges.addAll(committed);
+		if (!committed.isEmpty()) {
+			// The checksums of the parts received before the interruption are unknown
+			download.integrity = FileIntegrity.UNVERIFIED;
+		}
+		return download;
+	}
+
+	/*
+	 * Reopens all the interrupted receptions of files sent by a user. The files that are being received by this
+	 * process are ignored.
+	 */
+	static List<FileDownload> resumeAll(String username, boolean mapped) {
+		ArrayList<FileDownload> downloads = new ArrayList<>();
+		String glob = username + FILENAME_SEPARATOR + "*" + PARTIAL_SUFFIX + RECORD_SUFFIX;
+		try (DirectoryStream<Path> records = Files.newDirectoryStream(FILE_PATH, glob)) {
+			for (Path record : records) {
+				String name = record.getFileName().toString();
+				Path partial = record.resolveSibling(name.substring(0, name.length() - RECORD_SUFFIX.length()));
+				if (!Files.exists(partial)) {
+					Files.deleteIfExists(record); // Orphan record
+					continue;
+				}
+				if (!ACTIVE.add(partial)) {
+					continue;
+				}
+				try {
+					downloads.add(load(record, mapped));
+				} catch (IOException e) {
+					Logger.warning("Cannot resume " + partial + " : " + e);
+					ACTIVE.remove(partial);
+				}
+			}
+		} catch (IOException e) {
+			Logger.warning(e.toString());
+		}
+		return downloads;
+	}
+
+	String getFilename() {
+		return filename;
+	}
+
+	long getTotalSize() {
+		return totalSize;
+	}
+
+	/*
+	 * Returns the parts of the file that are not received yet, as pairs of offset and size.
+	 */
+	synchronized List<long[]> getMissingRanges() {
+		ArrayList<Range> sorted = new ArrayList<>(ranges);
+		sorted.sort(Comparator.comparingLong(range -> range.start));
+		ArrayList<long[]> missing = new ArrayList<>();
+		long position = 0;
+		for (Range range : sorted) {
+			if (range.start > position) {
+				missing.add(new long[] { position, range.start - position });
+			}
+			position = Math.max(position, range.committed);
+		}
+		if (position < totalSize) {
+			missing.add(new long[] { position, totalSize - position });
+		}
+		return missing;
+	}
+
+	/*
+	 * Writes the record of the committed bytes, then replaces the previous record at once. The records are written one
+	 * at a time, so the last record written is always the most recent.
+	 */
+	private void writeRecord() throws IOException {
+		synchronized (recordLock) {
+			if (completed) {
+				return; // The record is already removed
+			}
+			ArrayList<String> lines = new ArrayList<>();
+			lines.add(Long.toString(totalSize));
+			lines.add(filename);
+			synchronized (this) {
+				for (Range range : ranges) {
+					if (range.committed > range.start) {
+						lines.add(range.start + " " + range.committed);
+					}
+				}
+			}
+			Path tmp = record.resolveSibling(record.getFileName() + RECORD_TMP_SUFFIX);
+			Files.write(tmp, lines, UTF_8);
+			Files.move(tmp, record, ATOMIC_MOVE, REPLACE_EXISTING);
+		}
+	}
+
+	/*
+	 * Registers a new part of the file. Throws an IOException if the part does not belong to this file or overlaps
+	 * another part.
+	 */
+	private synchronized Range register(String filename, long totalSize, long offset, long size)
+			throws IOException {
+		boolean valid = this.filename.equals(filename) && this.totalSize == totalSize && offset >= 0
+				&& (size > 0 || totalSize == 0) && size >= 0 && offset <= totalSize - size;
+		if (valid) {
+			for (Range range : ranges) {
+				if (offset < Math.max(range.end, range.committed) && range.start < offset + size) {
+					valid = false;
+					break;
+				}
+			}
+		}
+		if (!valid) {
+			throw new IOException("Protocol violation - Invalid file part : " + filename + " " + offset + "+" + size
+					+ "/" + totalSize);
+		}
+		Range range = new Range(offset, offset, offset + size);
+		ranges.add(range);
+		openParts++;
+		return range;
+	}
+
+	/*
+	 * Returns the number of bytes that are not received yet.
+	 */
+	private synchronized long remaining() {
+		long received = 0;
+		for (Range range : ranges) {
+			received += range.committed - range.start;
+		}
+		return totalSize - received;
+	}
+
+	/*
+	 * Releases the mapping of a window at once, instead of waiting for the collection of the window. The window must
+	 * not be used anymore. If the JVM does not allow it, the mapping is released by the collection.
+	 */
+	private static void unmap(MappedByteBuffer window) {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner;
+			try {
+				invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			} catch (@SuppressWarnings("unused") NoSuchMethodException __) { // Java 8 : the window holds its cleaner
+				Method getCleaner = window.getClass().getMethod("cleaner");
+				getCleaner.setAccessible(true);
+				Object cleaner = getCleaner.invoke(window);
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+				return;
+			}
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), window);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			Logger.debug("MAPPING NOT RELEASED : " + e);
+		}
+	}
+
+	/*
+	 * Receives a part of the file, and commits it regularly. The checksum, if any, is updated with the bytes of the
+	 * part while they are received.
+	 */
+	void receivePart(ClientReader reader, String filename, long totalSize, long offset, long size,
+			Optional<Checksum> checksum) throws IOException {
+		Range range = register(filename, totalSize, offset, size);
+		for (long position = offset; position < range.end;) {
+			long chunk = Math.min(COMMIT_SIZE, range.end - position);
+			if (mapped) {
+				MappedByteBuffer window = fc.map(MapMode.READ_WRITE, position, chunk); // Slides over the part
+				try {
+					reader.readFully(window);
+					if (checksum.isPresent()) {
+						window.flip(); // The received bytes are checked in memory
+						FileChecksum.update(checksum.get(), window);
+					}
+					window.force();
+				} finally {
+					unmap(window);
+				}
+			} else if (checksum.isPresent()) {
+				reader.readFully(fc, position, chunk, checksum.get());
+				fc.force(false);
+			} else {
+				reader.readFully(fc, position, chunk);
+				fc.force(false);
+			}
+			position += chunk;
+			synchronized (this) {
+				range.committed = position;
+			}
+			writeRecord();
+		}
+	}
+
+	/*
+	 * Ends a received part once its checksum is checked. Returns the final path of the file if this part completes it,
+	 * or null otherwise.
+	 */
+	Path completePart(FileIntegrity partIntegrity) throws IOException {
+		synchronized (this) {
+			openParts--;
+			integrity = integrity.combine(partIntegrity);
+		}
+		return complete();
+	}
+
+	/*
+	 * Returns the integrity of the parts of the file received so far.
+	 */
+	synchronized FileIntegrity getIntegrity() {
+		return integrity;
+	}
+
+	/*
+	 * Moves the file to its final name if all the bytes are received and checked. Returns the final path, or null if
+	 * the file is not complete (or already moved). The windows of the parts are already released, since each part
+	 * releases its window before being checked.
+	 */
+	Path complete() throws IOException {
+		synchronized (this) {
+			if (released || openParts > 0 || remaining() > 0) {
+				return null;
+			}
+			released = true;
+		}
+		fc.close();
+		String name = partial.getFileName().toString();
+		Path path = partial.resolveSibling(name.substring(0, name.length() - PARTIAL_SUFFIX.length()));
+		synchronized (recordLock) {
+			completed = true;
+			Files.move(partial, path, ATOMIC_MOVE);
+			Files.deleteIfExists(record);
+		}
+		ACTIVE.remove(partial);
+		return path;
+	}
+
+	/*
+	 * Interrupts the reception : the partial file and its record are kept to resume it later.
+	 */
+	void suspend() {
+		synchronized (this) {
+			if (released) {
+				return;
+			}
+			released = true;
+		}
+		NetworkCommunication.silentlyClose(fc);
+		ACTIVE.remove(partial);
+		Logger.debug("FILE DOWNLOADING SUSPENDED : " + partial);
+	}
+
+}
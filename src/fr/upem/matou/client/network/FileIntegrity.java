@@ -0,0 +1,31 @@
+package fr.upem.matou.client.network;
+
+/**
+ * This enumeration describes the integrity of a private file received from a user, as checked with the checksums sent
+ * by this user.
+ */
+public enum FileIntegrity {
+
+	/**
+	 * The checksums of all the parts of the file match the checksums computed by the sender.
+	 */
+	VERIFIED,
+
+	/**
+	 * At least one part of the file was received without a checksum : the file may be corrupted.
+	 */
+	UNVERIFIED,
+
+	/**
+	 * The checksum of at least one part of the file does not match the checksum computed by the sender.
+	 */
+	CORRUPTED;
+
+	/*
+	 * Returns the integrity of a file made of a part of this integrity and a part of the given integrity.
+	 */
+	FileIntegrity combine(FileIntegrity other) {
+		return (other.ordinal() > ordinal()) ? other : this;
+	}
+
+}
@@ -0,0 +1,42 @@
+package fr.upem.matou.client.network;
+
+/*
+ * This object describes a part of a file asked again by its receiver (a PVFILERESUME request). The identifier is the
+ * one of the resumed reception, and must be sent back with the part.
+ */
+class FileRangeData {
+	private final int transferId;
+	private final String filename;
+	private final long totalSize;
+	private final long offset;
+	private final long size;
+
+	FileRangeData(int transferId, String filename, long totalSize, long offset, long size) {
+		this.transferId = transferId;
+		this.filename = filename;
+		this.totalSize = totalSize;
+		this.offset = offset;
+		this.size = size;
+	}
+
+	int getTransferId() {
+		return transferId;
+	}
+
+	String getFilename() {
+		return filename;
+	}
+
+	long getTotalSize() {
+		return totalSize;
+	}
+
+	long getOffset() {
+		return offset;
+	}
+
+	long getSize() {
+		return size;
+	}
+
+}
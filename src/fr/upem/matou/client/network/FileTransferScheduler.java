@@ -0,0 +1,309 @@
+package fr.upem.matou.client.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import fr.upem.matou.client.network.TransferStatus.State;
+import fr.upem.matou.client.ui.UserInterface;
+import fr.upem.matou.shared.logger.Logger;
+import fr.upem.matou.shared.network.Username;
+
+/*
+ * This class schedules the private file uploads of a client. The uploads are run by a bounded pool of workers, so the
+ * number of threads does not depend on the number of files. The uploads of a file connection are queued and run one
+ * after the other, in their order of submission ; the uploads of different file connections (to different users, or
+ * the parts of a large file) run in parallel, up to the number of workers.
+ *
+ * When an upload ends, the next upload of its connection is submitted again to the pool, behind the uploads of the
+ * other connections, so a user with many queued files does not keep a worker for itself.
+ *
+ * The uploads can be limited by three token buckets : one for each upload, one for each user and one for all the
+ * uploads. The written bytes are taken from the three buckets, and the worker waits for the slowest one. The progress
+ * of each active upload is displayed periodically.
+ *
+ * This class is thread-safe.
+ */
+class FileTransferScheduler {
+
+	private static final int MAX_COMPLETED = 32; // Ended uploads kept for the statistics
+
+	/*
+	 * An upload and its statistics.
+	 */
+	private class Transfer implements ClientWriter.FileProgress {
+		private final Username username;
+		private final ClientWriter writer;
+		private final Predicate<ByteBuffer> builder;
+		private final Path path;
+		private final long offset;
+		private final long size;
+		private final FileChecksum type;
+		private final RateLimiter limiter = new RateLimiter(transferRate);
+		private final RateLimiter userLimiter;
+
+		private volatile State state = State.QUEUED;
+		private volatile long transferred = 0; // Written by the worker only
+		private volatile long start = 0;
+		private volatile long end = 0;
+		private long reported = 0; // Bytes at the last progress event - Used by the worker only
+		private long lastReport = 0; // Used by the worker only
+
+		Transfer(Username username, ClientWriter writer, Predicate<ByteBuffer> builder, Path path, long offset,
+				long size, FileChecksum type) {
+			this.username = username;
+			this.writer = writer;
+			this.builder = builder;
+			this.path = path;
+			this.offset = offset;
+			this.size = size;
+			this.type = type;
+			this.userLimiter = userLimiters.computeIfAbsent(username, name -> new RateLimiter(0));
+		}
+
+		/*
+		 * Called by the worker before each write : the step is cut to the smallest burst of the limits, then its bytes
+		 * are taken from the limits, and the worker waits if the upload is faster than one of them.
+		 */
+		@Override
+		public long acquire(long count) {
+			long step = Math.min(count,
+					Math.min(limiter.getBurst(), Math.min(userLimiter.getBurst(), globalLimiter.getBurst())));
+			long delay = Math.max(limiter.consume(step),
+					Math.max(userLimiter.consume(step), globalLimiter.consume(step)));
+			if (delay > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(delay);
+				} catch (@SuppressWarnings("unused") InterruptedException __) {
+					Thread.currentThread().interrupt(); // The write fails : the scheduler is shut down
+				}
+			}
+			return step;
+		}
+
+		/*
+		 * Called by the worker after each write : displays the progress periodically.
+		 */
+		@Override
+		public void written(long count) {
+			transferred += count;
+			long now = System.nanoTime();
+			if (lastReport == 0) {
+				lastReport = now;
+			}
+			long period = progressPeriod;
+			if (period > 0 && now - lastReport >= TimeUnit.MILLISECONDS.toNanos(period)) {
+				long rate = (transferred - reported) * 1_000_000_000 / (now - lastReport);
+				ui.displayTransferProgress(new TransferStatus(username, path, state, size, transferred, rate));
+				reported = transferred;
+				lastReport = now;
+			}
+		}
+
+		TransferStatus getStatus() {
+			State current = state;
+			long elapsed = ((current == State.ACTIVE) ? System.nanoTime() : end) - start;
+			long rate = (current == State.QUEUED || elapsed <= 0) ? 0 : transferred * 1_000_000_000 / elapsed;
+			return new TransferStatus(username, path, current, size, transferred, rate);
+		}
+	}
+
+	private final ExecutorService workers;
+	private final UserInterface ui;
+	private final long progressPeriod; // In milliseconds
+	private final RateLimiter globalLimiter;
+	private final ConcurrentHashMap<Username, RateLimiter> userLimiters = new ConcurrentHashMap<>();
+	private volatile long transferRate = 0;
+	private final HashMap<ClientWriter, ArrayDeque<Transfer>> queues = new HashMap<>(); // Guarded by this
+	private final LinkedHashSet<Transfer> running = new LinkedHashSet<>(); // Queued and active - Guarded by this
+	private final ArrayDeque<Transfer> completed = new ArrayDeque<>(); // Guarded by this
+
+	/*
+	 * Creates a scheduler with the given number of workers and the given limit for all the uploads (in bytes per
+	 * second, 0 for no limit). The progress of the uploads is displayed every "progressPeriod" milliseconds (never if
+	 * the period is 0).
+	 */
+	FileTransferScheduler(int workers, UserInterface ui, long globalRate, long progressPeriod) {
+		this.ui = ui;
+		this.progressPeriod = progressPeriod;
+		this.globalLimiter = new RateLimiter(globalRate);
+		this.workers = Executors.newFixedThreadPool(workers, runnable -> {
+			Thread thread = new Thread(runnable, "private file uploader");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/*
+	 * Queues the upload of a file (or a part of a file) on a file connection. The request is assembled by the builder,
+	 * then followed by the content of the file and its checksum.
+	 */
+	void submit(Username username, ClientWriter writer, Predicate<ByteBuffer> builder, Path path, long offset,
+			long size, FileChecksum type) {
+		Transfer transfer;
+		synchronized (this) {
+			transfer = new Transfer(username, writer, builder, path, offset, size, type); // With the current limit
+			running.add(transfer);
+			ArrayDeque<Transfer> queue = queues.get(writer);
+			if (queue != null) { // The connection is busy
+				queue.add(transfer);
+				return;
+			}
+			queues.put(writer, new ArrayDeque<>());
+		}
+		execute(transfer);
+	}
+
+	/*
+	 * Submits an upload to the workers.
+	 */
+	private void execute(Transfer transfer) {
+		try {
+			workers.execute(() -> run(transfer));
+		} catch (@SuppressWarnings("unused") RejectedExecutionException __) {
+			Logger.debug("FILE UPLOADING CANCELED : " + transfer.path); // The scheduler is shut down
+			synchronized (this) {
+				cancel(transfer);
+				ArrayDeque<Transfer> queue = queues.remove(transfer.writer);
+				if (queue != null) {
+					queue.forEach(this::cancel);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Ends an upload that will not run, unless it is already started or ended. Must be called while holding the lock
+	 * of the scheduler.
+	 */
+	private void cancel(Transfer transfer) {
+		if (transfer.state != State.QUEUED) {
+			return;
+		}
+		transfer.end = System.nanoTime();
+		transfer.state = State.FAILED;
+		end(transfer);
+	}
+
+	/*
+	 * Moves an ended upload from the running uploads to the completed uploads. Must be called while holding the lock of
+	 * the scheduler.
+	 */
+	private void end(Transfer transfer) {
+		running.remove(transfer);
+		completed.add(transfer);
+		if (completed.size() > MAX_COMPLETED) {
+			completed.poll();
+		}
+	}
+
+	/*
+	 * Runs an upload, then submits the next upload of its connection.
+	 */
+	private void run(Transfer transfer) {
+		ClientWriter writer = transfer.writer;
+		synchronized (this) {
+			if (transfer.state != State.QUEUED) { // Canceled by the shutdown before being started
+				return;
+			}
+			transfer.start = System.nanoTime();
+			transfer.state = State.ACTIVE;
+		}
+		try {
+			Logger.debugNetworkData(writer.getChannel(), "FILE UPLOADING START", transfer.path);
+			writer.send(transfer.builder, transfer.path, transfer.offset, transfer.size, transfer.type, transfer);
+			Logger.debugNetworkData(writer.getChannel(), "FILE UPLOADING END", transfer.path);
+			transfer.end = System.nanoTime();
+			transfer.state = State.COMPLETED;
+		} catch (IOException e) {
+			Logger.warning(e.toString());
+			transfer.end = System.nanoTime();
+			transfer.state = State.FAILED;
+		}
+
+		Transfer next;
+		synchronized (this) {
+			end(transfer);
+			ArrayDeque<Transfer> queue = queues.get(writer);
+			next = (queue == null) ? null : queue.poll(); // No queue once the scheduler is shut down
+			if (next == null) {
+				queues.remove(writer);
+				return;
+			}
+		}
+		execute(next);
+	}
+
+	/*
+	 * Limits all the uploads together, in bytes per second (0 for no limit).
+	 */
+	void setGlobalRate(long rate) {
+		globalLimiter.setRate(rate);
+	}
+
+	/*
+	 * Limits the uploads to a user together, in bytes per second (0 for no limit).
+	 */
+	void setUserRate(Username username, long rate) {
+		userLimiters.computeIfAbsent(username, name -> new RateLimiter(0)).setRate(rate);
+	}
+
+	/*
+	 * Limits each upload, in bytes per second (0 for no limit). The limit applies to the active uploads too.
+	 */
+	void setTransferRate(long rate) {
+		if (rate < 0) {
+			throw new IllegalArgumentException("Invalid rate : " + rate);
+		}
+		ArrayList<Transfer> transfers;
+		synchronized (this) {
+			transferRate = rate;
+			transfers = new ArrayList<>(running);
+		}
+		for (Transfer transfer : transfers) {
+			transfer.limiter.setRate(rate);
+		}
+	}
+
+	/*
+	 * Returns the state of the queued, active and last ended uploads.
+	 */
+	List<TransferStatus> getTransfers() {
+		ArrayList<Transfer> transfers;
+		synchronized (this) {
+			transfers = new ArrayList<>(completed);
+			transfers.addAll(running);
+		}
+		ArrayList<TransferStatus> statuses = new ArrayList<>();
+		for (Transfer transfer : transfers) {
+			statuses.add(transfer.getStatus());
+		}
+		return statuses;
+	}
+
+	/*
+	 * Interrupts the active uploads and cancels the queued uploads : the uploads waiting for a worker and the uploads
+	 * waiting for their connection.
+	 */
+	void shutdown() {
+		workers.shutdownNow();
+		synchronized (this) {
+			for (Transfer transfer : new ArrayList<>(running)) {
+				cancel(transfer);
+			}
+			queues.clear();
+		}
+	}
+
+}
@@ -0,0 +1,97 @@
+package fr.upem.matou.client.network;
+
+/*
+ * This class records latencies in a log-linear histogram : the values are counted in buckets whose width grows with
+ * the value, so that the relative error of a percentile stays under 1.6 % whatever the number of recorded values.
+ *
+ * This class is not thread-safe : each thread records in its own histogram, and the histograms are merged at the end.
+ */
+class LatencyHistogram {
+
+	private static final int SUB_BITS = 7;
+	private static final int SUB_COUNT = 1 << SUB_BITS; // Values below are counted exactly
+	private static final int HALF_COUNT = SUB_COUNT >> 1; // Buckets for each power of two beyond
+
+	private final long[] counts = new long[SUB_COUNT + (Long.SIZE - 1 - SUB_BITS) * HALF_COUNT];
+	private long total = 0;
+	private long max = 0;
+
+	/*
+	 * Returns the index of the bucket of a positive value.
+	 */
+	private static int indexOf(long value) {
+		if (value < SUB_COUNT) {
+			return (int) value;
+		}
+		int high = Long.SIZE - 1 - Long.numberOfLeadingZeros(value); // At least SUB_BITS
+		int shift = high - SUB_BITS + 1; // (value >>> shift) is between HALF_COUNT and SUB_COUNT
+		return SUB_COUNT + (high - SUB_BITS) * HALF_COUNT + (int) (value >>> shift) - HALF_COUNT;
+	}
+
+	/*
+	 * Returns the highest value counted in a bucket.
+	 */
+	private static long highestValueOf(int index) {
+		if (index < SUB_COUNT) {
+			return index;
+		}
+		int shift = (index - SUB_COUNT) / HALF_COUNT + 1;
+		long sub = (index - SUB_COUNT) % HALF_COUNT + HALF_COUNT;
+		return (sub << shift) + (1L << shift) - 1;
+	}
+
+	/*
+	 * Records a value. A negative value is recorded as 0.
+	 */
+	void record(long value) { // O(1)
+		long positive = Math.max(0, value);
+		counts[indexOf(positive)]++;
+		total++;
+		max = Math.max(max, positive);
+	}
+
+	/*
+	 * Adds all the values of another histogram to this histogram.
+	 */
+	void merge(LatencyHistogram other) {
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+		total += other.total;
+		max = Math.max(max, other.max);
+	}
+
+	/*
+	 * Returns the number of recorded values.
+	 */
+	long getCount() {
+		return total;
+	}
+
+	/*
+	 * Returns the highest recorded value.
+	 */
+	long getMax() {
+		return max;
+	}
+
+	/*
+	 * Returns the value below which the given fraction of the values falls (0.99 for the 99th percentile). Returns 0 if
+	 * the histogram is empty.
+	 */
+	long getPercentile(double fraction) { // O(buckets)
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(fraction * total));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(max, highestValueOf(i));
+			}
+		}
+		return max;
+	}
+
+}
@@ -0,0 +1,201 @@
+package fr.upem.matou.client.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Optional;
+
+import fr.upem.matou.shared.network.ErrorType;
+import fr.upem.matou.shared.network.FrameDecoder;
+import fr.upem.matou.shared.network.FrameDecoder.Status;
+import fr.upem.matou.shared.network.NetworkCommunication;
+import fr.upem.matou.shared.network.NetworkProtocol.Communicator;
+
+/*
+ * This class represents a simulated client of the load generator. The connection is non-blocking : the requests are
+ * appended to a write buffer and the received requests are decoded in place from a read buffer, without allocation.
+ *
+ * This class is not thread-safe : it must only be used by the thread of its LoadWorker.
+ */
+class LoadConnection {
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final int STAMP_SIZE = Long.BYTES * 2; // Hexadecimal digits of the send time
+
+	private final LoadWorker worker;
+	private final SocketChannel sc;
+	private final SelectionKey key;
+	private final ByteBuffer encodedUsername; // In read mode
+	private final ByteBuffer bbRead = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final ByteBuffer bbWrite = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final FrameDecoder decoder = new FrameDecoder(bbRead, Communicator.SERVER, Communicator.CLIENT);
+	private boolean authent = false;
+
+	LoadConnection(LoadWorker worker, SocketChannel sc, SelectionKey key, ByteBuffer encodedUsername) {
+		this.worker = worker;
+		this.sc = sc;
+		this.key = key;
+		this.encodedUsername = encodedUsername;
+	}
+
+	/*
+	 * Returns the size of the send time written at the beginning of each message.
+	 */
+	static int getStampSize() {
+		return STAMP_SIZE;
+	}
+
+	/*
+	 * Writes a send time at the beginning of an encoded message, in hexadecimal.
+	 */
+	static void writeStamp(ByteBuffer encodedMessage, long stamp) {
+		for (int i = 0; i < STAMP_SIZE; i++) {
+			int digit = (int) (stamp >>> ((STAMP_SIZE - 1 - i) * 4)) & 0xF;
+			encodedMessage.put(encodedMessage.position() + i, (byte) Character.forDigit(digit, 16));
+		}
+	}
+
+	boolean isAuthent() {
+		return authent;
+	}
+
+	SocketChannel getChannel() {
+		return sc;
+	}
+
+	/*
+	 * Finishes the connection and sends the COREQ request.
+	 */
+	void finishConnect() throws IOException {
+		if (!sc.finishConnect()) {
+			return;
+		}
+		ClientCommunication.addRequestCOREQ(bbWrite, encodedUsername);
+		flush();
+	}
+
+	/*
+	 * Sends a MSG request. Returns false if the write buffer is full (the server does not read fast enough).
+	 */
+	boolean sendMessage(ByteBuffer encodedMessage) throws IOException {
+		if (!ClientCommunication.addRequestMSG(bbWrite, encodedMessage)) {
+			return false;
+		}
+		flush();
+		return true;
+	}
+
+	/*
+	 * Writes as much as possible of the write buffer, and asks for a write event if it is not empty.
+	 */
+	void flush() throws IOException {
+		bbWrite.flip();
+		try {
+			sc.write(bbWrite);
+		} finally {
+			bbWrite.compact();
+		}
+		int ops = SelectionKey.OP_READ;
+		if (bbWrite.position() > 0) {
+			ops |= SelectionKey.OP_WRITE;
+		}
+		key.interestOps(ops);
+	}
+
+	/*
+	 * Reads the available data and processes all the complete requests.
+	 */
+	void read() throws IOException {
+		if (sc.read(bbRead) == -1) {
+			throw new IOException("Connection closed by the server");
+		}
+		bbRead.flip();
+		try {
+			while (true) {
+				Status status = decoder.decode();
+				if (status == Status.INCOMPLETE) {
+					break;
+				}
+				if (status != Status.COMPLETE) {
+					throw new IOException("Protocol violation - " + status + " : " + decoder.getProtocol());
+				}
+				processFrame();
+				decoder.next();
+			}
+		} finally {
+			bbRead.compact();
+		}
+	}
+
+	/*
+	 * Processes a complete request.
+	 */
+	private void processFrame() throws IOException {
+		switch (decoder.getProtocol()) {
+		case ERROR: {
+			Optional<ErrorType> error = ErrorType.getError(decoder.getInt(0));
+			throw new IOException("Error received : " + (error.isPresent() ? error.get() : "UNKNOWN"));
+		}
+		case CORES: {
+			if (decoder.getByte(0) == 0) {
+				throw new IOException("Username refused");
+			}
+			authent = true;
+			worker.authenticated(this);
+			break;
+		}
+		case MSGBC: {
+			if (isOwnUsername(decoder.getPosition(0), decoder.getSize(0))) {
+				break; // The sender receives its own messages too
+			}
+			if (decoder.getSize(1) >= STAMP_SIZE) {
+				readStamp(decoder.getPosition(1));
+			}
+			break;
+		}
+		default:
+			break; // Notifications are ignored
+		}
+	}
+
+	/*
+	 * Returns true if the encoded username at the given offset is the username of this client.
+	 */
+	private boolean isOwnUsername(int offset, int size) {
+		if (size != encodedUsername.remaining()) {
+			return false;
+		}
+		int position = encodedUsername.position();
+		for (int i = 0; i < size; i++) {
+			if (bbRead.get(offset + i) != encodedUsername.get(position + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Reads the send time at the beginning of a received message and notifies the worker. The messages that were not
+	 * sent by the load generator are ignored.
+	 */
+	private void readStamp(int offset) {
+		long stamp = 0;
+		for (int i = 0; i < STAMP_SIZE; i++) {
+			int digit = Character.digit(bbRead.get(offset + i), 16);
+			if (digit == -1) {
+				return;
+			}
+			stamp = (stamp << 4) | digit;
+		}
+		worker.delivered(stamp);
+	}
+
+	/*
+	 * Closes the connection.
+	 */
+	void close() {
+		NetworkCommunication.silentlyClose(sc);
+	}
+
+}
@@ -0,0 +1,293 @@
+package fr.upem.matou.client.network;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+import fr.upem.matou.shared.network.NetworkCommunication;
+
+/**
+ * This class provides a headless load generator for the chat server. It simulates many clients over a few
+ * non-blocking threads : all the clients are connected and authenticated, then they send messages at a fixed global
+ * rate and the generator measures the delay between the send of each message and its reception by every other client
+ * (the fan-out latency).
+ *
+ * The server must accept all the simulated clients : its maximum number of clients must be high enough, and its
+ * maximum number of clients without username must not be lower than the number of simultaneous handshakes.
+ */
+public class LoadGenerator {
+
+	private static final long DRAIN_DELAY = TimeUnit.SECONDS.toMillis(2); // Delay to receive the last messages
+	private static final long REPORT_PERIOD = TimeUnit.SECONDS.toMillis(1);
+	private static final char PADDING = 'x';
+
+	private final InetSocketAddress server;
+	private final int clients;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private double rate = 100;
+	private int[] sizes = { 16, 128, 512 };
+	private int[] weights = { 70, 25, 5 };
+	private int handshakes = 8;
+	private String prefix = "load";
+
+	/**
+	 * Creates a new load generator.
+	 *
+	 * @param host
+	 *            The host of the server.
+	 * @param port
+	 *            The port of the server.
+	 * @param clients
+	 *            The number of simulated clients.
+	 * @throws IllegalArgumentException
+	 *             If the number of clients is lower than 2.
+	 */
+	public LoadGenerator(String host, int port, int clients) {
+		requireNonNull(host);
+		if (clients < 2) {
+			throw new IllegalArgumentException("Invalid number of clients : " + clients);
+		}
+		this.server = new InetSocketAddress(host, port);
+		this.clients = clients;
+	}
+
+	/**
+	 * Sets the number of threads that run the clients. The default value is the number of available processors.
+	 *
+	 * @param threads
+	 *            The number of threads (at least 1).
+	 * @throws IllegalArgumentException
+	 *             If the number of threads is not strictly positive.
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Invalid number of threads : " + threads);
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * Sets the number of messages sent per second by all the clients together. The default value is 100.
+	 *
+	 * @param rate
+	 *            The number of messages per second.
+	 * @throws IllegalArgumentException
+	 *             If the rate is not strictly positive.
+	 */
+	public void setRate(double rate) {
+		if (!(rate > 0)) {
+			throw new IllegalArgumentException("Invalid rate : " + rate);
+		}
+		this.rate = rate;
+	}
+
+	/**
+	 * Sets the mix of message sizes. Each message has one of the given sizes, chosen at random according to the
+	 * weights. The default mix is 70 % of 16 bytes, 25 % of 128 bytes and 5 % of 512 bytes.
+	 *
+	 * @param sizes
+	 *            The sizes of the messages in bytes.
+	 * @param weights
+	 *            The weight of each size.
+	 * @throws IllegalArgumentException
+	 *             If the arrays are empty or of different lengths, if a size is not between the size of the send time
+	 *             and the maximum size of a message, or if a weight is negative or if all weights are 0.
+	 */
+	public void setMessageSizes(int[] sizes, int[] weights) {
+		requireNonNull(sizes);
+		requireNonNull(weights);
+		if (sizes.length == 0 || sizes.length != weights.length) {
+			throw new IllegalArgumentException("Invalid message sizes : " + Arrays.toString(sizes) + " / "
+					+ Arrays.toString(weights));
+		}
+		int total = 0;
+		for (int i = 0; i < sizes.length; i++) {
+			if (sizes[i] < LoadConnection.getStampSize() || sizes[i] > NetworkCommunication.getMessageMaxSize()) {
+				throw new IllegalArgumentException("Invalid message size : " + sizes[i]);
+			}
+			if (weights[i] < 0) {
+				throw new IllegalArgumentException("Invalid message weight : " + weights[i]);
+			}
+			total += weights[i];
+		}
+		if (total == 0) {
+			throw new IllegalArgumentException("Invalid message weights : " + Arrays.toString(weights));
+		}
+		this.sizes = sizes.clone();
+		this.weights = weights.clone();
+	}
+
+	/**
+	 * Sets the maximum number of clients that are connecting at the same time. The default value is 8.
+	 *
+	 * @param handshakes
+	 *            The maximum number of simultaneous handshakes (at least 1).
+	 * @throws IllegalArgumentException
+	 *             If the number of handshakes is not strictly positive.
+	 */
+	public void setHandshakes(int handshakes) {
+		if (handshakes < 1) {
+			throw new IllegalArgumentException("Invalid number of handshakes : " + handshakes);
+		}
+		this.handshakes = handshakes;
+	}
+
+	/**
+	 * Sets the prefix of the usernames of the clients. The username of a client is the prefix followed by its index.
+	 * The default prefix is "load".
+	 *
+	 * @param prefix
+	 *            The prefix of the usernames.
+	 * @throws IllegalArgumentException
+	 *             If the prefix does not give valid usernames.
+	 */
+	public void setPrefix(String prefix) {
+		requireNonNull(prefix);
+		if (!NetworkCommunication.encodeUsername(prefix + (clients - 1)).isPresent()) {
+			throw new IllegalArgumentException("Invalid username prefix : " + prefix);
+		}
+		this.prefix = prefix;
+	}
+
+	/*
+	 * Returns the encoded messages of each size. The beginning of each message is overwritten by its send time.
+	 */
+	private ByteBuffer[] createTemplates() {
+		ByteBuffer[] templates = new ByteBuffer[sizes.length];
+		for (int i = 0; i < sizes.length; i++) {
+			char[] message = new char[sizes[i]];
+			Arrays.fill(message, PADDING);
+			Optional<ByteBuffer> encoded = NetworkCommunication.encodeMessage(new String(message));
+			templates[i] = encoded.get(); // Sizes are checked by setMessageSizes
+		}
+		return templates;
+	}
+
+	/*
+	 * Returns the sum of a counter of all the workers.
+	 */
+	private static long sum(LoadWorker[] workers, ToLongFunction<LoadWorker> counter) {
+		long sum = 0;
+		for (LoadWorker worker : workers) {
+			sum += counter.applyAsLong(worker);
+		}
+		return sum;
+	}
+
+	/*
+	 * Formats a latency in ns.
+	 */
+	private static String formatLatency(long nanos) {
+		return String.format("%.3f ms", nanos / 1_000_000.0);
+	}
+
+	/**
+	 * Runs the load : connects all the clients, sends messages during the warm-up and the measure, then prints the
+	 * report. The progress is printed every second.
+	 *
+	 * @param warmup
+	 *            The duration of the warm-up in milliseconds. The messages sent during the warm-up are not measured.
+	 * @param duration
+	 *            The duration of the measure in milliseconds.
+	 * @param out
+	 *            The stream where the progress and the report are printed.
+	 * @throws IOException
+	 *             If no client can be connected.
+	 * @throws InterruptedException
+	 *             If the current thread is interrupted.
+	 */
+	public void run(long warmup, long duration, PrintStream out) throws IOException, InterruptedException {
+		if (warmup < 0 || duration < 1) {
+			throw new IllegalArgumentException("Invalid durations : " + warmup + " / " + duration);
+		}
+		requireNonNull(out);
+
+		int count = Math.min(threads, clients);
+		LoadWorker[] workers = new LoadWorker[count];
+		Thread[] workerThreads = new Thread[count];
+		CountDownLatch ready = new CountDownLatch(count);
+		for (int i = 0; i < count; i++) {
+			ArrayDeque<ByteBuffer> usernames = new ArrayDeque<>();
+			for (int client = i; client < clients; client += count) {
+				usernames.add(NetworkCommunication.encodeUsername(prefix + client).get());
+			}
+			int workerHandshakes = Math.max(1, handshakes / count);
+			workers[i] = new LoadWorker(server, usernames, workerHandshakes, rate / count, createTemplates(),
+					weights, ready);
+			workerThreads[i] = new Thread(workers[i], "load worker " + i);
+		}
+
+		try {
+			for (Thread thread : workerThreads) {
+				thread.start();
+			}
+			long connectStart = System.nanoTime();
+			ready.await();
+			long connected = sum(workers, LoadWorker::getAuthenticated);
+			out.println("Clients : " + connected + "/" + clients + " connected in "
+					+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStart) + " ms on " + count
+					+ " thread(s)");
+			if (connected == 0) {
+				throw new IOException("No client connected");
+			}
+
+			long start = System.nanoTime();
+			long measure = start + TimeUnit.MILLISECONDS.toNanos(warmup);
+			long end = measure + TimeUnit.MILLISECONDS.toNanos(duration);
+			long stop = end + TimeUnit.MILLISECONDS.toNanos(DRAIN_DELAY);
+			for (LoadWorker worker : workers) {
+				worker.start(start, measure, end, stop);
+			}
+
+			long elapsed = 0;
+			for (Thread thread : workerThreads) {
+				while (thread.isAlive()) {
+					thread.join(REPORT_PERIOD);
+					long now = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+					if (now - elapsed >= REPORT_PERIOD) {
+						elapsed = now;
+						out.println("[" + elapsed / 1000 + " s] sent=" + sum(workers, LoadWorker::getSent)
+								+ " delivered=" + sum(workers, LoadWorker::getDelivered) + " overflows="
+								+ sum(workers, LoadWorker::getOverflows) + " failures="
+								+ sum(workers, LoadWorker::getFailures));
+					}
+				}
+			}
+		} finally {
+			for (Thread thread : workerThreads) {
+				thread.interrupt();
+			}
+			for (Thread thread : workerThreads) {
+				thread.join();
+			}
+		}
+
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (LoadWorker worker : workers) {
+			histogram.merge(worker.getHistogram());
+		}
+		double seconds = duration / 1000.0;
+		long sent = sum(workers, LoadWorker::getSent);
+		long delivered = sum(workers, LoadWorker::getDelivered);
+		out.println("Sent : " + sent + " message(s) in " + seconds + " s ("
+				+ String.format("%.1f", sent / seconds) + " msg/s)");
+		out.println("Delivered : " + delivered + " message(s) (" + String.format("%.1f", delivered / seconds)
+				+ " msg/s)");
+		out.println("Overflows : " + sum(workers, LoadWorker::getOverflows)
+				+ " message(s) not sent because the server did not read them");
+		out.println("Failures : " + sum(workers, LoadWorker::getFailures) + " client(s)");
+		out.println("Fan-out latency : p50=" + formatLatency(histogram.getPercentile(0.50)) + " p99="
+				+ formatLatency(histogram.getPercentile(0.99)) + " p999=" + formatLatency(histogram.getPercentile(0.999))
+				+ " max=" + formatLatency(histogram.getMax()));
+	}
+
+}
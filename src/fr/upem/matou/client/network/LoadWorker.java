@@ -0,0 +1,288 @@
+package fr.upem.matou.client.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import fr.upem.matou.shared.logger.Logger;
+import fr.upem.matou.shared.network.NetworkCommunication;
+
+/*
+ * This class represents a thread of the load generator. A worker owns a selector and a share of the simulated clients :
+ * it connects them, makes them send messages at its share of the rate and times the broadcast messages they receive.
+ *
+ * The messages are sent on a fixed schedule, and each message carries its scheduled send time : a late worker or a
+ * slow server increases the measured latency instead of hiding it.
+ *
+ * The methods of this class must only be called by the thread of the worker, except start, the counter getters (which
+ * return approximate values while the worker runs) and getHistogram (once the worker is terminated).
+ */
+@SuppressWarnings("resource")
+class LoadWorker implements Runnable {
+
+	private final InetSocketAddress server;
+	private final ArrayDeque<ByteBuffer> pendingUsernames; // Encoded usernames of the clients not connected yet
+	private final int maxHandshakes;
+	private final long interval; // Delay in ns between two messages
+	private final ByteBuffer[] templates; // Encoded messages of each size (in read mode)
+	private final int[] cumulativeWeights;
+	private final CountDownLatch ready;
+
+	private final Selector selector;
+	private final SplittableRandom random = new SplittableRandom();
+	private final ArrayList<LoadConnection> connections = new ArrayList<>(); // Authenticated clients
+	private final LatencyHistogram histogram = new LatencyHistogram();
+	private int handshakes = 0;
+	private boolean readySignaled = false;
+	private int next = 0; // Next client to send a message
+
+	private volatile boolean started = false;
+	private long measureTime; // Messages sent before are not measured (warm-up)
+	private long endTime; // No message is sent after
+	private long stopTime; // The clients are disconnected after
+	private long nextSend;
+
+	private volatile long sent = 0;
+	private volatile long delivered = 0;
+	private volatile long overflows = 0;
+	private volatile long failures = 0;
+	private volatile long authenticated = 0;
+
+	LoadWorker(InetSocketAddress server, ArrayDeque<ByteBuffer> usernames, int maxHandshakes, double rate,
+			ByteBuffer[] templates, int[] weights, CountDownLatch ready) throws IOException {
+		this.server = server;
+		this.pendingUsernames = usernames;
+		this.maxHandshakes = maxHandshakes;
+		this.interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+		this.templates = templates;
+		this.cumulativeWeights = new int[weights.length];
+		int sum = 0;
+		for (int i = 0; i < weights.length; i++) {
+			sum += weights[i];
+			cumulativeWeights[i] = sum;
+		}
+		this.ready = ready;
+		this.selector = Selector.open();
+	}
+
+	/*
+	 * Starts sending messages. The times are given in ns, as returned by System.nanoTime.
+	 */
+	void start(long startTime, long measureTime, long endTime, long stopTime) {
+		this.nextSend = startTime;
+		this.measureTime = measureTime;
+		this.endTime = endTime;
+		this.stopTime = stopTime;
+		started = true; // Publishes the times
+		selector.wakeup();
+	}
+
+	long getSent() {
+		return sent;
+	}
+
+	long getDelivered() {
+		return delivered;
+	}
+
+	long getOverflows() {
+		return overflows;
+	}
+
+	long getFailures() {
+		return failures;
+	}
+
+	long getAuthenticated() {
+		return authenticated;
+	}
+
+	LatencyHistogram getHistogram() {
+		return histogram;
+	}
+
+	/*
+	 * Notifies that a client is authenticated.
+	 */
+	void authenticated(LoadConnection connection) {
+		handshakes--;
+		authenticated++;
+		connections.add(connection);
+	}
+
+	/*
+	 * Notifies that a client received a message sent at the given time.
+	 */
+	void delivered(long stamp) {
+		if (stamp - measureTime < 0) {
+			return; // Warm-up
+		}
+		delivered++;
+		histogram.record(System.nanoTime() - stamp);
+	}
+
+	/*
+	 * Disconnects a client after a failure.
+	 */
+	private void failed(LoadConnection connection, String reason) {
+		Logger.warning("Load client failure : " + reason);
+		connection.close();
+		failures++;
+		if (connection.isAuthent()) {
+			connections.remove(connection); // O(n) but rare
+		} else {
+			handshakes--;
+		}
+	}
+
+	/*
+	 * Opens new connections until the maximum number of simultaneous handshakes is reached.
+	 */
+	private void connectPending() {
+		while (handshakes < maxHandshakes && !pendingUsernames.isEmpty()) {
+			ByteBuffer username = pendingUsernames.poll();
+			SocketChannel sc = null;
+			LoadConnection connection;
+			try {
+				sc = SocketChannel.open();
+				sc.configureBlocking(false);
+				SelectionKey key = sc.register(selector, SelectionKey.OP_CONNECT);
+				connection = new LoadConnection(this, sc, key, username);
+				key.attach(connection);
+			} catch (IOException e) {
+				Logger.warning("Load client failure : " + e);
+				if (sc != null) {
+					NetworkCommunication.silentlyClose(sc);
+				}
+				failures++;
+				continue;
+			}
+
+			handshakes++;
+			try {
+				if (sc.connect(server)) {
+					connection.finishConnect();
+				}
+			} catch (IOException e) {
+				failed(connection, e.toString());
+			}
+		}
+		if (!readySignaled && pendingUsernames.isEmpty() && handshakes <= 0) {
+			readySignaled = true;
+			ready.countDown();
+		}
+	}
+
+	/*
+	 * Sends all the messages whose send time has come.
+	 */
+	private void sendMessages(long now) {
+		while (nextSend - now <= 0 && nextSend - endTime < 0) {
+			if (!connections.isEmpty()) {
+				if (next >= connections.size()) {
+					next = 0;
+				}
+				LoadConnection connection = connections.get(next++);
+				ByteBuffer template = pickTemplate();
+				LoadConnection.writeStamp(template, nextSend);
+				try {
+					if (!connection.sendMessage(template)) {
+						overflows++;
+					} else if (nextSend - measureTime >= 0) {
+						sent++;
+					}
+				} catch (IOException e) {
+					failed(connection, e.toString());
+				}
+			}
+			nextSend += interval;
+		}
+	}
+
+	/*
+	 * Picks an encoded message according to the weights of the sizes.
+	 */
+	private ByteBuffer pickTemplate() {
+		int draw = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+		for (int i = 0; i < cumulativeWeights.length; i++) {
+			if (draw < cumulativeWeights[i]) {
+				return templates[i];
+			}
+		}
+		return templates[templates.length - 1];
+	}
+
+	/*
+	 * Processes all the selected keys.
+	 */
+	private void processSelectedKeys(Set<SelectionKey> selectedKeys) {
+		for (SelectionKey key : selectedKeys) {
+			LoadConnection connection = (LoadConnection) key.attachment();
+			try {
+				if (key.isValid() && key.isConnectable()) {
+					connection.finishConnect();
+				}
+				if (key.isValid() && key.isWritable()) {
+					connection.flush();
+				}
+				if (key.isValid() && key.isReadable()) {
+					connection.read();
+				}
+			} catch (IOException e) {
+				failed(connection, e.toString());
+			}
+		}
+		selectedKeys.clear();
+	}
+
+	/*
+	 * Runs the worker until its stop time, or until its thread is interrupted.
+	 */
+	@Override
+	public void run() {
+		Set<SelectionKey> selectedKeys = selector.selectedKeys();
+		try {
+			connectPending();
+			while (!Thread.interrupted()) {
+				long timeout = 0; // Until an event
+				if (started) {
+					long now = System.nanoTime();
+					if (now - stopTime >= 0) {
+						break;
+					}
+					sendMessages(now);
+					long wakeup = nextSend - endTime < 0 ? nextSend : stopTime;
+					timeout = Math.max(1, TimeUnit.NANOSECONDS.toMillis(wakeup - now + 999_999));
+				}
+				selector.select(timeout);
+				processSelectedKeys(selectedKeys);
+				connectPending();
+			}
+		} catch (IOException e) {
+			Logger.error(e.toString());
+			Logger.exception(e);
+		} finally {
+			for (SelectionKey key : selector.keys()) {
+				((LoadConnection) key.attachment()).close();
+			}
+			try {
+				selector.close();
+			} catch (IOException e) {
+				Logger.exception(e);
+			}
+			if (!readySignaled) {
+				ready.countDown();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,140 @@
+package fr.upem.matou.client.network;
+
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fr.upem.matou.shared.logger.Logger;
+import fr.upem.matou.shared.network.NetworkCommunication;
+
+/*
+ * This class represents the file connections of a private connection. There is at least one file connection, and the
+ * destination of the private connection may open some more to send the large files in parallel parts.
+ *
+ * This class is thread-safe.
+ */
+class PrivateFileConnections {
+
+	private final CopyOnWriteArrayList<ClientWriter> writers = new CopyOnWriteArrayList<>();
+	private final AtomicInteger nextWriter = new AtomicInteger();
+	private final AtomicInteger nextTransfer = new AtomicInteger();
+	private final AtomicInteger nextResumed = new AtomicInteger(-1);
+	private final HashMap<Integer, FileDownload> downloads = new HashMap<>(); // Guarded by this
+	private ServerSocketChannel listener = null; // Guarded by this
+	private boolean closed = false; // Guarded by this
+
+	/*
+	 * Adds a file connection. Returns false if the connections are closed.
+	 */
+	synchronized boolean add(ClientWriter writer) {
+		if (closed) {
+			return false;
+		}
+		writers.add(writer);
+		return true;
+	}
+
+	/*
+	 * Sets the channel that accepts the additional file connections, so that it is closed with the connections.
+	 * Returns false if the connections are closed.
+	 */
+	synchronized boolean setListener(ServerSocketChannel ssc) {
+		if (closed) {
+			return false;
+		}
+		listener = ssc;
+		return true;
+	}
+
+	/*
+	 * Returns the file connections.
+	 */
+	List<ClientWriter> getWriters() {
+		return new ArrayList<>(writers);
+	}
+
+	/*
+	 * Returns a file connection, in turn.
+	 */
+	ClientWriter getWriter() {
+		// Connections are never removed, so the index stays valid if one is added meanwhile
+		return writers.get(Math.floorMod(nextWriter.getAndIncrement(), writers.size()));
+	}
+
+	/*
+	 * Returns a new identifier for a file sent in several parts.
+	 */
+	int nextTransferId() {
+		return nextTransfer.getAndIncrement();
+	}
+
+	/*
+	 * Returns the reception of the given file, and starts it if this is its first part. The negative identifiers are
+	 * the resumed receptions : they must already be registered.
+	 */
+	synchronized FileDownload getDownload(int transferId, String username, String filename, long totalSize,
+			boolean mapped) throws IOException {
+		if (closed) {
+			throw new IOException("Private file connections closed");
+		}
+		FileDownload download = downloads.get(transferId);
+		if (download == null) {
+			if (transferId < 0) {
+				throw new IOException("Protocol violation - Unknown resumed file : " + transferId);
+			}
+			download = FileDownload.create(username, filename, totalSize, mapped);
+			downloads.put(transferId, download);
+		}
+		return download;
+	}
+
+	/*
+	 * Registers a resumed reception and returns its identifier. These identifiers are negative, so they never collide
+	 * with the identifiers chosen by the sender.
+	 */
+	synchronized int addResumedDownload(FileDownload download) throws IOException {
+		if (closed) {
+			download.suspend();
+			throw new IOException("Private file connections closed");
+		}
+		int transferId = nextResumed.getAndDecrement();
+		downloads.put(transferId, download);
+		return transferId;
+	}
+
+	/*
+	 * Removes a completed reception.
+	 */
+	synchronized void removeDownload(int transferId) {
+		downloads.remove(transferId);
+	}
+
+	/*
+	 * Closes all the file connections and suspends the incomplete receptions, so that they can be resumed later.
+	 */
+	void close() {
+		ServerSocketChannel ssc;
+		ArrayList<FileDownload> incomplete;
+		synchronized (this) {
+			closed = true;
+			ssc = listener;
+			incomplete = new ArrayList<>(downloads.values());
+			downloads.clear();
+		}
+		if (ssc != null) {
+			NetworkCommunication.silentlyClose(ssc);
+		}
+		for (ClientWriter writer : writers) {
+			Logger.debugNetworkData(writer.getChannel(), "SILENTLY CLOSE (PV FILE)");
+			NetworkCommunication.silentlyClose(writer.getChannel());
+		}
+		for (FileDownload download : incomplete) {
+			download.suspend();
+		}
+	}
+
+}
@@ -0,0 +1,231 @@
+package fr.upem.matou.client.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.locks.ReentrantLock;
+
+import fr.upem.matou.shared.network.NetworkProtocol.Communicator;
+
+/*
+ * This class carries the messages and the files of a private connection on a single connection. The bytes of each
+ * stream are sent in frames tagged with their stream : a frame is made of the stream (int), the size of its content
+ * (int) and the content.
+ *
+ * Each request of the message stream is sent in a single frame. The contents of the files are cut in frames of limited
+ * size, and the channel is released between two frames : the writers wait for the channel in turn, so a message waits
+ * for one frame of file at most.
+ *
+ * The frames are read by a single receiver : the file stream is read as a channel, and each frame of the message stream
+ * met meanwhile is given to the message handler before reading on.
+ *
+ * This class is thread-safe for the writers. The streams must be read by a single thread.
+ */
+class PrivateMultiplexer {
+
+	static final int MESSAGE_STREAM = 0;
+	static final int FILE_STREAM = 1;
+
+	private static final int HEADER_SIZE = Integer.BYTES * 2;
+	private static final int FILE_FRAME_SIZE = 16 * 1024; // Maximum size of a file frame
+
+	/*
+	 * Handles a frame of the message stream.
+	 */
+	@FunctionalInterface
+	static interface MessageHandler {
+		void handle() throws IOException;
+	}
+
+	private final SocketChannel sc;
+	private final int maxFrameSize;
+	private final ReentrantLock writeLock = new ReentrantLock(true); // Fair : the writers take the channel in turn
+	private final ByteBuffer header = ByteBuffer.allocateDirect(HEADER_SIZE); // Guarded by writeLock
+	private final ByteBuffer readHeader = ByteBuffer.allocateDirect(HEADER_SIZE); // Used by the receiver only
+	private final ByteBuffer message; // Content of the last message frame - Used by the receiver only
+	private int fileRemaining = 0; // Bytes of the current file frame not read yet - Used by the receiver only
+
+	PrivateMultiplexer(SocketChannel sc) {
+		this.sc = sc;
+		int requestSize = ClientCommunication.getClientWriteBufferSize(Communicator.CLIENT);
+		this.maxFrameSize = Math.max(FILE_FRAME_SIZE, requestSize);
+		this.message = ByteBuffer.allocate(requestSize);
+		this.message.flip(); // Empty
+	}
+
+	SocketChannel getChannel() {
+		return sc;
+	}
+
+	/*
+	 * Writes the remaining bytes of a buffer in frames of the given stream. Each message request (smaller than a write
+	 * buffer) is written in a single frame.
+	 */
+	private int writeFrames(int stream, ByteBuffer src) throws IOException {
+		int count = src.remaining();
+		int frameSize = (stream == MESSAGE_STREAM) ? maxFrameSize : FILE_FRAME_SIZE;
+		while (src.hasRemaining()) {
+			ByteBuffer content = src.duplicate();
+			content.limit(content.position() + Math.min(frameSize, content.remaining()));
+			writeLock.lock();
+			try {
+				header.clear();
+				header.putInt(stream).putInt(content.remaining());
+				header.flip();
+				ByteBuffer[] frame = { header, content };
+				while (content.hasRemaining()) {
+					sc.write(frame);
+				}
+			} finally {
+				writeLock.unlock();
+			}
+			src.position(content.position());
+		}
+		return count;
+	}
+
+	/*
+	 * Returns a channel that writes in the given stream.
+	 */
+	WritableByteChannel getOutput(int stream) {
+		return new WritableByteChannel() {
+
+			@Override
+			public boolean isOpen() {
+				return sc.isOpen();
+			}
+
+			@Override
+			public void close() throws IOException {
+				sc.close();
+			}
+
+			@Override
+			public int write(ByteBuffer src) throws IOException {
+				return writeFrames(stream, src);
+			}
+
+		};
+	}
+
+	/*
+	 * Reads bytes of the channel until the given buffer is full.
+	 */
+	private void readFully(ByteBuffer bb) throws IOException {
+		while (bb.hasRemaining()) {
+			if (sc.read(bb) == -1) {
+				throw new IOException("Connection closed");
+			}
+		}
+	}
+
+	/*
+	 * Reads the frames until a frame of the file stream. The frames of the message stream are given to the handler.
+	 */
+	private void nextFileFrame(MessageHandler handler) throws IOException {
+		while (fileRemaining == 0) {
+			readHeader.clear();
+			readFully(readHeader);
+			readHeader.flip();
+			int stream = readHeader.getInt();
+			int size = readHeader.getInt();
+			if (size < 0 || size > maxFrameSize) {
+				throw new IOException("Protocol violation - Invalid frame size : " + size);
+			}
+			switch (stream) {
+			case FILE_STREAM:
+				fileRemaining = size;
+				break;
+			case MESSAGE_STREAM:
+				if (size > message.capacity()) {
+					throw new IOException("Protocol violation - Invalid frame size : " + size);
+				}
+				message.clear();
+				message.limit(size);
+				readFully(message);
+				message.flip();
+				handler.handle();
+				break;
+			default:
+				throw new IOException("Protocol violation - Invalid frame stream : " + stream);
+			}
+		}
+	}
+
+	/*
+	 * Returns a channel that reads the file stream, and gives each frame of the message stream to the handler. The
+	 * handler reads the content of the frame from the message input.
+	 */
+	ReadableByteChannel getFileInput(MessageHandler handler) {
+		return new ReadableByteChannel() {
+
+			@Override
+			public boolean isOpen() {
+				return sc.isOpen();
+			}
+
+			@Override
+			public void close() throws IOException {
+				sc.close();
+			}
+
+			@Override
+			public int read(ByteBuffer dst) throws IOException {
+				if (!dst.hasRemaining()) {
+					return 0;
+				}
+				nextFileFrame(handler);
+				ByteBuffer window = dst.duplicate();
+				window.limit(window.position() + Math.min(window.remaining(), fileRemaining));
+				int read = sc.read(window);
+				if (read == -1) {
+					return -1;
+				}
+				dst.position(window.position());
+				fileRemaining -= read;
+				return read;
+			}
+
+		};
+	}
+
+	/*
+	 * Returns a channel that reads the content of the last message frame. The end of the frame is read as the end of
+	 * the stream, since a message request is never split.
+	 */
+	ReadableByteChannel getMessageInput() {
+		return new ReadableByteChannel() {
+
+			@Override
+			public boolean isOpen() {
+				return sc.isOpen();
+			}
+
+			@Override
+			public void close() throws IOException {
+				sc.close();
+			}
+
+			@Override
+			public int read(ByteBuffer dst) throws IOException {
+				if (!sc.isOpen()) {
+					throw new ClosedChannelException();
+				}
+				if (!message.hasRemaining()) {
+					return -1;
+				}
+				int count = Math.min(message.remaining(), dst.remaining());
+				ByteBuffer content = message.duplicate();
+				content.limit(content.position() + count);
+				dst.put(content);
+				message.position(message.position() + count);
+				return count;
+			}
+
+		};
+	}
+
+}
@@ -0,0 +1,67 @@
+package fr.upem.matou.client.network;
+
+/*
+ * This class is a token bucket that limits the rate of the private file uploads. The bucket is refilled continuously
+ * at the given rate, and holds at most the bytes of a short burst. The bytes are taken from the bucket before being
+ * written, by steps no larger than a burst : the bucket can be in debt, and the writer waits until the debt is paid
+ * before writing them. A rate of 0 means that the uploads are not limited.
+ *
+ * This class is thread-safe : a bucket can be shared by the uploads of a user, or by all the uploads.
+ */
+class RateLimiter {
+
+	private static final long BURST_DIVISOR = 10; // The bucket holds 100 ms of bytes
+
+	private long rate; // Bytes per second - Guarded by this
+	private double tokens = 0; // Guarded by this
+	private long last = System.nanoTime(); // Guarded by this
+
+	RateLimiter(long rate) {
+		setRate(rate);
+	}
+
+	/*
+	 * Sets the rate in bytes per second, or 0 to disable the limit. The new rate is applied to the next bytes.
+	 */
+	synchronized void setRate(long rate) {
+		if (rate < 0) {
+			throw new IllegalArgumentException("Invalid rate : " + rate);
+		}
+		this.rate = rate;
+		tokens = 0;
+		last = System.nanoTime();
+	}
+
+	synchronized long getRate() {
+		return rate;
+	}
+
+	/*
+	 * Returns the largest number of bytes that may be written at once, or Long.MAX_VALUE if there is no limit.
+	 */
+	synchronized long getBurst() {
+		if (rate == 0) {
+			return Long.MAX_VALUE;
+		}
+		return Math.max(1, rate / BURST_DIVISOR);
+	}
+
+	/*
+	 * Takes bytes from the bucket before writing them. Returns the time to wait (in nanoseconds) before writing them.
+	 */
+	synchronized long consume(long count) {
+		if (rate == 0) {
+			return 0;
+		}
+		long now = System.nanoTime();
+		double burst = getBurst();
+		tokens = Math.min(burst, tokens + (now - last) * (double) rate / 1_000_000_000);
+		last = now;
+		tokens -= count;
+		if (tokens >= 0) {
+			return 0;
+		}
+		return (long) (-tokens * 1_000_000_000 / rate);
+	}
+
+}
@@ -0,0 +1,26 @@
+package fr.upem.matou.client.network;
+
+import java.nio.file.Path;
+
+/*
+ * This object describes a file completely received from a user, and the integrity of this file as checked with the
+ * checksums of its parts.
+ */
+class ReceivedFileData {
+	private final Path path;
+	private final FileIntegrity integrity;
+
+	ReceivedFileData(Path path, FileIntegrity integrity) {
+		this.path = path;
+		this.integrity = integrity;
+	}
+
+	Path getPath() {
+		return path;
+	}
+
+	FileIntegrity getIntegrity() {
+		return integrity;
+	}
+
+}
@@ -0,0 +1,127 @@
+package fr.upem.matou.client.network;
+
+import static java.util.Objects.requireNonNull;
+
+import java.nio.file.Path;
+
+import fr.upem.matou.shared.network.Username;
+
+/**
+ * This class represents the state of a private file upload (a whole file or a part of a file) at a given time.
+ */
+public class TransferStatus {
+
+	/**
+	 * Describes the progress of an upload.
+	 */
+	public static enum State {
+
+		/**
+		 * The upload waits for its file connection or for a worker.
+		 */
+		QUEUED,
+
+		/**
+		 * The upload is running.
+		 */
+		ACTIVE,
+
+		/**
+		 * The upload is finished.
+		 */
+		COMPLETED,
+
+		/**
+		 * The upload is interrupted.
+		 */
+		FAILED;
+
+	}
+
+	private final Username username;
+	private final Path path;
+	private final State state;
+	private final long size;
+	private final long transferred;
+	private final long rate;
+
+	TransferStatus(Username username, Path path, State state, long size, long transferred, long rate) {
+		this.username = requireNonNull(username);
+		this.path = requireNonNull(path);
+		this.state = requireNonNull(state);
+		this.size = size;
+		this.transferred = transferred;
+		this.rate = rate;
+	}
+
+	/**
+	 * Returns the username of the receiver.
+	 *
+	 * @return The username of the receiver.
+	 */
+	public Username getUsername() {
+		return username;
+	}
+
+	/**
+	 * Returns the path of the uploaded file.
+	 *
+	 * @return The path of the file.
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * Returns the progress of the upload.
+	 *
+	 * @return The state of the upload.
+	 */
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * Returns the number of bytes to upload (the size of the part if the file is sent in several parts).
+	 *
+	 * @return The size in bytes.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of bytes already uploaded.
+	 *
+	 * @return The number of bytes.
+	 */
+	public long getTransferred() {
+		return transferred;
+	}
+
+	/**
+	 * Returns the rate of the upload : the average rate since its start, or the rate since the previous progress
+	 * event.
+	 *
+	 * @return The rate in bytes per second, or 0 if the upload is not started.
+	 */
+	public long getRate() {
+		return rate;
+	}
+
+	/**
+	 * Returns the estimated time until the end of the upload, at the current rate.
+	 *
+	 * @return The time in seconds, or -1 if the rate is unknown.
+	 */
+	public long getRemainingTime() {
+		if (transferred >= size) {
+			return 0;
+		}
+		if (rate == 0) {
+			return -1;
+		}
+		return (size - transferred + rate - 1) / rate;
+	}
+
+}
@@ -9,10 +9,14 @@ import java.util.stream.Collectors;
 import fr.upem.matou.client.network.ClientEvent;
 import fr.upem.matou.client.network.ClientEvent.ClientEventAcceptPrivate;
 import fr.upem.matou.client.network.ClientEvent.ClientEventClosePrivate;
+import fr.upem.matou.client.network.ClientEvent.ClientEventLimitGlobalRate;
+import fr.upem.matou.client.network.ClientEvent.ClientEventLimitTransferRate;
+import fr.upem.matou.client.network.ClientEvent.ClientEventLimitUserRate;
 import fr.upem.matou.client.network.ClientEvent.ClientEventOpenPrivate;
 import fr.upem.matou.client.network.ClientEvent.ClientEventSendMessage;
 import fr.upem.matou.client.network.ClientEvent.ClientEventSendPrivateFile;
 import fr.upem.matou.client.network.ClientEvent.ClientEventSendPrivateMessage;
+import fr.upem.matou.client.network.ClientEvent.ClientEventShowTransfers;
 
 /*
  * This class is used to convert an input string command to a ClientEvent.
@@ -33,6 +37,21 @@ class ShellCommand {
 		return input.equals(EXIT_COMMAND);
 	}
 
+	/*
+	 * Parses a rate in kibibytes per second. The rate must be convertible in bytes per second.
+	 */
+	private static Optional<Long> parseRate(String input) {
+		try {
+			long rate = Long.parseLong(input);
+			if (rate < 0 || rate > Long.MAX_VALUE / 1024) {
+				return Optional.empty();
+			}
+			return Optional.of(rate);
+		} catch (@SuppressWarnings("unused") NumberFormatException __) {
+			return Optional.empty();
+		}
+	}
+
 	/*
 	 * Parses the line.
 	 */
@@ -88,6 +107,27 @@ class ShellCommand {
 			return Optional.of(new ClientEventAcceptPrivate(username));
 		}
 
+		case "transfers": {
+			if (tokens.length != 1) {
+				return Optional.empty();
+			}
+			return Optional.of(new ClientEventShowTransfers());
+		}
+
+		case "limit": {
+			if (tokens.length == 3 && tokens[1].equals("global")) {
+				return parseRate(tokens[2]).map(ClientEventLimitGlobalRate::new);
+			}
+			if (tokens.length == 3 && tokens[1].equals("transfer")) {
+				return parseRate(tokens[2]).map(ClientEventLimitTransferRate::new);
+			}
+			if (tokens.length == 4 && tokens[1].equals("user")) {
+				String username = tokens[2];
+				return parseRate(tokens[3]).map(rate -> new ClientEventLimitUserRate(username, rate));
+			}
+			return Optional.empty();
+		}
+
 		default:
 			return Optional.empty();
 
@@ -6,11 +6,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Optional;
 import java.util.Scanner;
 
 import fr.upem.matou.client.network.ClientEvent;
+import fr.upem.matou.client.network.FileIntegrity;
 import fr.upem.matou.client.network.Message;
+import fr.upem.matou.client.network.TransferStatus;
 import fr.upem.matou.shared.network.ErrorType;
 import fr.upem.matou.shared.network.Username;
 
@@ -100,10 +103,50 @@ public class ShellInterface implements UserInterface {
 	}
 
 	@Override
-	public void displayNewFileReception(String username, Path path) {
+	public void displayNewFileReception(String username, Path path, FileIntegrity integrity) {
 		requireNonNull(username);
 		requireNonNull(path);
-		output.println("<" + username + " sends a file : " + path + ">");
+		requireNonNull(integrity);
+
+		switch (integrity) {
+
+		case CORRUPTED:
+			error.println("[!] The file sent by " + username + " is corrupted : " + path + " [!]");
+			break;
+
+		case UNVERIFIED:
+			output.println("<" + username + " sends a file (not verified) : " + path + ">");
+			break;
+
+		case VERIFIED:
+		default:
+			output.println("<" + username + " sends a file : " + path + ">");
+			break;
+
+		}
+	}
+
+	@Override
+	public void displayTransferProgress(TransferStatus transfer) {
+		requireNonNull(transfer);
+		long percent = (transfer.getSize() == 0) ? 100 : transfer.getTransferred() * 100 / transfer.getSize();
+		long remaining = transfer.getRemainingTime();
+		output.println("<" + transfer.getUsername() + " : " + transfer.getPath() + " " + percent + "% at "
+				+ transfer.getRate() / 1024 + " KiB/s, " + ((remaining < 0) ? "?" : remaining) + " s left>");
+	}
+
+	@Override
+	public void displayTransfers(List<TransferStatus> transfers) {
+		requireNonNull(transfers);
+		if (transfers.isEmpty()) {
+			output.println("<no file transfer>");
+			return;
+		}
+		for (TransferStatus transfer : transfers) {
+			output.println("<" + transfer.getUsername() + " : " + transfer.getPath() + " " + transfer.getState() + " "
+					+ transfer.getTransferred() + "/" + transfer.getSize() + " bytes, " + transfer.getRate() / 1024
+					+ " KiB/s>");
+		}
 	}
 
 	@Override
@@ -150,6 +193,22 @@ public class ShellInterface implements UserInterface {
 			error.println("[!] This user did not send a private connection request [!]");
 			break;
 
+		case SRVFULL:
+			error.println("[!] The server is full [!]");
+			break;
+
+		case SRVBUSY:
+			error.println("[!] The server is busy, please retry later [!]");
+			break;
+
+		case ADDRLIMIT:
+			error.println("[!] Too many connections from your address [!]");
+			break;
+
+		case AUTHTIMEOUT:
+			error.println("[!] Authentication timeout [!]");
+			break;
+
 		case UNK:
 		default:
 			error.println("[!] Unknown error [!]");
@@ -163,7 +222,11 @@ public class ShellInterface implements UserInterface {
 				+ "\n/open <username> : ask for a private connection"
 				+ "\n/accept <username> : accept a private connection"
 				+ "\n/pv <username> <message> : send a private message"
-				+ "\n/file <username> <filepath> : send a private file" + "\n/exit : leave the chat");
+				+ "\n/file <username> <filepath> : send a private file"
+				+ "\n/transfers : display the private file uploads"
+				+ "\n/limit global|transfer <KiB/s> : limit all the file uploads or each upload (0 for no limit)"
+				+ "\n/limit user <username> <KiB/s> : limit the file uploads to a user (0 for no limit)"
+				+ "\n/exit : leave the chat");
 	}
 
 	@Override
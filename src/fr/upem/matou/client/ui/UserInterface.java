@@ -3,10 +3,13 @@ package fr.upem.matou.client.ui;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Optional;
 
 import fr.upem.matou.client.network.ClientEvent;
+import fr.upem.matou.client.network.FileIntegrity;
 import fr.upem.matou.client.network.Message;
+import fr.upem.matou.client.network.TransferStatus;
 import fr.upem.matou.shared.network.ErrorType;
 import fr.upem.matou.shared.network.Username;
 
@@ -105,8 +108,26 @@ public interface UserInterface extends Closeable {
 	 *            The sender username.
 	 * @param path
 	 *            The path to the saved file.
+	 * @param integrity
+	 *            The integrity of the received file, as checked with the checksums computed by the sender.
 	 */
-	public void displayNewFileReception(String username, Path path);
+	public void displayNewFileReception(String username, Path path, FileIntegrity integrity);
+
+	/**
+	 * Displays the progress of an active private file upload. This method is called periodically during each upload.
+	 * 
+	 * @param transfer
+	 *            The state of the upload, with its rate since the previous progress event.
+	 */
+	public void displayTransferProgress(TransferStatus transfer);
+
+	/**
+	 * Displays the private file uploads of the user : the queued and active uploads, and the last ended uploads.
+	 * 
+	 * @param transfers
+	 *            The state of the uploads.
+	 */
+	public void displayTransfers(List<TransferStatus> transfers);
 
 	/**
 	 * Warns the user that this username is not valid.
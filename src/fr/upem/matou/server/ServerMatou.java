@@ -1,6 +1,8 @@
 package fr.upem.matou.server;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
@@ -10,6 +12,8 @@ import java.util.stream.Stream;
 
 import fr.upem.matou.server.network.SelectorLogger;
 import fr.upem.matou.server.network.ServerCore;
+import fr.upem.matou.server.network.ServerSettings;
+import fr.upem.matou.shared.logger.AsyncLogWriter;
 import fr.upem.matou.shared.logger.Colorator;
 import fr.upem.matou.shared.logger.Logger;
 import fr.upem.matou.shared.utils.Configuration;
@@ -22,6 +26,17 @@ public class ServerMatou {
 
 	private static final Path SERVER_CONFIG = Paths.get("./config/server.conf");
 
+	private static int outboundSoftLimit = 64 * 1024;
+	private static int outboundHardLimit = 1024 * 1024;
+
+	private static int selectLoops = 1000;
+	private static long selectMillis = 1000;
+
+	private static boolean logAsync = false;
+	private static int logRingSize = 8192;
+	private static long logFileSize = 16 * 1024 * 1024;
+	private static int logFiles = 4;
+
 	private ServerMatou() {
 	}
 
@@ -62,30 +77,157 @@ public class ServerMatou {
 			SelectorLogger.activateSelect(activation);
 			break;
 		}
+		case "SELECT_LOOPS": {
+			selectLoops = Integer.parseInt(argument.trim());
+			break;
+		}
+		case "SELECT_MILLIS": {
+			selectMillis = Long.parseLong(argument.trim());
+			break;
+		}
+		case "SELECT_DUMP": {
+			boolean activation = Boolean.parseBoolean(argument);
+			SelectorLogger.activateDump(activation);
+			break;
+		}
 		case "HEADER": {
 			boolean activation = Boolean.parseBoolean(argument);
 			Logger.activateHeader(activation);
 			break;
 		}
+		case "REACTORS": {
+			int reactors = Integer.parseInt(argument.trim());
+			ServerSettings.setReactors(reactors);
+			break;
+		}
+		case "OUTBOUND_SOFT_LIMIT": {
+			outboundSoftLimit = Integer.parseInt(argument.trim());
+			break;
+		}
+		case "OUTBOUND_HARD_LIMIT": {
+			outboundHardLimit = Integer.parseInt(argument.trim());
+			break;
+		}
+		case "WRITE_BUDGET": {
+			int budget = Integer.parseInt(argument.trim());
+			ServerSettings.setWriteBudget(budget);
+			break;
+		}
+		case "MAX_SESSIONS": {
+			int maxSessions = Integer.parseInt(argument.trim());
+			ServerSettings.setMaxSessions(maxSessions);
+			break;
+		}
+		case "MAX_UNAUTHENTICATED": {
+			int maxUnauthenticated = Integer.parseInt(argument.trim());
+			ServerSettings.setMaxUnauthenticated(maxUnauthenticated);
+			break;
+		}
+		case "MAX_SESSIONS_PER_IP": {
+			int maxSessionsPerAddress = Integer.parseInt(argument.trim());
+			ServerSettings.setMaxSessionsPerAddress(maxSessionsPerAddress);
+			break;
+		}
+		case "HANDSHAKE_TIMEOUT": {
+			long timeout = Long.parseLong(argument.trim());
+			ServerSettings.setHandshakeTimeout(timeout);
+			break;
+		}
+		case "LOG_ASYNC": {
+			logAsync = Boolean.parseBoolean(argument);
+			break;
+		}
+		case "LOG_RING_SIZE": {
+			logRingSize = Integer.parseInt(argument.trim());
+			break;
+		}
+		case "LOG_FILE_SIZE": {
+			logFileSize = Long.parseLong(argument.trim());
+			break;
+		}
+		case "LOG_FILES": {
+			logFiles = Integer.parseInt(argument.trim());
+			break;
+		}
 		default:
 			break;
 		}
 	}
 
+	/*
+	 * Creates an asynchronous writer to this file. The writer is flushed and closed when the server stops.
+	 */
+	private static AsyncLogWriter openAsyncLogWriter(String path) throws IOException {
+		AsyncLogWriter writer = new AsyncLogWriter(Paths.get(path), logRingSize, logFileSize, logFiles);
+		Runtime.getRuntime().addShutdownHook(new Thread(writer::close));
+		return writer;
+	}
+
+	/*
+	 * Redirects the outputs of the logger to the given paths (if not null). The outputs are asynchronous if LOG_ASYNC is
+	 * set.
+	 */
+	private static void attachLogger(String loggerPath, String exceptionPath) throws IOException {
+		if (loggerPath != null) {
+			if (logAsync) {
+				Logger.attachOutput(openAsyncLogWriter(loggerPath));
+			} else {
+				Logger.attachOutput(new PrintStream(loggerPath));
+			}
+		}
+		if (exceptionPath != null) {
+			if (logAsync) {
+				Logger.attachException(openAsyncLogWriter(exceptionPath));
+			} else {
+				Logger.attachException(new PrintStream(exceptionPath));
+			}
+		}
+	}
+
 	private static void loadConfig() throws IOException {
 		try (Stream<String> lines = Files.lines(SERVER_CONFIG)) {
 			lines.map(Configuration::removeComments).filter(Configuration::isAffectation)
 					.forEach(ServerMatou::loadConfigLine);
+			ServerSettings.setOutboundLimits(outboundSoftLimit, outboundHardLimit);
+			SelectorLogger.setSampling(selectLoops, selectMillis);
 		} catch (@SuppressWarnings("unused") NoSuchFileException __) {
 			// There is no configuration file to load
 			return;
 		}
 	}
 
+	/*
+	 * Starts a thread that reads the commands of the standard input. The command "dump" prints the full state of the
+	 * selectors.
+	 */
+	private static void startConsole() {
+		Thread console = new Thread(() -> {
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(System.in))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					switch (line.trim()) {
+					case "dump":
+						SelectorLogger.requestDump();
+						break;
+					default:
+						System.err.println("Unknown command : " + line);
+						break;
+					}
+				}
+			} catch (IOException e) {
+				Logger.exception(e);
+			}
+		}, "console");
+		console.setDaemon(true);
+		console.start();
+	}
+
 	private static void usage() {
 		System.err.println("Usage : [options] port" + "\nAvailable options :" + "\n-help : displays all options"
 				+ "\n-logger path : redirects the normal output of the logger to the given path"
-				+ "\n-exception path : redirects the exception output of the logger to the given path");
+				+ "\n-exception path : redirects the exception output of the logger to the given path"
+				+ "\n(both outputs are asynchronous and rotated if LOG_ASYNC is set in the configuration file)"
+				+ "\nAvailable console commands :" + "\ndump : prints the full state of the selectors");
 	}
 
 	/**
@@ -100,6 +242,9 @@ public class ServerMatou {
 	 */
 	public static void main(String[] args) throws IOException {
 
+		String loggerPath = null;
+		String exceptionPath = null;
+
 		int opt;
 		for (opt = 0; opt < args.length; opt++) {
 
@@ -110,16 +255,12 @@ public class ServerMatou {
 			switch (args[opt]) {
 
 			case "-logger": {
-				String arg = args[++opt];
-				PrintStream ps = new PrintStream(arg);
-				Logger.attachOutput(ps);
+				loggerPath = args[++opt];
 				break;
 			}
 
 			case "-exception": {
-				String arg = args[++opt];
-				PrintStream ps = new PrintStream(arg);
-				Logger.attachException(ps);
+				exceptionPath = args[++opt];
 				break;
 			}
 
@@ -145,6 +286,8 @@ public class ServerMatou {
 		}
 
 		loadConfig();
+		attachLogger(loggerPath, exceptionPath);
+		startConsole();
 
 		int port = Integer.parseInt(args[opt]);
 
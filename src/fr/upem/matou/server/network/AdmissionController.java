@@ -0,0 +1,75 @@
+package fr.upem.matou.server.network;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Optional;
+
+import fr.upem.matou.shared.network.ErrorType;
+
+/*
+ * This class decides if a new client can be admitted by the server. It counts the connected clients, the clients that
+ * are not authenticated yet and the clients of each IP address, and refuses a new client if one of the limits of
+ * ServerSettings is reached.
+ *
+ * This class is not thread-safe : it must only be used under the lock of the ServerDataBase.
+ */
+class AdmissionController {
+
+	private final int maxSessions = ServerSettings.getMaxSessions();
+	private final int maxUnauthenticated = ServerSettings.getMaxUnauthenticated();
+	private final int maxSessionsPerAddress = ServerSettings.getMaxSessionsPerAddress();
+	private final HashMap<InetAddress, Integer> addresses = new HashMap<>(); // Number of clients of each address
+	private int sessions = 0;
+	private int unauthenticated = 0;
+
+	/*
+	 * Admits a new client from this address. Returns the reason of the refusal if the client is not admitted.
+	 */
+	Optional<ErrorType> admit(InetAddress address) { // O(1)
+		if (sessions >= maxSessions) {
+			return Optional.of(ErrorType.SRVFULL);
+		}
+		if (unauthenticated >= maxUnauthenticated) {
+			return Optional.of(ErrorType.SRVBUSY);
+		}
+		int count = addresses.getOrDefault(address, 0);
+		if (maxSessionsPerAddress > 0 && count >= maxSessionsPerAddress) {
+			return Optional.of(ErrorType.ADDRLIMIT);
+		}
+
+		addresses.put(address, count + 1);
+		sessions++;
+		unauthenticated++;
+		return Optional.empty();
+	}
+
+	/*
+	 * Notifies that an admitted client is now authenticated.
+	 */
+	void authenticated() { // O(1)
+		unauthenticated--;
+	}
+
+	/*
+	 * Releases the slot of an admitted client.
+	 */
+	void release(InetAddress address, boolean authenticated) { // O(1)
+		int count = addresses.get(address);
+		if (count == 1) {
+			addresses.remove(address);
+		} else {
+			addresses.put(address, count - 1);
+		}
+		sessions--;
+		if (!authenticated) {
+			unauthenticated--;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "AdmissionController [sessions=" + sessions + "/" + maxSessions + ", unauthenticated=" + unauthenticated
+				+ "/" + maxUnauthenticated + ", addresses=" + addresses.size() + "]";
+	}
+
+}
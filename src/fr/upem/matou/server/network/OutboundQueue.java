@@ -0,0 +1,239 @@
+package fr.upem.matou.server.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+import java.util.function.Predicate;
+
+/*
+ * This class represents the outbound queue of a session : all the bytes that are waiting to be written to the client,
+ * in order. The queue is made of segments : a segment is either a private segment (requests only sent to this client)
+ * or a reference to a SharedFrame (broadcast requests). Shared frames are never copied : the queue only keeps a view
+ * of the frame, whose position is the read offset of this client. Private segments come from the SegmentPool of the
+ * reactor and go back to it once written.
+ *
+ * The queue has two limits. Beyond the soft limit, the queue is congested : the session should stop reading requests
+ * from its client until the queue drains. The hard limit is never exceeded : a request that would exceed it is
+ * refused.
+ *
+ * The queue is flushed with gathering writes : the views of the first segments are written with a single system call,
+ * and their positions keep track of the partial progress, so no byte is ever moved inside a segment.
+ *
+ * This class is not thread-safe : it must only be used by the thread of the reactor of its session.
+ */
+class OutboundQueue {
+
+	/*
+	 * A segment of the queue. The read view is always in read mode. For a private segment, the write buffer shares its
+	 * content with the read view and is used to append new requests.
+	 */
+	private static class Segment {
+		final ByteBuffer readView;
+		final ByteBuffer writeBuffer; // null for a shared segment
+		final SharedFrame frame; // null for a private segment
+
+		Segment(ByteBuffer writeBuffer) {
+			this.writeBuffer = writeBuffer;
+			this.readView = writeBuffer.duplicate();
+			this.readView.flip();
+			this.frame = null;
+		}
+
+		Segment(SharedFrame frame) {
+			this.writeBuffer = null;
+			this.readView = frame.view();
+			this.frame = frame;
+		}
+
+		/*
+		 * Makes the appended bytes of a private segment visible by the read view.
+		 */
+		void sync() {
+			if (writeBuffer != null) {
+				readView.limit(writeBuffer.position());
+			}
+		}
+
+		/*
+		 * Releases the resources of this segment.
+		 */
+		void release(SegmentPool pool) {
+			if (frame != null) {
+				frame.release();
+			} else {
+				pool.release(writeBuffer);
+			}
+		}
+	}
+
+	private static final int GATHER_MAX_SIZE = 64; // Maximum number of segments written by a single system call
+
+	private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+	private final ByteBuffer[] gather = new ByteBuffer[GATHER_MAX_SIZE]; // Reused by each write
+	private final SegmentPool pool;
+	private final int softLimit; // Number of bytes beyond which the queue is congested
+	private final int hardLimit; // Maximum number of bytes in the queue
+	private int size = 0; // Number of bytes in the queue
+
+	OutboundQueue(SegmentPool pool, int softLimit, int hardLimit) {
+		this.pool = pool;
+		this.softLimit = softLimit;
+		this.hardLimit = hardLimit;
+	}
+
+	/*
+	 * Returns true if there is nothing to write.
+	 */
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/*
+	 * Returns the number of bytes waiting to be written (the depth of the queue).
+	 */
+	int size() {
+		return size;
+	}
+
+	/*
+	 * Returns the number of segments of the queue.
+	 */
+	int segments() {
+		return segments.size();
+	}
+
+	/*
+	 * Returns true if the depth of the queue is beyond its soft limit.
+	 */
+	boolean isCongested() {
+		return size > softLimit;
+	}
+
+	/*
+	 * Appends a private request to the queue. The given request must add a complete request to the buffer (in write
+	 * mode) and return true, or leave the buffer untouched and return false if it has not enough space.
+	 *
+	 * Returns false if the request would exceed the hard limit of the queue.
+	 */
+	boolean append(Predicate<ByteBuffer> request) {
+		Segment tail = segments.peekLast();
+		if (tail != null && tail.writeBuffer != null && tryAppend(tail, request)) {
+			return true;
+		}
+		if (size >= hardLimit) {
+			return false;
+		}
+		Segment segment = new Segment(pool.acquire());
+		if (!tryAppend(segment, request)) {
+			pool.release(segment.writeBuffer);
+			return false;
+		}
+		segments.addLast(segment);
+		return true;
+	}
+
+	/*
+	 * Tries to append a private request to a segment, within the hard limit of the queue.
+	 */
+	private boolean tryAppend(Segment segment, Predicate<ByteBuffer> request) {
+		ByteBuffer bb = segment.writeBuffer;
+		int start = bb.position();
+		if (!request.test(bb)) {
+			return false;
+		}
+		int length = bb.position() - start;
+		if (size + length > hardLimit) {
+			bb.position(start); // Cancels the request
+			return false;
+		}
+		size += length;
+		segment.sync();
+		return true;
+	}
+
+	/*
+	 * Appends a reference to a shared frame. The queue retains the frame until it is fully written.
+	 *
+	 * Returns false if the frame would exceed the hard limit of the queue.
+	 */
+	boolean append(SharedFrame frame) {
+		int length = frame.size();
+		if (size + length > hardLimit) {
+			return false;
+		}
+		frame.retain();
+		segments.addLast(new Segment(frame));
+		size += length;
+		return true;
+	}
+
+	/*
+	 * Writes at most budget bytes of the queue to the channel with a single gathering write. Fully written segments are
+	 * removed from the queue.
+	 *
+	 * Returns the number of bytes written.
+	 */
+	long writeTo(GatheringByteChannel channel, int budget) throws IOException {
+		int count = 0;
+		int gathered = 0;
+		ByteBuffer last = null;
+		int lastLimit = 0;
+		for (Segment segment : segments) {
+			if (count == GATHER_MAX_SIZE || gathered == budget) {
+				break;
+			}
+			ByteBuffer view = segment.readView;
+			int remaining = view.remaining();
+			if (remaining > budget - gathered) { // The budget ends inside this segment
+				last = view;
+				lastLimit = view.limit();
+				remaining = budget - gathered;
+				view.limit(view.position() + remaining);
+			}
+			gather[count++] = view;
+			gathered += remaining;
+		}
+		if (count == 0) {
+			return 0;
+		}
+
+		long written;
+		try {
+			written = channel.write(gather, 0, count);
+		} finally {
+			if (last != null) {
+				last.limit(lastLimit);
+			}
+			for (int i = 0; i < count; i++) {
+				gather[i] = null; // The queue must not retain the written segments
+			}
+		}
+		size -= written;
+
+		Segment head;
+		while ((head = segments.peekFirst()) != null && !head.readView.hasRemaining()) {
+			segments.removeFirst();
+			head.release(pool);
+		}
+		return written;
+	}
+
+	/*
+	 * Removes all the segments of this queue.
+	 */
+	void clear() {
+		Segment segment;
+		while ((segment = segments.pollFirst()) != null) {
+			segment.release(pool);
+		}
+		size = 0;
+	}
+
+	@Override
+	public String toString() {
+		return "OutboundQueue [segments=" + segments.size() + ", size=" + size + ", softLimit=" + softLimit
+				+ ", hardLimit=" + hardLimit + "]";
+	}
+
+}
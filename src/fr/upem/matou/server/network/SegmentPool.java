@@ -0,0 +1,54 @@
+package fr.upem.matou.server.network;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/*
+ * This class represents a pool of direct buffers used as segments by the outbound queues of a reactor. Segments are
+ * given back to the pool once written, so a steady-state server does not allocate any direct buffer.
+ *
+ * This class is not thread-safe : it must only be used by the thread of its reactor.
+ */
+class SegmentPool {
+
+	private static final int SEGMENT_SIZE = ServerCommunication.getServerSegmentSize();
+	private static final int POOL_MAX_SIZE = 256; // Maximum number of unused segments kept by the pool
+
+	private final ArrayDeque<ByteBuffer> segments = new ArrayDeque<>();
+	private long allocated = 0; // Number of segments allocated by this pool
+
+	/*
+	 * Returns the size of a segment.
+	 */
+	static int getSegmentSize() {
+		return SEGMENT_SIZE;
+	}
+
+	/*
+	 * Returns an empty segment in write mode.
+	 */
+	ByteBuffer acquire() {
+		ByteBuffer bb = segments.pollFirst();
+		if (bb == null) {
+			allocated++;
+			return ByteBuffer.allocateDirect(SEGMENT_SIZE);
+		}
+		bb.clear();
+		return bb;
+	}
+
+	/*
+	 * Gives back a segment which is not used anymore.
+	 */
+	void release(ByteBuffer bb) {
+		if (segments.size() < POOL_MAX_SIZE) {
+			segments.addFirst(bb); // The most recently used segment is the hottest one
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "SegmentPool [pooled=" + segments.size() + ", allocated=" + allocated + "]";
+	}
+
+}
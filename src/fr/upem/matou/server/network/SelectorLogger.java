@@ -2,6 +2,7 @@ package fr.upem.matou.server.network;
 
 import static fr.upem.matou.shared.logger.Colorator.colorBlue;
 import static fr.upem.matou.shared.logger.Colorator.colorCyan;
+import static fr.upem.matou.shared.logger.Colorator.colorWhite;
 
 import java.io.IOException;
 import java.io.PrintStream;
@@ -12,15 +13,28 @@ import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class provides static methods in order to log selector events of the server.
+ * 
+ * Selector logging is sampled : each selector only counts its events, and prints the aggregate counts every N loops or
+ * every T milliseconds (see {@link #setSampling(int, long)}) : the selectors wake up for the timed samples even if
+ * the server is idle. The full state of the keys is only printed on demand (see {@link #requestDump()}), even if
+ * selector logging is disabled, or at each sample if {@link #activateDump(boolean)} is set. The dump shows the depth of
+ * the outbound queue of each client.
  */
 public class SelectorLogger {
 
 	private static final PrintStream OUTPUT = System.out;
 
-	private static boolean LOG_SELECT = false;
+	private static volatile boolean LOG_SELECT = false;
+	private static volatile boolean DUMP_KEYS = false; // Full dump at each sample
+	private static volatile int SAMPLE_LOOPS = 1000; // Loops between two samples (0 : never)
+	private static volatile long SAMPLE_MILLIS = 1000; // Milliseconds between two samples (0 : never)
+	private static final AtomicInteger DUMP_REQUESTS = new AtomicInteger();
+	private static final Set<Selector> SELECTORS = ConcurrentHashMap.newKeySet(); // Traced selectors
 
 	private SelectorLogger() {
 	}
@@ -35,6 +49,72 @@ public class SelectorLogger {
 		LOG_SELECT = activation;
 	}
 
+	/**
+	 * Enables or disables the full dump of the keys at each sample.
+	 * 
+	 * @param activation
+	 *            true to enable or false to disable.
+	 */
+	public static void activateDump(boolean activation) {
+		DUMP_KEYS = activation;
+	}
+
+	/**
+	 * Sets the sampling of selector logging. A sample is printed when one of the periods has elapsed.
+	 * 
+	 * @param loops
+	 *            The number of loops between two samples, or 0 to disable this period.
+	 * @param millis
+	 *            The number of milliseconds between two samples, or 0 to disable this period.
+	 * @throws IllegalArgumentException
+	 *             If a period is negative or if both periods are disabled.
+	 */
+	public static void setSampling(int loops, long millis) {
+		if (loops < 0 || millis < 0 || (loops == 0 && millis == 0)) {
+			throw new IllegalArgumentException("Invalid sampling : " + loops + " loops / " + millis + " ms");
+		}
+		SAMPLE_LOOPS = loops;
+		SAMPLE_MILLIS = millis;
+	}
+
+	/**
+	 * Requests a full dump of the keys of all selectors. Each selector is woken up and prints its dump at once.
+	 */
+	public static void requestDump() {
+		DUMP_REQUESTS.incrementAndGet();
+		for (Selector selector : SELECTORS) {
+			selector.wakeup();
+		}
+	}
+
+	static void register(Selector selector) {
+		SELECTORS.add(selector);
+	}
+
+	static void unregister(Selector selector) {
+		SELECTORS.remove(selector);
+	}
+
+	static boolean isSelectEnabled() {
+		return LOG_SELECT;
+	}
+
+	static boolean isDumpEnabled() {
+		return DUMP_KEYS;
+	}
+
+	static int getSampleLoops() {
+		return SAMPLE_LOOPS;
+	}
+
+	static long getSampleMillis() {
+		return SAMPLE_MILLIS;
+	}
+
+	static int getDumpRequests() {
+		return DUMP_REQUESTS.get();
+	}
+
 	private static String remoteAddressToString(SocketChannel sc) {
 		try {
 			return sc.getRemoteAddress().toString();
@@ -60,6 +140,20 @@ public class SelectorLogger {
 		return String.join(" & ", list);
 	}
 
+	/*
+	 * Returns the depth of the outbound queue of the session attached to a key. The sessions are only read by the
+	 * thread of their selector, which also prints the dumps.
+	 */
+	private static String outboundToString(SelectionKey key) {
+		Object attachment = key.attachment();
+		if (!(attachment instanceof ServerSession)) {
+			return "";
+		}
+		ServerSession session = (ServerSession) attachment;
+		return " (outbound : " + session.getOutboundDepth() + " bytes in " + session.getOutboundSegments()
+				+ " segments)";
+	}
+
 	private static String interestOpsToString(SelectionKey key) {
 		if (!key.isValid()) {
 			return "CANCELLED";
@@ -78,15 +172,18 @@ public class SelectorLogger {
 		return String.join(" | ", list);
 	}
 
+	// The dumps are printed even if selector logging is disabled : they are only requested on demand or with it
 	private static void printLogSelector(String message) {
-		if (LOG_SELECT) {
-			OUTPUT.println(colorBlue(message));
-		}
+		OUTPUT.println(colorBlue(message));
 	}
 
 	private static void printLogSelectedKeys(String message) {
+		OUTPUT.println(colorCyan(message));
+	}
+
+	static void logSample(String message) {
 		if (LOG_SELECT) {
-			OUTPUT.println(colorCyan(message));
+			OUTPUT.println(colorWhite(message));
 		}
 	}
 
@@ -94,7 +191,7 @@ public class SelectorLogger {
 	static void logSelector(Selector selector) {
 		Set<SelectionKey> keys = selector.keys();
 		if (keys.isEmpty()) {
-			printLogSelector("The selector contains no key : this should not happen!");
+			printLogSelector("The selector contains no key.");
 			return;
 		}
 		printLogSelector("The selector contains:");
@@ -104,7 +201,8 @@ public class SelectorLogger {
 				printLogSelector("\tKey for Server : " + interestOpsToString(key));
 			} else {
 				SocketChannel sc = (SocketChannel) channel;
-				printLogSelector("\tKey for Client " + remoteAddressToString(sc) + " : " + interestOpsToString(key));
+				printLogSelector("\tKey for Client " + remoteAddressToString(sc) + " : " + interestOpsToString(key)
+						+ outboundToString(key));
 			}
 		}
 	}
@@ -0,0 +1,145 @@
+package fr.upem.matou.server.network;
+
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * This class traces the loop of one selector. Each loop only updates a few counters from the selected keys ; the
+ * counters are printed once every SelectorLogger sample (every N loops or every T milliseconds), and the full
+ * per-key dump is only printed on demand.
+ *
+ * The selector is registered to SelectorLogger while it is traced, so that it is woken up by the dump requests. Its
+ * loop must bound the selection timeout with boundTimeout, so that the timed samples are printed on an idle server.
+ *
+ * This class is not thread-safe : it must only be used by the thread of its selector.
+ */
+class SelectorTracer {
+
+	private final String name;
+	private final Selector selector;
+
+	private long loops = 0;
+	private long selected = 0;
+	private long accepts = 0;
+	private long reads = 0;
+	private long writes = 0;
+	private long lastSample = System.nanoTime();
+	private int dumpRequests = SelectorLogger.getDumpRequests();
+
+	SelectorTracer(String name, Selector selector) {
+		this.name = name;
+		this.selector = selector;
+		SelectorLogger.register(selector);
+	}
+
+	/*
+	 * Stops tracing the selector.
+	 */
+	void close() {
+		SelectorLogger.unregister(selector);
+	}
+
+	/*
+	 * Bounds a selection timeout (in milliseconds, with 0 for no limit and a negative value for no wait) by the time
+	 * until the next timed sample.
+	 */
+	long boundTimeout(long timeout) {
+		long sampleMillis = SelectorLogger.getSampleMillis();
+		if (timeout < 0 || !SelectorLogger.isSelectEnabled() || sampleMillis <= 0) {
+			return timeout;
+		}
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastSample);
+		long remaining = Math.max(1, sampleMillis - elapsed);
+		return (timeout == 0) ? remaining : Math.min(timeout, remaining);
+	}
+
+	/*
+	 * Traces a loop of the selector. It must be called after the selection, before the selected keys are processed.
+	 */
+	void trace(Set<SelectionKey> selectedKeys) {
+		int requests = SelectorLogger.getDumpRequests();
+		boolean dumpRequested = requests != dumpRequests;
+		dumpRequests = requests;
+
+		if (!SelectorLogger.isSelectEnabled()) {
+			if (dumpRequested) {
+				SelectorLogger.logSelector(selector);
+				SelectorLogger.logSelectedKeys(selectedKeys);
+			}
+			return;
+		}
+
+		loops++;
+		selected += selectedKeys.size();
+		for (SelectionKey key : selectedKeys) { // O(selected)
+			if (!key.isValid()) {
+				continue;
+			}
+			int ready = key.readyOps();
+			if ((ready & SelectionKey.OP_ACCEPT) != 0) {
+				accepts++;
+			}
+			if ((ready & SelectionKey.OP_READ) != 0) {
+				reads++;
+			}
+			if ((ready & SelectionKey.OP_WRITE) != 0) {
+				writes++;
+			}
+		}
+
+		long now = System.nanoTime();
+		if (!dumpRequested && !isSampleDue(now)) {
+			return;
+		}
+
+		logSample(now);
+		if (dumpRequested || SelectorLogger.isDumpEnabled()) {
+			SelectorLogger.logSelector(selector);
+			SelectorLogger.logSelectedKeys(selectedKeys);
+		}
+
+		lastSample = now;
+		loops = 0;
+		selected = 0;
+		accepts = 0;
+		reads = 0;
+		writes = 0;
+	}
+
+	/*
+	 * Returns true if one of the sampling periods has elapsed since the last sample.
+	 */
+	private boolean isSampleDue(long now) {
+		int sampleLoops = SelectorLogger.getSampleLoops();
+		if (sampleLoops > 0 && loops >= sampleLoops) {
+			return true;
+		}
+		long sampleMillis = SelectorLogger.getSampleMillis();
+		return sampleMillis > 0 && now - lastSample >= TimeUnit.MILLISECONDS.toNanos(sampleMillis);
+	}
+
+	/*
+	 * Prints the aggregate counts since the last sample.
+	 */
+	private void logSample(long now) {
+		int keys = 0;
+		int pendingWrites = 0;
+		for (SelectionKey key : selector.keys()) { // O(n), only once per sample
+			if (!key.isValid()) {
+				continue;
+			}
+			keys++;
+			if ((key.interestOps() & SelectionKey.OP_WRITE) != 0) {
+				pendingWrites++;
+			}
+		}
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(now - lastSample);
+
+		SelectorLogger.logSample(name + " : " + loops + " loop(s) in " + elapsed + " ms - selected=" + selected
+				+ " (accept=" + accepts + ", read=" + reads + ", write=" + writes + ") - keys=" + keys
+				+ " (pending writes=" + pendingWrites + ")");
+	}
+
+}
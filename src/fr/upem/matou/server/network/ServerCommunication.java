@@ -9,6 +9,7 @@ import fr.upem.matou.shared.network.ErrorType;
 import fr.upem.matou.shared.network.NetworkCommunication;
 import fr.upem.matou.shared.network.NetworkProtocol;
 import fr.upem.matou.shared.network.NetworkProtocol.Communicator;
+import fr.upem.matou.shared.network.Username;
 
 /*
  * This class consists only of static methods. These methods are used by the server to ensure that communications meet
@@ -21,26 +22,27 @@ import fr.upem.matou.shared.network.NetworkProtocol.Communicator;
 class ServerCommunication {
 
 	private static final Charset PROTOCOL_CHARSET = NetworkCommunication.getProtocolCharset();
-	private static final int BUFFER_MULTIPLIER = 10;
+	private static final int READ_MIN_SIZE = 4096;
+	private static final int SEGMENT_MIN_SIZE = 4096;
 
 	private ServerCommunication() {
 	}
 
 	/*
-	 * Returns the size of a server read buffer.
+	 * Returns the size of a server read buffer. A read buffer can hold at least one request of any type.
 	 */
 	static int getServerReadBufferSize() {
-		int max = NetworkProtocol.getMaxArgumentSize(Communicator.CLIENT, Communicator.SERVER);
+		int max = Math.max(READ_MIN_SIZE, NetworkProtocol.getMaxRequestSize(Communicator.CLIENT, Communicator.SERVER));
 		Logger.debug("SERVER READ BUFFER SIZE : " + max);
 		return max;
 	}
 
 	/*
-	 * Returns the size of a server write buffer.
+	 * Returns the size of a segment of a server outbound queue. A segment can hold at least one request of any type.
 	 */
-	static int getServerWriteBufferSize() {
-		int max = NetworkProtocol.getMaxRequestSize(Communicator.SERVER, Communicator.CLIENT) * BUFFER_MULTIPLIER;
-		Logger.debug("SERVER WRITE BUFFER SIZE : " + max);
+	static int getServerSegmentSize() {
+		int max = Math.max(SEGMENT_MIN_SIZE, NetworkProtocol.getMaxRequestSize(Communicator.SERVER, Communicator.CLIENT));
+		Logger.debug("SERVER SEGMENT SIZE : " + max);
 		return max;
 	}
 
@@ -97,13 +99,13 @@ class ServerCommunication {
 	}
 
 	/*
-	 * Adds a MSGBC request to the buffer.
+	 * Adds a MSGBC request to the buffer. The message is already encoded : its bytes are copied without being decoded.
+	 * The encoded message is consumed if the request is added.
+	 * 
+	 * [!] The encoded message must be in read mode.
 	 */
-	static boolean addRequestMSGBC(ByteBuffer bbWrite, String username, String message) {
-		ByteBuffer encodedUsername = PROTOCOL_CHARSET.encode(username);
-		ByteBuffer encodedMessage = PROTOCOL_CHARSET.encode(message);
-
-		int sizeUsername = encodedUsername.remaining();
+	static boolean addRequestMSGBC(ByteBuffer bbWrite, Username username, ByteBuffer encodedMessage) {
+		int sizeUsername = username.getEncodedSize();
 		int sizeMessage = encodedMessage.remaining();
 		int length = Integer.BYTES + Integer.BYTES + sizeUsername + Integer.BYTES + sizeMessage;
 		if (bbWrite.remaining() < length) {
@@ -111,7 +113,8 @@ class ServerCommunication {
 		}
 
 		bbWrite.putInt(NetworkProtocol.MSGBC.ordinal());
-		bbWrite.putInt(sizeUsername).put(encodedUsername);
+		bbWrite.putInt(sizeUsername);
+		username.putEncoded(bbWrite);
 		bbWrite.putInt(sizeMessage).put(encodedMessage);
 
 		return true;
@@ -120,17 +123,17 @@ class ServerCommunication {
 	/*
 	 * Adds a CONOTIF request to the buffer.
 	 */
-	static boolean addRequestCONOTIF(ByteBuffer bbWrite, String username) {
-		ByteBuffer encodedUsername = PROTOCOL_CHARSET.encode(username);
+	static boolean addRequestCONOTIF(ByteBuffer bbWrite, Username username) {
 
-		int sizeUsername = encodedUsername.remaining();
+		int sizeUsername = username.getEncodedSize();
 		int length = Integer.BYTES + Integer.BYTES + sizeUsername;
 		if (bbWrite.remaining() < length) {
 			return false;
 		}
 
 		bbWrite.putInt(NetworkProtocol.CONOTIF.ordinal());
-		bbWrite.putInt(sizeUsername).put(encodedUsername);
+		bbWrite.putInt(sizeUsername);
+		username.putEncoded(bbWrite);
 
 		return true;
 	}
@@ -138,17 +141,17 @@ class ServerCommunication {
 	/*
 	 * Adds a DISCONOTIF request to the buffer.
 	 */
-	static boolean addRequestDISCONOTIF(ByteBuffer bbWrite, String username) {
-		ByteBuffer encodedUsername = PROTOCOL_CHARSET.encode(username);
+	static boolean addRequestDISCONOTIF(ByteBuffer bbWrite, Username username) {
 
-		int sizeUsername = encodedUsername.remaining();
+		int sizeUsername = username.getEncodedSize();
 		int length = Integer.BYTES + Integer.BYTES + sizeUsername;
 		if (bbWrite.remaining() < length) {
 			return false;
 		}
 
 		bbWrite.putInt(NetworkProtocol.DISCONOTIF.ordinal());
-		bbWrite.putInt(sizeUsername).put(encodedUsername);
+		bbWrite.putInt(sizeUsername);
+		username.putEncoded(bbWrite);
 
 		return true;
 	}
@@ -156,17 +159,17 @@ class ServerCommunication {
 	/*
 	 * Adds an PVCOREQNOTIF request to the buffer.
 	 */
-	static boolean addRequestPVCOREQNOTIF(ByteBuffer bbWrite, String username) {
-		ByteBuffer encodedUsername = PROTOCOL_CHARSET.encode(username);
+	static boolean addRequestPVCOREQNOTIF(ByteBuffer bbWrite, Username username) {
 
-		int sizeUsername = encodedUsername.remaining();
+		int sizeUsername = username.getEncodedSize();
 		int length = Integer.BYTES + Integer.BYTES + sizeUsername;
 		if (bbWrite.remaining() < length) {
 			return false;
 		}
 
 		bbWrite.putInt(NetworkProtocol.PVCOREQNOTIF.ordinal());
-		bbWrite.putInt(sizeUsername).put(encodedUsername);
+		bbWrite.putInt(sizeUsername);
+		username.putEncoded(bbWrite);
 
 		return true;
 	}
@@ -174,11 +177,10 @@ class ServerCommunication {
 	/*
 	 * Adds an PVCOESTASRC request to the buffer.
 	 */
-	static boolean addRequestPVCOESTASRC(ByteBuffer bbWrite, String username, InetAddress address) {
-		ByteBuffer encodedUsername = PROTOCOL_CHARSET.encode(username);
+	static boolean addRequestPVCOESTASRC(ByteBuffer bbWrite, Username username, InetAddress address) {
 		byte[] addr = address.getAddress();
 
-		int sizeUsername = encodedUsername.remaining();
+		int sizeUsername = username.getEncodedSize();
 		int sizeAddress = addr.length;
 		int length = Integer.BYTES + Integer.BYTES + sizeUsername + Integer.BYTES + sizeAddress;
 		if (bbWrite.remaining() < length) {
@@ -186,7 +188,8 @@ class ServerCommunication {
 		}
 
 		bbWrite.putInt(NetworkProtocol.PVCOESTASRC.ordinal());
-		bbWrite.putInt(sizeUsername).put(encodedUsername);
+		bbWrite.putInt(sizeUsername);
+		username.putEncoded(bbWrite);
 		bbWrite.putInt(sizeAddress);
 		for (byte b : addr) {
 			bbWrite.put(b);
@@ -198,12 +201,11 @@ class ServerCommunication {
 	/*
 	 * Adds an PVCOESTADST request to the buffer.
 	 */
-	static boolean addRequestPVCOESTADST(ByteBuffer bbWrite, String username, InetAddress address, int portMessage,
+	static boolean addRequestPVCOESTADST(ByteBuffer bbWrite, Username username, InetAddress address, int portMessage,
 			int portFile) {
-		ByteBuffer encodedUsername = PROTOCOL_CHARSET.encode(username);
 		byte[] addr = address.getAddress();
 
-		int sizeUsername = encodedUsername.remaining();
+		int sizeUsername = username.getEncodedSize();
 		int sizeAddress = addr.length;
 		int length = Integer.BYTES + Integer.BYTES + sizeUsername + Integer.BYTES + sizeAddress + (2 * Integer.BYTES);
 		if (bbWrite.remaining() < length) {
@@ -211,7 +213,8 @@ class ServerCommunication {
 		}
 
 		bbWrite.putInt(NetworkProtocol.PVCOESTADST.ordinal());
-		bbWrite.putInt(sizeUsername).put(encodedUsername);
+		bbWrite.putInt(sizeUsername);
+		username.putEncoded(bbWrite);
 		bbWrite.putInt(addr.length);
 		for (byte b : addr) {
 			bbWrite.put(b);
@@ -1,25 +1,20 @@
 package fr.upem.matou.server.network;
 
-import static fr.upem.matou.shared.logger.Logger.formatNetworkData;
-import static fr.upem.matou.shared.logger.Logger.formatNetworkRequest;
-
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.Optional;
 import java.util.Set;
 
-import fr.upem.matou.shared.logger.Logger;
-import fr.upem.matou.shared.logger.Logger.NetworkLogType;
-import fr.upem.matou.shared.network.NetworkCommunication;
-
 /**
  * This class is the core of the chat server. To launch the server, use {@link #launch()}.
+ * 
+ * The thread which launches the server becomes the acceptor : it only accepts new clients and gives them to the
+ * reactors in a round-robin way. Each reactor processes its clients in its own thread with its own selector (see
+ * {@link ServerSettings#setReactors(int)}).
  */
 @SuppressWarnings("resource")
 public class ServerCore implements Closeable {
@@ -27,6 +22,10 @@ public class ServerCore implements Closeable {
 	private final ServerSocketChannel ssc;
 	private final Selector selector;
 	private final ServerDataBase db;
+	private final ServerReactor[] reactors;
+	private final Thread[] threads;
+
+	private int nextReactor = 0; // Index of the reactor of the next accepted client
 
 	/**
 	 * Constructs a new server core.
@@ -43,7 +42,18 @@ public class ServerCore implements Closeable {
 		ssc.configureBlocking(false);
 		selector = Selector.open();
 		ssc.register(selector, SelectionKey.OP_ACCEPT);
-		db = new ServerDataBase(selector.keys());
+		db = new ServerDataBase();
+
+		int count = ServerSettings.getReactors();
+		reactors = new ServerReactor[count];
+		threads = new Thread[count];
+		for (int i = 0; i < count; i++) {
+			String name = "reactor " + i;
+			ServerReactor reactor = new ServerReactor(db, name);
+			reactors[i] = reactor;
+			threads[i] = new Thread(reactor, name);
+			db.addReactor(reactor);
+		}
 	}
 
 	/**
@@ -53,18 +63,26 @@ public class ServerCore implements Closeable {
 	 *             If an I/O error occurs.
 	 */
 	public void launch() throws IOException {
+		for (Thread thread : threads) {
+			thread.start();
+		}
+
 		Set<SelectionKey> selectedKeys = selector.selectedKeys();
+		SelectorTracer tracer = new SelectorTracer("acceptor", selector);
 
-		while (!Thread.interrupted()) {
+		try {
+			while (!Thread.interrupted()) {
 
-			SelectorLogger.logSelector(selector);
-			selector.select();
+				selector.select(tracer.boundTimeout(0));
 
-			SelectorLogger.logSelectedKeys(selectedKeys);
-			processSelectedKeys(selectedKeys);
+				tracer.trace(selectedKeys);
+				processSelectedKeys(selectedKeys);
 
-			selectedKeys.clear();
+				selectedKeys.clear();
 
+			}
+		} finally {
+			tracer.close();
 		}
 	}
 
@@ -76,19 +94,6 @@ public class ServerCore implements Closeable {
 			if (key.isValid() && key.isAcceptable()) {
 				doAccept(key);
 			}
-			try {
-				if (key.isValid() && key.isWritable()) {
-					doWrite(key);
-				}
-				if (key.isValid() && key.isReadable()) {
-					doRead(key);
-				}
-			} catch (IOException e) {
-				SocketChannel sc = (SocketChannel) key.channel();
-				Logger.warning(formatNetworkData(sc, e.toString()));
-				ServerSession session = (ServerSession) key.attachment();
-				session.disconnectClient();
-			}
 		}
 	}
 
@@ -103,58 +108,21 @@ public class ServerCore implements Closeable {
 			return;
 		}
 
-		acceptedChannel.configureBlocking(false);
-		SelectionKey registeredKey = acceptedChannel.register(selector, SelectionKey.OP_READ);
-		Optional<ServerSession> optional = db.newServerSession(acceptedChannel, registeredKey);
-		if (!optional.isPresent()) { // Server full
-			Logger.warning(formatNetworkData(acceptedChannel, "Server is full"));
-			NetworkCommunication.silentlyClose(acceptedChannel);
-			return;
-		}
-		ServerSession session = optional.get();
-		registeredKey.attach(session);
-	}
-
-	/*
-	 * Process a selection key likely ready for reading.
-	 */
-	private static void doRead(SelectionKey key) throws IOException {
-		SocketChannel channel = (SocketChannel) key.channel();
-		ServerSession session = (ServerSession) key.attachment();
-		ByteBuffer bb = session.getReadBuffer();
-
-		if (channel.read(bb) == -1) {
-			session.disconnectClient();
-			return;
-		}
-
-		session.updateStateRead();
-
-		session.updateKey();
+		ServerReactor reactor = reactors[nextReactor];
+		nextReactor = (nextReactor + 1) % reactors.length;
+		reactor.register(acceptedChannel);
 	}
 
-	/*
-	 * Process a selection key likely ready for writing.
-	 */
-	private static void doWrite(SelectionKey key) throws IOException {
-		SocketChannel channel = (SocketChannel) key.channel();
-		ServerSession session = (ServerSession) key.attachment();
-		ByteBuffer bb = session.getWriteBuffer();
-
-		bb.flip();
+	@Override
+	public void close() throws IOException {
 		try {
-			Logger.info(formatNetworkRequest(channel, NetworkLogType.WRITE, "BUFFER = " + bb));
-			channel.write(bb);
+			ssc.close();
+			selector.close();
 		} finally {
-			bb.compact();
+			for (ServerReactor reactor : reactors) {
+				reactor.close();
+			}
 		}
-
-		session.updateKey();
-	}
-
-	@Override
-	public void close() throws IOException {
-		ssc.close();
 	}
 
 }
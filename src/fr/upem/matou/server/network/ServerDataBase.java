@@ -1,86 +1,124 @@
 package fr.upem.matou.server.network;
 
-import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.net.InetAddress;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map.Entry;
 import java.util.Optional;
-import java.util.Set;
 
 import fr.upem.matou.shared.logger.Logger;
+import fr.upem.matou.shared.network.ErrorType;
 import fr.upem.matou.shared.network.Username;
 
 /*
- * This class represents the state of the chat server. This class is not thread-safe and should not be used by several
- * threads.
+ * This class represents the state of the chat server. This class is thread-safe : it is shared by all the reactors of
+ * the server. Its lock also orders the broadcasts, so that all clients receive them in the same order.
+ * 
+ * All the indexes are bidirectional (channel <-> username, requester <-> requested) so that every operation except the
+ * broadcast runs in constant time (or in the number of private requests of a client).
  */
 class ServerDataBase {
 
-	private static final int MAX_CLIENT = 10; // Maximum number of connected clients
-	private static final int BUFFER_SIZE_BROADCAST = ServerCommunication.getServerBroadcastBufferSize();
-
 	private final HashMap<SocketChannel, ServerSession> sessions = new HashMap<>();
 	private final HashMap<SocketChannel, Username> authenticated = new HashMap<>(); // All authenticated usernames
-	private final HashMap<Username, HashSet<Username>> privateRequests = new HashMap<>();
-	private final Collection<Username> names = authenticated.values();
-	private final Set<SelectionKey> keys;
-	private final ByteBuffer bbBroadcast = ByteBuffer.allocateDirect(BUFFER_SIZE_BROADCAST);
-
-	ServerDataBase(Set<SelectionKey> keys) {
-		this.keys = keys;
-	}
+	private final HashMap<Username, ServerSession> usernames = new HashMap<>(); // Reverse index of authenticated
+	private final HashMap<Username, HashSet<Username>> outgoingRequests = new HashMap<>(); // Requester -> requested
+	private final HashMap<Username, HashSet<Username>> incomingRequests = new HashMap<>(); // Requested -> requester
+	private final ArrayList<ServerReactor> reactors = new ArrayList<>();
+	private final AdmissionController admission = new AdmissionController();
 
 	/*
-	 * Creates a new ServerSession in this ServerDataBase.
+	 * Adds a reactor to the reactors that receive the broadcasts.
 	 */
-	Optional<ServerSession> newServerSession(SocketChannel sc, SelectionKey key) throws IOException { // O(1)
-		if (sessions.size() >= MAX_CLIENT) {
-			return Optional.empty();
-		}
-		ServerSession session = new ServerSession(this, sc, key);
-		sessions.put(sc, session);
-		return Optional.of(session);
+	synchronized void addReactor(ServerReactor reactor) {
+		reactors.add(reactor);
 	}
 
 	/*
-	 * Returns the common byte buffer of all clients.
+	 * Creates a new ServerSession in this ServerDataBase if the client is admitted. Returns the reason of the refusal
+	 * otherwise.
 	 */
-	ByteBuffer getBroadcastBuffer() {
-		return bbBroadcast;
+	synchronized Optional<ErrorType> newServerSession(SocketChannel sc, InetAddress address, SelectionKey key,
+			ServerReactor reactor) { // O(1)
+		Optional<ErrorType> refusal = admission.admit(address);
+		Logger.debug(() -> "ADMISSION : " + refusal + " - " + admission);
+		if (refusal.isPresent()) {
+			return refusal;
+		}
+		ServerSession session = new ServerSession(this, sc, address, key, reactor);
+		sessions.put(sc, session);
+		key.attach(session);
+		return Optional.empty();
 	}
 
 	/*
 	 * Checks if a username is available.
 	 */
-	private boolean checkAvailability(Username username) { // O(n)
-		return !names.contains(username);
+	private boolean checkAvailability(Username username) { // O(1)
+		return !usernames.containsKey(username);
 	}
 
 	/*
 	 * Adds a new client. Check if this username is available and does not contain any illegal character.
 	 */
-	boolean authentClient(SocketChannel sc, Username username) { // O(n)
+	synchronized boolean authentClient(SocketChannel sc, Username username) { // O(1)
 		if (!(checkAvailability(username))) {
 			return false;
 		}
+		ServerSession session = sessions.get(sc);
+		if (session == null) { // Already disconnected
+			return false;
+		}
 		authenticated.put(sc, username);
+		usernames.put(username, session);
+		admission.authenticated();
 		return true;
 	}
 
 	/*
-	 * Removes all private request of connected clients to a specific client.
+	 * Adds a username to the set associated with a key.
+	 */
+	private static boolean addToIndex(HashMap<Username, HashSet<Username>> index, Username key, Username value) {
+		HashSet<Username> set = index.get(key);
+		if (set == null) {
+			set = new HashSet<>();
+			index.put(key, set);
+		}
+		return set.add(value);
+	}
+
+	/*
+	 * Removes a username from the set associated with a key.
+	 */
+	private static boolean removeFromIndex(HashMap<Username, HashSet<Username>> index, Username key, Username value) {
+		HashSet<Username> set = index.get(key);
+		if (set == null) {
+			return false;
+		}
+		boolean removed = set.remove(value);
+		if (set.isEmpty()) {
+			index.remove(key);
+		}
+		return removed;
+	}
+
+	/*
+	 * Removes all private requests from and to a specific client.
 	 */
-	private void removeAllRequestTo(Username disconnected) { // O(n)
-		for (Entry<Username, HashSet<Username>> entry : privateRequests.entrySet()) {
-			Username key = entry.getKey();
-			HashSet<Username> values = entry.getValue();
-			boolean cancelled = values.remove(disconnected);
-			if (cancelled) {
-				Logger.debug("Cancel private request : " + key + " -> " + disconnected);
+	private void removeAllRequests(Username disconnected) { // O(number of requests of this client)
+		HashSet<Username> requested = outgoingRequests.remove(disconnected);
+		if (requested != null) {
+			for (Username target : requested) {
+				removeFromIndex(incomingRequests, target, disconnected);
+			}
+		}
+		HashSet<Username> requesters = incomingRequests.remove(disconnected);
+		if (requesters != null) {
+			for (Username source : requesters) {
+				removeFromIndex(outgoingRequests, source, disconnected);
+				Logger.debug(() -> "Cancel private request : " + source + " -> " + disconnected);
 			}
 		}
 	}
@@ -88,12 +126,15 @@ class ServerDataBase {
 	/*
 	 * Removes a client from the database.
 	 */
-	Optional<Username> removeClient(SocketChannel channel) { // O(n)
-		sessions.remove(channel);
+	synchronized Optional<Username> removeClient(SocketChannel channel) { // O(1)
+		ServerSession session = sessions.remove(channel);
 		Username disconnected = authenticated.remove(channel);
+		if (session != null) {
+			admission.release(session.getAddress(), disconnected != null);
+		}
 		if (disconnected != null) {
-			privateRequests.remove(disconnected);
-			removeAllRequestTo(disconnected); // cancel all pending private requests
+			usernames.remove(disconnected);
+			removeAllRequests(disconnected); // cancel all pending private requests
 		}
 		return Optional.ofNullable(disconnected);
 	}
@@ -101,49 +142,33 @@ class ServerDataBase {
 	/*
 	 * Returns the username associated with this SocketChannel.
 	 */
-	Optional<Username> usernameOf(SocketChannel sc) { // O(1)
+	synchronized Optional<Username> usernameOf(SocketChannel sc) { // O(1)
 		return Optional.ofNullable(authenticated.get(sc));
 	}
 
-	/*
-	 * Returns the session associated with this SocketChannel.
-	 */
-	private Optional<ServerSession> sessionOf(SocketChannel sc) { // O(1)
-		return Optional.ofNullable(sessions.get(sc));
-	}
-
 	/*
 	 * Returns the session associated with this username.
 	 */
-	Optional<ServerSession> sessionOf(Username username) { // O(n)
-		Optional<SocketChannel> sc = authenticated.entrySet().stream().filter(e -> e.getValue().equals(username))
-				.map(e -> e.getKey()).findFirst();
-		if (!sc.isPresent()) {
-			return Optional.empty();
-		}
-		return sessionOf(sc.get());
+	synchronized Optional<ServerSession> sessionOf(Username username) { // O(1)
+		return Optional.ofNullable(usernames.get(username));
 	}
 
 	/*
 	 * Adds a new private request.
 	 */
-	boolean addPrivateRequest(Username source, Username target) { // O(1)
-		HashSet<Username> set = privateRequests.get(source);
-		if (set == null) {
-			set = new HashSet<>();
-			privateRequests.put(source, set);
-		}
-		boolean added = set.add(target);
-		Logger.debug("PV ADD (" + source + " -> " + target + ") : " + set);
+	synchronized boolean addPrivateRequest(Username source, Username target) { // O(1)
+		boolean added = addToIndex(outgoingRequests, source, target);
+		addToIndex(incomingRequests, target, source);
+		Logger.debug(() -> "PV ADD (" + source + " -> " + target + ") : " + outgoingRequests.get(source));
 		return added;
 	}
 
 	/*
 	 * Checks if source has requested the target for private connection.
 	 */
-	boolean checkPrivateRequest(Username source, Username target) { // O(1)
-		HashSet<Username> set = privateRequests.get(target);
-		Logger.debug("PV CHECK (" + source + " -> " + target + ") : " + set);
+	synchronized boolean checkPrivateRequest(Username source, Username target) { // O(1)
+		HashSet<Username> set = outgoingRequests.get(target);
+		Logger.debug(() -> "PV CHECK (" + source + " -> " + target + ") : " + set);
 		if (set == null) {
 			return false;
 		}
@@ -153,50 +178,27 @@ class ServerDataBase {
 	/*
 	 * Removes a private request.
 	 */
-	boolean removePrivateRequest(Username source, Username target) { // O(1)
-		HashSet<Username> set = privateRequests.get(target);
-		Logger.debug("PV CHECK & REMOVE (" + source + " -> " + target + ") : " + set);
-		if (set == null) {
-			return false;
-		}
-		return set.remove(source);
+	synchronized boolean removePrivateRequest(Username source, Username target) { // O(1)
+		Logger.debug(() -> "PV CHECK & REMOVE (" + source + " -> " + target + ") : "
+				+ outgoingRequests.get(target));
+		removeFromIndex(incomingRequests, source, target);
+		return removeFromIndex(outgoingRequests, target, source);
 	}
 
 	/*
-	 * Updates the read state of all clients. If the broadcast bytebuffer is not empty, then all client's write
-	 * bytebuffer are filled by the broadcast bytebuffer. The broadcast bytebuffer is cleared after this operation.
+	 * Updates the read state of all clients. The given sealed frame is forwarded by reference to the outbound queue of
+	 * all authenticated clients, whatever their reactor. The reference of the caller is released after this operation.
 	 */
-	void updateStateReadAll() { // O(n)
-		Logger.debug("BROADCAST BUFFER : " + bbBroadcast);
-		if (bbBroadcast.position() == 0) {
-			return;
-		}
+	void updateStateReadAll(SharedFrame frame) { // O(n)
+		frame.seal();
+		Logger.debug(() -> "BROADCAST FRAME : " + frame);
 
-		int ready = 0;
-		for (SelectionKey key : keys) {
-			if (!key.isValid()) {
-				continue;
+		synchronized (this) {
+			for (ServerReactor reactor : reactors) {
+				reactor.broadcast(frame);
 			}
-
-			ServerSession session = (ServerSession) key.attachment();
-			if (session == null) {
-				continue;
-			}
-
-			if (!session.isAuthent()) {
-				continue;
-			}
-
-			session.appendWriteBuffer(bbBroadcast);
-
-			int ops = key.interestOps();
-			key.interestOps(ops | SelectionKey.OP_WRITE);
-
-			ready++;
 		}
-		Logger.debug("Forwarding to " + ready + " client(s)");
-
-		bbBroadcast.clear();
+		frame.release();
 	}
 
 }
@@ -0,0 +1,348 @@
+package fr.upem.matou.server.network;
+
+import static fr.upem.matou.shared.logger.Logger.formatNetworkData;
+import static fr.upem.matou.shared.logger.Logger.formatNetworkRequest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import fr.upem.matou.shared.logger.Logger;
+import fr.upem.matou.shared.logger.Logger.NetworkLogType;
+import fr.upem.matou.shared.network.ErrorType;
+import fr.upem.matou.shared.network.NetworkCommunication;
+
+/*
+ * This class represents a reactor of the chat server. A reactor owns a selector and processes all the events of the
+ * clients that the acceptor gave it. The sessions of a reactor must only be modified by the thread of this reactor :
+ * other threads have to submit tasks with execute(Runnable).
+ */
+@SuppressWarnings("resource")
+class ServerReactor implements Runnable, Closeable {
+
+	private static final int WRITE_BUDGET = ServerSettings.getWriteBudget();
+	private static final boolean HANDSHAKE_TIMEOUT = ServerSettings.getHandshakeTimeout() > 0;
+
+	private final ServerDataBase db;
+	private final Selector selector;
+	private final ConcurrentLinkedQueue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+	private final ConcurrentLinkedQueue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean awake = new AtomicBoolean(); // If a wakeup is already pending
+	private final SegmentPool pool = new SegmentPool();
+	private final ArrayList<ServerSession> slowSessions = new ArrayList<>(); // Sessions to disconnect
+	private final ArrayDeque<ServerSession> handshakes = new ArrayDeque<>(); // Sessions by handshake deadline
+	private final SelectorTracer tracer;
+
+	private volatile Thread thread = null;
+
+	ServerReactor(ServerDataBase db, String name) throws IOException {
+		this.db = db;
+		this.selector = Selector.open();
+		this.tracer = new SelectorTracer(name, selector);
+	}
+
+	/*
+	 * Returns the segment pool of the outbound queues of this reactor.
+	 */
+	SegmentPool getSegmentPool() {
+		return pool;
+	}
+
+	/*
+	 * Returns true if the current thread is the thread of this reactor.
+	 */
+	boolean isReactorThread() {
+		return Thread.currentThread() == thread;
+	}
+
+	/*
+	 * Wakes up the selector of this reactor if it is not already done.
+	 */
+	private void wakeup() {
+		if (awake.compareAndSet(false, true)) {
+			selector.wakeup();
+		}
+	}
+
+	/*
+	 * Gives a new accepted channel to this reactor. This method can be called by any thread.
+	 */
+	void register(SocketChannel sc) {
+		pendingChannels.add(sc);
+		wakeup();
+	}
+
+	/*
+	 * Executes a task on the thread of this reactor. If the current thread is the reactor thread, the task is
+	 * executed immediately. Otherwise, the task is executed after all the previously submitted tasks.
+	 */
+	void execute(Runnable task) {
+		if (isReactorThread()) {
+			task.run();
+			return;
+		}
+		pendingTasks.add(task);
+		wakeup();
+	}
+
+	/*
+	 * Forwards a sealed broadcast frame to all the authenticated clients of this reactor. The caller must hold the lock
+	 * of the database so that all reactors receive the broadcast frames in the same order.
+	 */
+	void broadcast(SharedFrame frame) {
+		if (!isReactorThread()) {
+			frame.retain(); // Until the delivery
+			pendingTasks.add(() -> {
+				deliverBroadcast(frame);
+				frame.release();
+			});
+			wakeup();
+			return;
+		}
+		runPendingTasks(); // Older broadcasts must be delivered first
+		deliverBroadcast(frame);
+	}
+
+	/*
+	 * Appends a reference to a broadcast frame to the outbound queue of all the authenticated clients of this reactor.
+	 */
+	private void deliverBroadcast(SharedFrame frame) { // O(n)
+		int ready = 0;
+		for (SelectionKey key : selector.keys()) {
+			if (!key.isValid()) {
+				continue;
+			}
+
+			ServerSession session = (ServerSession) key.attachment();
+			if (session == null) {
+				continue;
+			}
+
+			if (!session.isAuthent()) {
+				continue;
+			}
+
+			session.appendSharedFrame(frame);
+			session.updateKey();
+
+			ready++;
+		}
+		if (Logger.isDebugEnabled()) {
+			Logger.debug("Forwarding to " + ready + " client(s)");
+		}
+	}
+
+	/*
+	 * Plans the disconnection of a session whose outbound queue is full. The session is disconnected by the loop of
+	 * this reactor, so that it never happens in the middle of a broadcast.
+	 */
+	void disconnectLater(ServerSession session) {
+		slowSessions.add(session);
+	}
+
+	/*
+	 * Disconnects all the sessions whose outbound queue is full.
+	 */
+	private void disconnectSlowSessions() {
+		for (int i = 0; i < slowSessions.size(); i++) { // A disconnection may add new slow sessions
+			slowSessions.get(i).disconnectClient();
+		}
+		slowSessions.clear();
+	}
+
+	/*
+	 * Runs all the tasks submitted by other threads.
+	 */
+	private void runPendingTasks() {
+		Runnable task;
+		while ((task = pendingTasks.poll()) != null) {
+			task.run();
+		}
+	}
+
+	/*
+	 * Registers all the channels given by the acceptor. A channel that is not admitted by the database receives an
+	 * ERROR request and is closed.
+	 */
+	private void registerPendingChannels() throws IOException {
+		SocketChannel sc;
+		while ((sc = pendingChannels.poll()) != null) {
+			try {
+				sc.configureBlocking(false);
+				InetAddress address = ((InetSocketAddress) sc.getRemoteAddress()).getAddress();
+				SelectionKey key = sc.register(selector, SelectionKey.OP_READ);
+				Optional<ErrorType> refusal = db.newServerSession(sc, address, key, this);
+				if (refusal.isPresent()) {
+					Logger.warning(formatNetworkData(sc, "Client refused : " + refusal.get()));
+					ServerSession.answerRefusal(sc, refusal.get());
+					NetworkCommunication.silentlyClose(sc);
+					continue;
+				}
+				if (HANDSHAKE_TIMEOUT) {
+					handshakes.addLast((ServerSession) key.attachment());
+				}
+			} catch (IOException e) {
+				Logger.warning(formatNetworkData(sc, e.toString()));
+				NetworkCommunication.silentlyClose(sc);
+			}
+		}
+	}
+
+	/*
+	 * Disconnects the sessions whose handshake deadline has passed. Since the timeout is the same for all sessions,
+	 * the queue is sorted by deadline. Returns the delay in milliseconds until the next deadline, or 0 if there is
+	 * none.
+	 */
+	private long checkHandshakes() {
+		long now = System.nanoTime();
+		ServerSession session;
+		while ((session = handshakes.peekFirst()) != null) {
+			long delay = session.getHandshakeDeadline() - now;
+			if (delay > 0) {
+				return Math.max(1, TimeUnit.NANOSECONDS.toMillis(delay));
+			}
+			handshakes.removeFirst();
+			session.checkHandshake();
+		}
+		return 0;
+	}
+
+	/*
+	 * Runs one pass of the loop : waits for a selection (at most timeout ms, with 0 for no limit and a negative value for
+	 * no wait) and processes all the events.
+	 */
+	private void runPass(long timeout) throws IOException {
+		Set<SelectionKey> selectedKeys = selector.selectedKeys();
+
+		long bounded = tracer.boundTimeout(timeout); // Wakes up for the next timed sample
+		if (bounded < 0) {
+			selector.selectNow();
+		} else {
+			selector.select(bounded);
+		}
+		awake.set(false);
+
+		registerPendingChannels();
+		runPendingTasks();
+		disconnectSlowSessions();
+
+		tracer.trace(selectedKeys);
+		processSelectedKeys(selectedKeys);
+
+		selectedKeys.clear();
+		disconnectSlowSessions();
+	}
+
+	/*
+	 * Runs one pass of the loop on the current thread without waiting. The current thread becomes the thread of this
+	 * reactor : it allows to drive a reactor by hand, without starting its loop (in benchmarks for instance).
+	 */
+	void runNow() throws IOException {
+		thread = Thread.currentThread();
+		checkHandshakes();
+		runPass(-1);
+	}
+
+	/*
+	 * Runs the loop of this reactor until the thread is interrupted.
+	 */
+	@Override
+	public void run() {
+		thread = Thread.currentThread();
+		try {
+			while (!Thread.interrupted()) {
+				long timeout = checkHandshakes();
+				runPass(timeout);
+			}
+		} catch (IOException e) {
+			Logger.error(e.toString());
+			Logger.exception(e);
+		} finally {
+			tracer.close();
+			try {
+				selector.close();
+			} catch (IOException e) {
+				Logger.exception(e);
+			}
+		}
+	}
+
+	/*
+	 * Process all selected keys.
+	 */
+	private static void processSelectedKeys(Set<SelectionKey> selectedKeys) {
+		for (SelectionKey key : selectedKeys) {
+			try {
+				if (key.isValid() && key.isWritable()) {
+					doWrite(key);
+				}
+				if (key.isValid() && key.isReadable()) {
+					doRead(key);
+				}
+			} catch (IOException e) {
+				SocketChannel sc = (SocketChannel) key.channel();
+				Logger.warning(formatNetworkData(sc, e.toString()));
+				ServerSession session = (ServerSession) key.attachment();
+				session.disconnectClient();
+			}
+		}
+	}
+
+	/*
+	 * Process a selection key likely ready for reading.
+	 */
+	private static void doRead(SelectionKey key) throws IOException {
+		SocketChannel channel = (SocketChannel) key.channel();
+		ServerSession session = (ServerSession) key.attachment();
+		ByteBuffer bb = session.getReadBuffer();
+
+		if (channel.read(bb) == -1) {
+			session.disconnectClient();
+			return;
+		}
+
+		session.updateStateRead();
+
+		session.updateKey();
+	}
+
+	/*
+	 * Process a selection key likely ready for writing.
+	 */
+	private static void doWrite(SelectionKey key) throws IOException {
+		SocketChannel channel = (SocketChannel) key.channel();
+		ServerSession session = (ServerSession) key.attachment();
+		OutboundQueue outbound = session.getOutboundQueue();
+
+		Logger.info(() -> formatNetworkRequest(channel, NetworkLogType.WRITE, "QUEUE = " + outbound));
+		long written = outbound.writeTo(channel, WRITE_BUDGET);
+		Logger.debugNetworkData(channel, "WRITTEN", written + " byte(s)");
+
+		session.updateKey();
+	}
+
+	/*
+	 * Stops this reactor. Its selector will be closed by its thread.
+	 */
+	@Override
+	public void close() {
+		Thread current = thread;
+		if (current != null) {
+			current.interrupt();
+		}
+		selector.wakeup();
+	}
+
+}
@@ -5,277 +5,167 @@ import static fr.upem.matou.shared.logger.Logger.formatNetworkData;
 
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 import fr.upem.matou.shared.logger.Logger;
 import fr.upem.matou.shared.logger.Logger.NetworkLogType;
 import fr.upem.matou.shared.network.ErrorType;
+import fr.upem.matou.shared.network.FrameDecoder;
+import fr.upem.matou.shared.network.FrameDecoder.Status;
 import fr.upem.matou.shared.network.NetworkCommunication;
 import fr.upem.matou.shared.network.NetworkProtocol;
+import fr.upem.matou.shared.network.NetworkProtocol.Communicator;
 import fr.upem.matou.shared.network.Username;
-import fr.upem.matou.shared.utils.ByteBuffers;
 
 /*
  * This class represents the state of a client connected to the chat server. A ServerSession is always attached to one
- * and only one ServerDataBase and should be created by ServerDataBase.newServerSession(SocketChannel,SelectionKey).
+ * and only one ServerDataBase and should be created by
+ * ServerDataBase.newServerSession(SocketChannel,SelectionKey,ServerReactor).
+ * 
+ * The requests of the client are framed : each read event fills the read buffer with as many bytes as available, then
+ * all the complete requests of the buffer are processed. Only a trailing partial request is kept for the next read.
+ * 
+ * A ServerSession belongs to one reactor : its state must only be modified by the thread of this reactor.
  */
 class ServerSession {
 
 	private static final int BUFFER_SIZE_INPUT = ServerCommunication.getServerReadBufferSize();
-	private static final int BUFFER_SIZE_OUTPUT = ServerCommunication.getServerWriteBufferSize();
-	private static final int USERNAME_MAX_SIZE = NetworkCommunication.getUsernameMaxSize();
-	private static final int MESSAGE_MAX_SIZE = NetworkCommunication.getMessageMaxSize();
+	private static final int OUTBOUND_SOFT_LIMIT = ServerSettings.getOutboundSoftLimit();
+	private static final int OUTBOUND_HARD_LIMIT = ServerSettings.getOutboundHardLimit();
+	private static final long HANDSHAKE_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(ServerSettings.getHandshakeTimeout());
+	private static final int ERROR_SIZE = Integer.BYTES + Integer.BYTES;
 
 	private final ServerDataBase db;
 	private final SocketChannel sc;
 	private final InetAddress address;
 	private final SelectionKey key;
-	private final ByteBuffer bbRead = ByteBuffer.allocateDirect(BUFFER_SIZE_INPUT);
-	private final ByteBuffer bbWrite = ByteBuffer.allocateDirect(BUFFER_SIZE_OUTPUT);
+	private final ServerReactor reactor;
+	private final ByteBuffer bbRead = ByteBuffer.allocateDirect(BUFFER_SIZE_INPUT); // In write mode between reads
+	private final FrameDecoder decoder = new FrameDecoder(bbRead, Communicator.CLIENT, Communicator.SERVER);
+	private final OutboundQueue outbound;
+	private final long handshakeDeadline; // Deadline of the COREQ request (in nanoseconds)
 
 	private boolean authent = false; // If the client has a username
-	private NetworkProtocol protocol = null;
-	private ServerReader serverReader = null;
-	private int arg = 0; // Argument number of the current reader
+	private Username username = null; // The username of the client, once authenticated
+	private boolean congested = false; // If the outbound queue is beyond its soft limit
+	private boolean slow = false; // If the outbound queue has reached its hard limit
 
-	static interface ServerReader {
-		// Marker interface of readers
-	}
-
-	static class ReaderUsername implements ServerReader {
-		int sizeUsername;
-		Username username;
-	}
-
-	static class ReaderMessage implements ServerReader {
-		int sizeMessage;
-		String message;
-	}
-
-	static class ReaderPort implements ServerReader {
-		int sizeUsername;
-		Username username;
-		int portMessage;
-		int portFile;
-	}
-
-	ServerSession(ServerDataBase db, SocketChannel sc, SelectionKey key) throws IOException {
+	ServerSession(ServerDataBase db, SocketChannel sc, InetAddress address, SelectionKey key, ServerReactor reactor) {
 		this.db = db;
 		this.sc = sc;
+		this.address = address;
 		this.key = key;
-		this.address = ((InetSocketAddress) sc.getRemoteAddress()).getAddress();
-		resetReadState();
+		this.reactor = reactor;
+		this.outbound = new OutboundQueue(reactor.getSegmentPool(), OUTBOUND_SOFT_LIMIT, OUTBOUND_HARD_LIMIT);
+		this.handshakeDeadline = System.nanoTime() + HANDSHAKE_TIMEOUT;
 	}
 
 	ByteBuffer getReadBuffer() {
 		return bbRead;
 	}
 
-	ByteBuffer getWriteBuffer() {
-		return bbWrite;
+	OutboundQueue getOutboundQueue() {
+		return outbound;
 	}
 
-	boolean isAuthent() {
-		return authent;
+	InetAddress getAddress() {
+		return address;
 	}
 
-	private void setAuthent() {
-		authent = true;
+	long getHandshakeDeadline() {
+		return handshakeDeadline;
 	}
 
-	/*
-	 * Appends the given buffer to the write buffer (if there is enough place).
-	 */
-	void appendWriteBuffer(ByteBuffer bb) {
-		boolean succeeded = ByteBuffers.append(bbWrite, bb);
-		if (!succeeded) {
-			Logger.warning(formatNetworkData(sc, "Unknown request lost : Write Buffer cannot hold it"));
-		}
-	}
-
-	/*
-	 * Clears this buffer and sets a new limit.
-	 */
-	private final static void clearAndLimit(ByteBuffer bb, int size) {
-		bb.clear();
-		bb.limit(size);
+	boolean isAuthent() {
+		return authent;
 	}
 
-	/*
-	 * Resets the read state of this client in order to read another request.
-	 */
-	private final void resetReadState() {
-		clearAndLimit(bbRead, Integer.BYTES);
-		arg = 0;
-		protocol = null;
-		serverReader = null;
+	private void setAuthent(Username username) {
+		authent = true;
+		this.username = username; // The instance kept by the database
 	}
 
 	/*
-	 * Updates the state of this client in order to read another argument of the current request.
+	 * Returns the number of bytes waiting to be written to the client.
 	 */
-	private void advanceReadState(int size) {
-		clearAndLimit(bbRead, size);
-		arg++;
+	int getOutboundDepth() {
+		return outbound.size();
 	}
 
 	/*
-	 * Prepares the read state in order to read a Username.
+	 * Returns the number of segments holding the bytes waiting to be written to the client.
 	 */
-	private void setReaderUsername() {
-		serverReader = new ReaderUsername();
-		advanceReadState(Integer.BYTES);
+	int getOutboundSegments() {
+		return outbound.segments();
 	}
 
 	/*
-	 * Process the read buffer to retrieves the first argument of the ReaderUsername and updates the current read state.
+	 * Appends a reference to the given shared frame to the outbound queue. If the queue has reached its hard limit, the
+	 * client is too slow and will be disconnected.
 	 */
-	private void readUsernameArg1(ReaderUsername reader) {
-		bbRead.flip();
-		reader.sizeUsername = bbRead.getInt();
-		Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "SIZE USERNAME : " + reader.sizeUsername));
-		if (reader.sizeUsername > USERNAME_MAX_SIZE || reader.sizeUsername == 0) {
-			Logger.warning(formatNetworkData(sc, "Invalid size username"));
-			disconnectClient();
-			return;
+	void appendSharedFrame(SharedFrame frame) {
+		if (!outbound.append(frame)) {
+			Logger.warning(formatNetworkData(sc, "Broadcast request lost : Outbound Queue is full"));
+			setSlow();
 		}
-
-		advanceReadState(reader.sizeUsername);
 	}
 
 	/*
-	 * Process the read buffer to retrieves the second argument of the ReaderUsername and updates the current read
-	 * state.
+	 * Appends a private request to the outbound queue. If the queue has reached its hard limit, the client is too slow
+	 * and will be disconnected.
 	 */
-	private void readUsernameArg2(ReaderUsername reader) {
-		bbRead.flip();
-		String string = ServerCommunication.decodeString(bbRead);
-		reader.username = new Username(string);
-		Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "USERNAME : " + reader.username));
-
-		resetReadState();
-	}
-
-	/*
-	 * Prepares the read state in order to read a Message.
-	 */
-	private void setReaderMessage() {
-		serverReader = new ReaderMessage();
-		advanceReadState(Integer.BYTES);
-	}
-
-	/*
-	 * Process the read buffer to retrieves the first argument of the ReaderMessage and updates the current read state.
-	 */
-	private void readMessageArg1(ReaderMessage reader) {
-		bbRead.flip();
-		reader.sizeMessage = bbRead.getInt();
-		Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "SIZE MESSAGE : " + reader.sizeMessage));
-		if (reader.sizeMessage > MESSAGE_MAX_SIZE || reader.sizeMessage == 0) {
-			Logger.warning(formatNetworkData(sc, "Invalid size message"));
-			disconnectClient();
-			return;
+	private boolean appendRequest(Predicate<ByteBuffer> request) {
+		if (!outbound.append(request)) {
+			setSlow();
+			return false;
 		}
-
-		advanceReadState(reader.sizeMessage);
+		return true;
 	}
 
 	/*
-	 * Process the read buffer to retrieves the second argument of the ReaderMessage and updates the current read state.
+	 * Marks this client as too slow : it will be disconnected by its reactor.
 	 */
-	private void readMessageArg2(ReaderMessage reader) {
-		bbRead.flip();
-		reader.message = ServerCommunication.decodeString(bbRead);
-		Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "MESSAGE : " + reader.message));
-
-		resetReadState();
-	}
-
-	/*
-	 * Prepares the read state in order to read a username and a two ports.
-	 */
-	private void setReaderPort() {
-		serverReader = new ReaderPort();
-		advanceReadState(Integer.BYTES);
-	}
-
-	/*
-	 * Process the read buffer to retrieves the first argument of the PortReader and updates the current read state.
-	 */
-	private void readPortArg1(ReaderPort reader) {
-		bbRead.flip();
-		reader.sizeUsername = bbRead.getInt();
-		Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "SIZE USERNAME : " + reader.sizeUsername));
-		if (reader.sizeUsername > USERNAME_MAX_SIZE || reader.sizeUsername == 0) {
-			Logger.warning(formatNetworkData(sc, "Invalid size username"));
-			disconnectClient();
+	private void setSlow() {
+		if (slow) {
 			return;
 		}
-
-		advanceReadState(reader.sizeUsername);
+		slow = true;
+		Logger.warning(formatNetworkData(sc, "Slow client : " + outbound));
+		reactor.disconnectLater(this);
 	}
 
 	/*
-	 * Process the read buffer to retrieves the second argument of the PortReader and updates the current read state.
+	 * Reads a Username argument of the current request.
 	 */
-	private void readPortArg2(ReaderPort reader) {
-		bbRead.flip();
-		String string = ServerCommunication.decodeString(bbRead);
-		reader.username = new Username(string);
-		Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "USERNAME : " + reader.username));
-
-		advanceReadState(Integer.BYTES);
-	}
-
-	/*
-	 * Process the read buffer to retrieves the third argument of the PortReader and updates the current read state.
-	 */
-	private void readPortArg3(ReaderPort reader) {
-		bbRead.flip();
-		reader.portMessage = bbRead.getInt();
-
-		advanceReadState(Integer.BYTES);
+	private Username readUsername(int argument) {
+		Username username = decoder.getUsername(argument);
+		Logger.infoNetworkRequest(sc, NetworkLogType.READ, "USERNAME", username);
+		return username;
 	}
 
 	/*
-	 * Process the read buffer to retrieves the fourth argument of the PortReader and updates the current read state.
+	 * Reads a port argument of the current request.
 	 */
-	private void readPortArg4(ReaderPort reader) {
-		bbRead.flip();
-		reader.portFile = bbRead.getInt();
-
-		resetReadState();
-	}
-
-	/*
-	 * Retrives the protocol request type from the read buffer and updates the current read state by setting the
-	 * protocol type if valid.
-	 */
-	private int processRequestType() {
-		bbRead.flip();
-		int ordinal = bbRead.getInt();
-		Optional<NetworkProtocol> optionalProtocol = NetworkProtocol.getProtocol(ordinal);
-		if (!optionalProtocol.isPresent()) {
-			return ordinal;
-		}
-		protocol = optionalProtocol.get();
-		Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "PROTOCOL : " + protocol));
-		return ordinal;
+	private int readPort(int argument) {
+		int port = decoder.getInt(argument);
+		Logger.infoNetworkRequest(sc, NetworkLogType.READ, "PORT", port);
+		return port;
 	}
 
 	/*
 	 * Answers by an ERROR request and fills the write buffer.
 	 */
 	private void answerERROR(ErrorType type) {
-		Logger.info(formatNetworkRequest(sc, NetworkLogType.WRITE, "PROTOCOL : " + NetworkProtocol.ERROR));
-		Logger.info(formatNetworkRequest(sc, NetworkLogType.WRITE, "ERROR : " + type));
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "PROTOCOL", NetworkProtocol.ERROR);
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "ERROR", type);
 
-		if (!ServerCommunication.addRequestERROR(bbWrite, type)) {
-			Logger.warning(formatNetworkData(sc, "ERROR lost : Write Buffer cannot hold it"));
+		if (!appendRequest(bb -> ServerCommunication.addRequestERROR(bb, type))) {
+			Logger.warning(formatNetworkData(sc, "ERROR lost : Outbound Queue is full"));
 			return;
 		}
 	}
@@ -291,29 +181,8 @@ class ServerSession {
 	 * Process a COREQ request.
 	 */
 	private void processCOREQ() {
-		if (arg == 0) {
-			if (!checkCOREQ()) {
-				Logger.warning(formatNetworkData(sc, "Client already authenticated"));
-				disconnectClient();
-				return;
-			}
-			setReaderUsername();
-			return;
-		}
-
-		ReaderUsername reader = (ReaderUsername) serverReader;
-
-		switch (arg) {
-		case 1:
-			readUsernameArg1(reader);
-			return;
-		case 2:
-			readUsernameArg2(reader);
-			answerCORES(reader.username);
-			return;
-		default:
-			throw new AssertionError("Argument " + arg + " is not valid for COREQ");
-		}
+		Username username = readUsername(0);
+		answerCORES(username);
 	}
 
 	/*
@@ -327,25 +196,26 @@ class ServerSession {
 		}
 
 		boolean acceptation = db.authentClient(sc, username);
-		Logger.info(formatNetworkRequest(sc, NetworkLogType.WRITE, "PROTOCOL : " + NetworkProtocol.CORES));
-		Logger.info(formatNetworkRequest(sc, NetworkLogType.WRITE, "ACCEPTATION : " + acceptation));
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "PROTOCOL", NetworkProtocol.CORES);
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "ACCEPTATION", acceptation);
 
-		if (!ServerCommunication.addRequestCORES(bbWrite, acceptation)) {
-			Logger.warning(formatNetworkData(sc, "CORES lost : Write Buffer cannot hold it"));
+		if (!appendRequest(bb -> ServerCommunication.addRequestCORES(bb, acceptation))) {
+			Logger.warning(formatNetworkData(sc, "CORES lost : Outbound Queue is full"));
 		}
 
 		if (acceptation) {
-			setAuthent();
+			setAuthent(username);
 
-			Logger.info(formatNetworkRequest(sc, NetworkLogType.WRITE, "PROTOCOL : " + NetworkProtocol.CONOTIF));
-			Logger.info(formatNetworkRequest(sc, NetworkLogType.WRITE, "USERNAME : " + username));
+			Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "PROTOCOL", NetworkProtocol.CONOTIF);
+			Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "USERNAME", username);
 
-			ByteBuffer bbWriteAll = db.getBroadcastBuffer();
-			if (!ServerCommunication.addRequestCONOTIF(bbWriteAll, username.toString())) {
-				Logger.warning(formatNetworkData(sc, "CONOTIF lost : Broadcast Buffer cannot hold it"));
+			SharedFrame frame = SharedFrame.allocate();
+			if (!ServerCommunication.addRequestCONOTIF(frame.getEncodingBuffer(), username)) {
+				Logger.warning(formatNetworkData(sc, "CONOTIF lost : Broadcast Frame cannot hold it"));
+				frame.release();
 				return;
 			}
-			db.updateStateReadAll();
+			db.updateStateReadAll(frame);
 		}
 	}
 
@@ -357,55 +227,45 @@ class ServerSession {
 	}
 
 	/*
-	 * Process a MSG request.
+	 * Process a MSG request. The message is never decoded : its bytes are validated and copied from the read buffer
+	 * to the broadcast frame, after the encoded username.
 	 */
 	private void processMSG() {
-		if (arg == 0) {
-			if (!checkMSG()) {
-				Logger.warning(formatNetworkData(sc, "Client not authenticated"));
-				disconnectClient();
-				return;
+		int position = decoder.getPosition(0);
+		int limit = bbRead.limit();
+		bbRead.limit(position + decoder.getSize(0)).position(position);
+		try {
+			if (Logger.isInfoEnabled()) {
+				String message = ServerCommunication.decodeString(bbRead.duplicate());
+				Logger.infoNetworkRequest(sc, NetworkLogType.READ, "MESSAGE", message);
 			}
-			setReaderMessage();
-			return;
-		}
-
-		ReaderMessage reader = (ReaderMessage) serverReader;
-
-		switch (arg) {
-		case 1:
-			readMessageArg1(reader);
-			return;
-		case 2:
-			readMessageArg2(reader);
-			answerMSGBC(reader.message);
-			return;
-		default:
-			throw new AssertionError("Argument " + arg + " is not valid for MSG");
+			answerMSGBC();
+		} finally {
+			bbRead.limit(limit);
 		}
 	}
 
 	/*
-	 * Answers by a MSGBC request and fills the broadcast buffer.
+	 * Answers by a MSGBC request and fills the broadcast buffer. The encoded message is the remaining part of the read
+	 * buffer.
 	 */
-	private void answerMSGBC(String message) {
-		if (!NetworkCommunication.checkMessageValidity(message)) {
-			Logger.warning(formatNetworkData(sc, "INVALID MESSAGE : " + message));
+	private void answerMSGBC() {
+		if (!NetworkCommunication.checkEncodedMessageContent(bbRead)) {
+			Logger.warning(formatNetworkData(sc, "INVALID MESSAGE : " + ServerCommunication.decodeString(bbRead)));
 			disconnectClient();
 			return;
 		}
 
-		Username username = db.usernameOf(sc).get();
-		Logger.info(formatNetworkRequest(sc, NetworkLogType.WRITE, "PROTOCOL : " + NetworkProtocol.MSGBC));
-		Logger.info(formatNetworkRequest(sc, NetworkLogType.WRITE, "USERNAME : " + username));
-		Logger.info(formatNetworkRequest(sc, NetworkLogType.WRITE, "MESSAGE : " + message));
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "PROTOCOL", NetworkProtocol.MSGBC);
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "USERNAME", username);
 
-		ByteBuffer bbWriteAll = db.getBroadcastBuffer();
-		if (!ServerCommunication.addRequestMSGBC(bbWriteAll, username.toString(), message)) {
-			Logger.warning(formatNetworkData(sc, "MSGBC lost : Broadcast Buffer cannot hold it"));
+		SharedFrame frame = SharedFrame.allocate();
+		if (!ServerCommunication.addRequestMSGBC(frame.getEncodingBuffer(), username, bbRead)) {
+			Logger.warning(formatNetworkData(sc, "MSGBC lost : Broadcast Frame cannot hold it"));
+			frame.release();
 			return;
 		}
-		db.updateStateReadAll();
+		db.updateStateReadAll(frame);
 	}
 
 	/*
@@ -419,65 +279,50 @@ class ServerSession {
 	 * Process a PVCOREQ request.
 	 */
 	private void processPVCOREQ() {
-		if (arg == 0) {
-			if (!checkPVCOREQ()) {
-				Logger.warning(formatNetworkData(sc, "Client not authenticated"));
-				disconnectClient();
-				return;
-			}
-			setReaderUsername();
-			return;
-		}
-
-		ReaderUsername reader = (ReaderUsername) serverReader;
-
-		switch (arg) {
-		case 1:
-			readUsernameArg1(reader);
-			return;
-		case 2:
-			readUsernameArg2(reader);
-			answerPVCOREQNOTIF(reader.username);
-			return;
-		default:
-			throw new AssertionError("Argument " + arg + " is not valid for PVCOREQ");
-		}
+		Username username = readUsername(0);
+		answerPVCOREQNOTIF(username);
 	}
 
 	/*
 	 * Answers by a PVCOREQNOTIF request and fills the write buffer of the target.
 	 */
 	private void answerPVCOREQNOTIF(Username requested) {
-		Username requester = db.usernameOf(sc).get();
+		Username requester = username;
 		if (requested.equals(requester)) {
 			return;
 		}
 
 		Optional<ServerSession> optional = db.sessionOf(requested);
 		if (!optional.isPresent()) {
-			Logger.debug(formatNetworkData(sc, "Target " + requested + " is not connected"));
+			Logger.debug(() -> formatNetworkData(sc, "Target " + requested + " is not connected"));
 			answerERROR(ErrorType.USRNOTCO);
 			return;
 		}
 
 		boolean valid = db.addPrivateRequest(requester, requested);
-		Logger.debug(formatNetworkData(sc, "PRIVATE REQUEST VALIDITY : " + valid));
+		Logger.debugNetworkData(sc, "PRIVATE REQUEST VALIDITY", valid);
 		if (!valid) {
 			return;
 		}
 
 		ServerSession session = optional.get();
-		ByteBuffer bbTarget = session.getWriteBuffer();
-		Logger.info(
-				formatNetworkRequest(session.sc, NetworkLogType.WRITE, "PROTOCOL : " + NetworkProtocol.PVCOREQNOTIF));
-		Logger.info(formatNetworkRequest(session.sc, NetworkLogType.WRITE, "USERNAME : " + requester));
+		session.reactor.execute(() -> session.notifyPVCOREQNOTIF(requester));
+	}
+
+	/*
+	 * Fills the write buffer of this client with a PVCOREQNOTIF request. It must be called by the thread of the reactor
+	 * of this client.
+	 */
+	private void notifyPVCOREQNOTIF(Username requester) {
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "PROTOCOL", NetworkProtocol.PVCOREQNOTIF);
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "USERNAME", requester);
 
-		if (!ServerCommunication.addRequestPVCOREQNOTIF(bbTarget, requester.toString())) {
-			Logger.warning(formatNetworkData(session.sc, "PVCOREQNOTIF lost : Write Buffer cannot hold it"));
+		if (!appendRequest(bb -> ServerCommunication.addRequestPVCOREQNOTIF(bb, requester))) {
+			Logger.warning(formatNetworkData(sc, "PVCOREQNOTIF lost : Outbound Queue is full"));
 			return;
 		}
 
-		session.updateKey();
+		updateKey();
 	}
 
 	/*
@@ -491,42 +336,21 @@ class ServerSession {
 	 * Process a PVCOACC request.
 	 */
 	private void processPVCOACC() {
-		if (arg == 0) {
-			if (!checkPVCOACC()) {
-				Logger.warning(formatNetworkData(sc, "Client not authenticated"));
-				disconnectClient();
-				return;
-			}
-			setReaderUsername();
-			return;
-		}
-
-		ReaderUsername reader = (ReaderUsername) serverReader;
-
-		switch (arg) {
-		case 1:
-			readUsernameArg1(reader);
-			return;
-		case 2:
-			readUsernameArg2(reader);
-			answerPVCOESTASRC(reader.username);
-			return;
-		default:
-			throw new AssertionError("Argument " + arg + " is not valid for PVCOACC");
-		}
+		Username username = readUsername(0);
+		answerPVCOESTASRC(username);
 	}
 
 	/*
 	 * Answers by a PVCOESTASRC request and fills the write buffer of the target.
 	 */
 	private void answerPVCOESTASRC(Username destination) {
-		Username source = db.usernameOf(sc).get();
+		Username source = username;
 		if (destination.equals(source)) {
 			return;
 		}
 
 		boolean valid = db.checkPrivateRequest(source, destination);
-		Logger.debug(formatNetworkData(sc, "PRIVATE REQUEST ACCEPTATION : " + valid));
+		Logger.debugNetworkData(sc, "PRIVATE REQUEST ACCEPTATION", valid);
 
 		if (!valid) {
 			answerERROR(ErrorType.USRNOTPVREQ);
@@ -534,18 +358,24 @@ class ServerSession {
 		}
 
 		ServerSession session = db.sessionOf(destination).get(); // Checked by checkPrivateRequest
-		ByteBuffer bbTarget = session.getWriteBuffer();
-		Logger.info(
-				formatNetworkRequest(session.sc, NetworkLogType.WRITE, "PROTOCOL : " + NetworkProtocol.PVCOESTASRC));
-		Logger.info(formatNetworkRequest(session.sc, NetworkLogType.WRITE, "USERNAME : " + source));
-		Logger.info(formatNetworkRequest(session.sc, NetworkLogType.WRITE, "ADDRESS : " + address));
-
-		if (!ServerCommunication.addRequestPVCOESTASRC(bbTarget, source.toString(), address)) {
-			Logger.warning(formatNetworkData(session.sc, "PVCOESTASRC lost : Write Buffer cannot hold it"));
+		session.reactor.execute(() -> session.notifyPVCOESTASRC(source, address));
+	}
+
+	/*
+	 * Fills the write buffer of this client with a PVCOESTASRC request. It must be called by the thread of the reactor
+	 * of this client.
+	 */
+	private void notifyPVCOESTASRC(Username source, InetAddress sourceAddress) {
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "PROTOCOL", NetworkProtocol.PVCOESTASRC);
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "USERNAME", source);
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "ADDRESS", sourceAddress);
+
+		if (!appendRequest(bb -> ServerCommunication.addRequestPVCOESTASRC(bb, source, sourceAddress))) {
+			Logger.warning(formatNetworkData(sc, "PVCOESTASRC lost : Outbound Queue is full"));
 			return;
 		}
 
-		session.updateKey();
+		updateKey();
 	}
 
 	/*
@@ -559,45 +389,20 @@ class ServerSession {
 	 * Process a PVCOPORT request.
 	 */
 	private void processPVCOPORT() {
-		if (arg == 0) {
-			if (!checkPVCOPORT()) {
-				Logger.warning(formatNetworkData(sc, "Client not authenticated"));
-				disconnectClient();
-				return;
-			}
-			setReaderPort();
-			return;
-		}
-
-		ReaderPort reader = (ReaderPort) serverReader;
-
-		switch (arg) {
-		case 1:
-			readPortArg1(reader);
-			return;
-		case 2:
-			readPortArg2(reader);
-			return;
-		case 3:
-			readPortArg3(reader);
-			return;
-		case 4:
-			readPortArg4(reader);
-			answerPVCOESTADST(reader.username, reader.portMessage, reader.portFile);
-			return;
-		default:
-			throw new AssertionError("Argument " + arg + " is not valid for PVCOPORT");
-		}
+		Username username = readUsername(0);
+		int portMessage = readPort(1);
+		int portFile = readPort(2);
+		answerPVCOESTADST(username, portMessage, portFile);
 	}
 
 	/*
 	 * Answers by a PVCOESTADST request and fills the write buffer of the target.
 	 */
 	private void answerPVCOESTADST(Username source, int portMessage, int portFile) {
-		Username destination = db.usernameOf(sc).get();
+		Username destination = username;
 
 		boolean valid = db.removePrivateRequest(source, destination);
-		Logger.debug(formatNetworkData(sc, "PRIVATE REQUEST ESTABLISHMENT : " + valid));
+		Logger.debugNetworkData(sc, "PRIVATE REQUEST ESTABLISHMENT", valid);
 		if (!valid) {
 			Logger.warning(formatNetworkData(sc,
 					"Invalid private connection establishment : " + source + " -> " + destination));
@@ -606,64 +411,138 @@ class ServerSession {
 		}
 
 		ServerSession session = db.sessionOf(source).get(); // Checked by removePrivateRequest
-		ByteBuffer bbTarget = session.getWriteBuffer();
-		Logger.info(
-				formatNetworkRequest(session.sc, NetworkLogType.WRITE, "PROTOCOL : " + NetworkProtocol.PVCOESTADST));
-		Logger.info(formatNetworkRequest(session.sc, NetworkLogType.WRITE, "USERNAME : " + destination));
-		Logger.info(formatNetworkRequest(session.sc, NetworkLogType.WRITE, "ADDRESS : " + address));
-		Logger.info(formatNetworkRequest(session.sc, NetworkLogType.WRITE, "PORT MESSAGE : " + portMessage));
-		Logger.info(formatNetworkRequest(session.sc, NetworkLogType.WRITE, "PORT FILE : " + portFile));
-
-		if (!ServerCommunication.addRequestPVCOESTADST(bbTarget, destination.toString(), address, portMessage,
-				portFile)) {
-			Logger.warning(formatNetworkData(session.sc, "PVCOESTADST lost : Write Buffer cannot hold it"));
+		session.reactor.execute(() -> session.notifyPVCOESTADST(destination, address, portMessage, portFile));
+	}
+
+	/*
+	 * Fills the write buffer of this client with a PVCOESTADST request. It must be called by the thread of the reactor
+	 * of this client.
+	 */
+	private void notifyPVCOESTADST(Username destination, InetAddress destinationAddress, int portMessage,
+			int portFile) {
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "PROTOCOL", NetworkProtocol.PVCOESTADST);
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "USERNAME", destination);
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "ADDRESS", destinationAddress);
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "PORT MESSAGE", portMessage);
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "PORT FILE", portFile);
+
+		if (!appendRequest(bb -> ServerCommunication.addRequestPVCOESTADST(bb, destination,
+				destinationAddress, portMessage, portFile))) {
+			Logger.warning(formatNetworkData(sc, "PVCOESTADST lost : Outbound Queue is full"));
 			return;
 		}
 
-		session.updateKey();
+		updateKey();
 	}
 
 	/*
-	 * Updates the state of the current session after reading.
+	 * Checks if the current state of the client is valid with a request of the given type.
 	 */
-	void updateStateRead() {
-		Logger.info(formatNetworkRequest(sc, NetworkLogType.READ, "BUFFER = " + bbRead));
-		if (bbRead.hasRemaining()) { // Not finished to read
-			return;
+	private boolean checkRequest(NetworkProtocol protocol) {
+		switch (protocol) {
+		case COREQ:
+			if (!checkCOREQ()) {
+				Logger.warning(formatNetworkData(sc, "Client already authenticated"));
+				return false;
+			}
+			return true;
+		case MSG:
+			if (!checkMSG()) {
+				Logger.warning(formatNetworkData(sc, "Client not authenticated"));
+				return false;
+			}
+			return true;
+		case PVCOREQ:
+			if (!checkPVCOREQ()) {
+				Logger.warning(formatNetworkData(sc, "Client not authenticated"));
+				return false;
+			}
+			return true;
+		case PVCOACC:
+			if (!checkPVCOACC()) {
+				Logger.warning(formatNetworkData(sc, "Client not authenticated"));
+				return false;
+			}
+			return true;
+		case PVCOPORT:
+			if (!checkPVCOPORT()) {
+				Logger.warning(formatNetworkData(sc, "Client not authenticated"));
+				return false;
+			}
+			return true;
+		default:
+			Logger.warning(formatNetworkData(sc, "Unsupported protocol request : " + protocol));
+			return false;
 		}
+	}
 
-		if (protocol == null) { // New request
-			int code = processRequestType();
-			if (protocol == null) { // Null again => the given code is not valid
-				Logger.warning(formatNetworkData(sc, "Invalid protocol code : " + code));
-				disconnectClient();
-				return;
-			}
+	/*
+	 * Processes the request at the beginning of the read buffer (in read mode). Returns false if the request is not
+	 * complete yet or if the client has been disconnected.
+	 */
+	private boolean processRequest() {
+		Status status = decoder.decode();
+		if (status == Status.INVALID_PROTOCOL) {
+			Logger.warning(formatNetworkData(sc, "Invalid protocol code : " + bbRead.getInt(bbRead.position())));
+			disconnectClient();
+			return false;
 		}
 
+		NetworkProtocol protocol = decoder.getProtocol();
+		if (protocol == null) { // Not finished to read the type
+			return false;
+		}
+
+		if (!checkRequest(protocol)) {
+			disconnectClient();
+			return false;
+		}
+
+		if (status == Status.INVALID_SIZE) {
+			Logger.warning(formatNetworkData(sc, "Invalid size argument : " + protocol));
+			disconnectClient();
+			return false;
+		}
+		if (status == Status.INCOMPLETE) { // Not finished to read
+			return false;
+		}
+
+		Logger.infoNetworkRequest(sc, NetworkLogType.READ, "PROTOCOL", protocol);
+
 		// Here : process the request by its type
 		switch (protocol) {
 		case COREQ:
 			processCOREQ();
-			return;
+			break;
 		case MSG:
 			processMSG();
-			return;
+			break;
 		case PVCOREQ:
 			processPVCOREQ();
-			return;
+			break;
 		case PVCOACC:
 			processPVCOACC();
-			return;
+			break;
 		case PVCOPORT:
 			processPVCOPORT();
-			return;
+			break;
 		default:
-			Logger.warning(formatNetworkData(sc, "Unsupported protocol request : " + protocol));
-			disconnectClient();
-			return;
+			throw new AssertionError("Protocol " + protocol + " is not supported");
 		}
+		decoder.next();
+		return key.isValid() && !slow; // The request may have disconnected the client
+	}
 
+	/*
+	 * Updates the state of the current session after reading : processes all the complete requests of the read buffer.
+	 */
+	void updateStateRead() {
+		bbRead.flip();
+		Logger.info(() -> formatNetworkRequest(sc, NetworkLogType.READ, "BUFFER = " + bbRead));
+		while (processRequest()) {
+			// Processes the next request
+		}
+		bbRead.compact(); // Keeps the trailing partial request
 	}
 
 	/*
@@ -672,11 +551,11 @@ class ServerSession {
 	private int computeInterestOps() {
 		int ops = 0;
 
-		if (bbWrite.position() > 0) { // There is something to write
+		if (!outbound.isEmpty()) { // There is something to write
 			ops |= SelectionKey.OP_WRITE;
 		}
 
-		if (bbRead.hasRemaining()) { // There is something to read
+		if (bbRead.hasRemaining() && !congested) { // There is something to read
 			ops |= SelectionKey.OP_READ;
 		}
 
@@ -691,6 +570,12 @@ class ServerSession {
 			return;
 		}
 
+		boolean congestion = outbound.isCongested();
+		if (congestion != congested) {
+			congested = congestion;
+			Logger.debugNetworkData(sc, "CONGESTION", congested + " - " + outbound);
+		}
+
 		int ops = computeInterestOps();
 		if (ops == 0) { // Something went wrong
 			throw new AssertionError("Key is inactive");
@@ -698,29 +583,67 @@ class ServerSession {
 		key.interestOps(ops);
 	}
 
+	/*
+	 * Sends an ERROR request directly to a client that is about to be closed. The request is small enough to be written
+	 * by a single call on a new connection. The pending requests of the client are discarded so that closing the
+	 * channel does not reset the connection before the client reads the error.
+	 */
+	static void answerRefusal(SocketChannel sc, ErrorType type) {
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "PROTOCOL", NetworkProtocol.ERROR);
+		Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "ERROR", type);
+
+		ByteBuffer bb = ByteBuffer.allocate(ERROR_SIZE);
+		ServerCommunication.addRequestERROR(bb, type);
+		bb.flip();
+		try {
+			sc.write(bb);
+			sc.shutdownOutput();
+			bb.clear();
+			while (sc.read(bb) > 0) { // The channel must be in non-blocking mode
+				bb.clear();
+			}
+		} catch (IOException e) {
+			Logger.warning(formatNetworkData(sc, "ERROR lost : " + e));
+		}
+	}
+
+	/*
+	 * Disconnects the client if it is still not authenticated after the handshake timeout.
+	 */
+	void checkHandshake() {
+		if (authent || !sc.isOpen()) {
+			return;
+		}
+		Logger.warning(formatNetworkData(sc, "Handshake timeout"));
+		answerRefusal(sc, ErrorType.AUTHTIMEOUT);
+		disconnectClient();
+	}
+
 	/*
 	 * Disconnects the client.
 	 */
 	void disconnectClient() {
-		Logger.debug(formatNetworkData(sc, "SILENTLY CLOSE"));
+		Logger.debugNetworkData(sc, "SILENTLY CLOSE");
 
 		Optional<Username> disconnected = db.removeClient(sc);
-		Logger.debug(formatNetworkData(sc, "DISCONNECTION : " + disconnected));
+		Logger.debugNetworkData(sc, "DISCONNECTION", disconnected);
 
 		if (disconnected.isPresent()) {
-			String username = disconnected.get().toString();
-			Logger.info(formatNetworkRequest(sc, NetworkLogType.WRITE, "PROTOCOL : " + NetworkProtocol.DISCONOTIF));
-			Logger.info(formatNetworkRequest(sc, NetworkLogType.WRITE, "USERNAME : " + username));
-
-			ByteBuffer bbWriteAll = db.getBroadcastBuffer();
-			if (!ServerCommunication.addRequestDISCONOTIF(bbWriteAll, username)) {
-				Logger.warning(formatNetworkData(sc, "DISCONOTIF lost : Broadcast Buffer cannot hold it"));
+			Username username = disconnected.get();
+			Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "PROTOCOL", NetworkProtocol.DISCONOTIF);
+			Logger.infoNetworkRequest(sc, NetworkLogType.WRITE, "USERNAME", username);
+
+			SharedFrame frame = SharedFrame.allocate();
+			if (!ServerCommunication.addRequestDISCONOTIF(frame.getEncodingBuffer(), username)) {
+				Logger.warning(formatNetworkData(sc, "DISCONOTIF lost : Broadcast Frame cannot hold it"));
+				frame.release();
 			} else {
-				db.updateStateReadAll();
+				db.updateStateReadAll(frame);
 			}
 
 		}
 
+		outbound.clear(); // Releases the shared frames
 		NetworkCommunication.silentlyClose(sc);
 	}
 
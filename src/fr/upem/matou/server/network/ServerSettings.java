@@ -0,0 +1,194 @@
+package fr.upem.matou.server.network;
+
+/**
+ * This class provides static methods in order to tune the server core. All settings must be set before the
+ * construction of the {@link ServerCore}.
+ */
+public class ServerSettings {
+
+	private static int REACTORS = 1; // Number of reactor threads
+	private static int OUTBOUND_SOFT_LIMIT = 64 * 1024; // Depth beyond which a client is not read anymore
+	private static int OUTBOUND_HARD_LIMIT = 1024 * 1024; // Depth beyond which a client is disconnected
+	private static int WRITE_BUDGET = 64 * 1024; // Bytes written to a client in a single selection
+	private static int MAX_SESSIONS = 10; // Maximum number of connected clients
+	private static int MAX_UNAUTHENTICATED = 10; // Maximum number of connected clients without username
+	private static int MAX_SESSIONS_PER_ADDRESS = 0; // Maximum number of clients per IP address (0 : no limit)
+	private static long HANDSHAKE_TIMEOUT = 0; // Delay in ms to send a valid COREQ (0 : no limit)
+
+	private ServerSettings() {
+	}
+
+	/**
+	 * Sets the number of reactors of the server. Each reactor runs in its own thread with its own selector, and the
+	 * accepted clients are shared between all the reactors.
+	 *
+	 * @param reactors
+	 *            The number of reactors (at least 1).
+	 * @throws IllegalArgumentException
+	 *             If the number of reactors is not strictly positive.
+	 */
+	public static void setReactors(int reactors) {
+		if (reactors < 1) {
+			throw new IllegalArgumentException("Invalid number of reactors : " + reactors);
+		}
+		REACTORS = reactors;
+	}
+
+	/*
+	 * Returns the number of reactors of the server.
+	 */
+	static int getReactors() {
+		return REACTORS;
+	}
+
+	/**
+	 * Sets the limits of the outbound queue of each client, in bytes. When the queue of a client is deeper than the soft
+	 * limit, the server stops reading the requests of this client until the queue drains. When a request would make
+	 * the queue deeper than the hard limit, the client is considered too slow and is disconnected.
+	 *
+	 * @param softLimit
+	 *            The soft limit.
+	 * @param hardLimit
+	 *            The hard limit.
+	 * @throws IllegalArgumentException
+	 *             If a limit cannot hold the largest request or if the soft limit is greater than the hard limit.
+	 */
+	public static void setOutboundLimits(int softLimit, int hardLimit) {
+		int min = SegmentPool.getSegmentSize();
+		if (softLimit < min || hardLimit < softLimit) {
+			throw new IllegalArgumentException("Invalid outbound limits : " + softLimit + " / " + hardLimit);
+		}
+		OUTBOUND_SOFT_LIMIT = softLimit;
+		OUTBOUND_HARD_LIMIT = hardLimit;
+	}
+
+	/*
+	 * Returns the soft limit of an outbound queue.
+	 */
+	static int getOutboundSoftLimit() {
+		return OUTBOUND_SOFT_LIMIT;
+	}
+
+	/*
+	 * Returns the hard limit of an outbound queue.
+	 */
+	static int getOutboundHardLimit() {
+		return OUTBOUND_HARD_LIMIT;
+	}
+
+	/**
+	 * Sets the maximum number of bytes written to a client each time its channel is selected. A client with a large
+	 * outbound queue is flushed over several selections, so that it cannot starve the other clients of its reactor.
+	 *
+	 * @param budget
+	 *            The maximum number of bytes written in a single selection.
+	 * @throws IllegalArgumentException
+	 *             If the budget cannot hold the largest request.
+	 */
+	public static void setWriteBudget(int budget) {
+		if (budget < SegmentPool.getSegmentSize()) {
+			throw new IllegalArgumentException("Invalid write budget : " + budget);
+		}
+		WRITE_BUDGET = budget;
+	}
+
+	/*
+	 * Returns the maximum number of bytes written to a client in a single selection.
+	 */
+	static int getWriteBudget() {
+		return WRITE_BUDGET;
+	}
+
+	/**
+	 * Sets the maximum number of clients connected to the server, authenticated or not.
+	 *
+	 * @param maxSessions
+	 *            The maximum number of clients (at least 1).
+	 * @throws IllegalArgumentException
+	 *             If the maximum number of clients is not strictly positive.
+	 */
+	public static void setMaxSessions(int maxSessions) {
+		if (maxSessions < 1) {
+			throw new IllegalArgumentException("Invalid maximum number of sessions : " + maxSessions);
+		}
+		MAX_SESSIONS = maxSessions;
+	}
+
+	/*
+	 * Returns the maximum number of clients.
+	 */
+	static int getMaxSessions() {
+		return MAX_SESSIONS;
+	}
+
+	/**
+	 * Sets the maximum number of clients connected to the server that do not have a username yet. This limit prevents
+	 * a flood of connections from using all the slots of the server.
+	 *
+	 * @param maxUnauthenticated
+	 *            The maximum number of clients without username (at least 1).
+	 * @throws IllegalArgumentException
+	 *             If the maximum number of clients without username is not strictly positive.
+	 */
+	public static void setMaxUnauthenticated(int maxUnauthenticated) {
+		if (maxUnauthenticated < 1) {
+			throw new IllegalArgumentException("Invalid maximum number of unauthenticated sessions : "
+					+ maxUnauthenticated);
+		}
+		MAX_UNAUTHENTICATED = maxUnauthenticated;
+	}
+
+	/*
+	 * Returns the maximum number of clients without username.
+	 */
+	static int getMaxUnauthenticated() {
+		return MAX_UNAUTHENTICATED;
+	}
+
+	/**
+	 * Sets the maximum number of clients connected to the server from the same IP address.
+	 *
+	 * @param maxSessionsPerAddress
+	 *            The maximum number of clients per address, or 0 for no limit.
+	 * @throws IllegalArgumentException
+	 *             If the maximum number of clients per address is negative.
+	 */
+	public static void setMaxSessionsPerAddress(int maxSessionsPerAddress) {
+		if (maxSessionsPerAddress < 0) {
+			throw new IllegalArgumentException("Invalid maximum number of sessions per address : "
+					+ maxSessionsPerAddress);
+		}
+		MAX_SESSIONS_PER_ADDRESS = maxSessionsPerAddress;
+	}
+
+	/*
+	 * Returns the maximum number of clients per address (0 : no limit).
+	 */
+	static int getMaxSessionsPerAddress() {
+		return MAX_SESSIONS_PER_ADDRESS;
+	}
+
+	/**
+	 * Sets the delay given to a new client to send a valid connection request. A client which is not authenticated
+	 * after this delay is disconnected.
+	 *
+	 * @param timeout
+	 *            The delay in milliseconds, or 0 for no limit.
+	 * @throws IllegalArgumentException
+	 *             If the delay is negative.
+	 */
+	public static void setHandshakeTimeout(long timeout) {
+		if (timeout < 0) {
+			throw new IllegalArgumentException("Invalid handshake timeout : " + timeout);
+		}
+		HANDSHAKE_TIMEOUT = timeout;
+	}
+
+	/*
+	 * Returns the delay in milliseconds given to a new client to authenticate (0 : no limit).
+	 */
+	static long getHandshakeTimeout() {
+		return HANDSHAKE_TIMEOUT;
+	}
+
+}
@@ -0,0 +1,101 @@
+package fr.upem.matou.server.network;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * This class represents a frame shared by several sessions (a broadcast request). The frame is encoded only once and
+ * each session only keeps a reference to it and its own read offset.
+ *
+ * A SharedFrame counts its references : the creator owns the first one, and each session that queues the frame owns
+ * another one. When the last reference is released, the buffer of the frame is given back to the pool. A SharedFrame
+ * is immutable once sealed and can be used by several threads.
+ */
+class SharedFrame {
+
+	private static final int BUFFER_SIZE = ServerCommunication.getServerBroadcastBufferSize();
+	private static final int POOL_MAX_SIZE = 1024; // Maximum number of unused buffers kept by the pool
+	private static final ConcurrentLinkedQueue<ByteBuffer> POOL = new ConcurrentLinkedQueue<>();
+	private static final AtomicInteger POOL_SIZE = new AtomicInteger();
+
+	private final ByteBuffer buffer;
+	private final AtomicInteger references = new AtomicInteger(1); // The reference of the creator
+
+	private SharedFrame(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	/*
+	 * Returns a new frame ready to be encoded. The buffer of the frame is in write mode until the frame is sealed.
+	 */
+	static SharedFrame allocate() {
+		ByteBuffer bb = POOL.poll();
+		if (bb == null) {
+			bb = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		} else {
+			POOL_SIZE.decrementAndGet();
+			bb.clear();
+		}
+		return new SharedFrame(bb);
+	}
+
+	/*
+	 * Returns the buffer of this frame in order to encode it. It must not be used once the frame is sealed.
+	 */
+	ByteBuffer getEncodingBuffer() {
+		return buffer;
+	}
+
+	/*
+	 * Seals this frame : its buffer switches to read mode and will never be modified again.
+	 */
+	void seal() {
+		buffer.flip();
+	}
+
+	/*
+	 * Returns the size of this sealed frame.
+	 */
+	int size() {
+		return buffer.remaining();
+	}
+
+	/*
+	 * Returns a new view of this sealed frame. Each view has its own position, which is the read offset of its owner.
+	 */
+	ByteBuffer view() {
+		return buffer.duplicate();
+	}
+
+	/*
+	 * Adds a reference to this frame.
+	 */
+	void retain() {
+		int previous = references.getAndIncrement();
+		if (previous <= 0) {
+			throw new IllegalStateException("Frame already released");
+		}
+	}
+
+	/*
+	 * Removes a reference to this frame. The buffer goes back to the pool when the last reference is released.
+	 */
+	void release() {
+		int remaining = references.decrementAndGet();
+		if (remaining < 0) {
+			throw new IllegalStateException("Frame already released");
+		}
+		if (remaining == 0 && POOL_SIZE.incrementAndGet() <= POOL_MAX_SIZE) {
+			POOL.add(buffer);
+		} else if (remaining == 0) {
+			POOL_SIZE.decrementAndGet();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "SharedFrame [buffer=" + buffer + ", references=" + references.get() + "]";
+	}
+
+}
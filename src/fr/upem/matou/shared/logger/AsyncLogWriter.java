@@ -0,0 +1,248 @@
+package fr.upem.matou.shared.logger;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.DateFormat;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class provides an asynchronous log writer. The logging threads only put their events in a bounded lock-free
+ * ring, and a background thread formats and writes them to a file by batches. When the file reaches its maximum size,
+ * it is rotated : "file" becomes "file.1", "file.1" becomes "file.2" and so on.
+ *
+ * If the ring is full, the new events are dropped instead of blocking the logging thread. The number of dropped events
+ * is available with {@link #getDroppedCount()} and is also reported in the log file.
+ *
+ * This class is thread-safe.
+ */
+public class AsyncLogWriter implements Closeable {
+
+	private static final Charset CHARSET = StandardCharsets.UTF_8;
+	private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(CHARSET);
+	private static final int BATCH_SIZE = 256; // Maximum number of events written between two flushes
+	private static final long PARK_DELAY = TimeUnit.MILLISECONDS.toNanos(100); // Maximum idle delay of the writer
+
+	private final Path path;
+	private final long maxFileSize;
+	private final int maxFiles;
+
+	private final AtomicReferenceArray<LogEvent> ring;
+	private final int mask;
+	private final AtomicLong tail = new AtomicLong(); // Next sequence claimed by a producer
+	private volatile long head = 0; // Next sequence read by the writer
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final Thread thread;
+	private volatile boolean waiting = false; // If the writer is parked
+	private volatile boolean closed = false;
+
+	private OutputStream output; // Only used by the writer thread
+	private long fileSize;
+	private long reportedDrops = 0;
+	private final DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.MEDIUM);
+
+	/**
+	 * Creates a new asynchronous writer and starts its thread. The events are appended to the given file.
+	 *
+	 * @param path
+	 *            The path of the log file.
+	 * @param capacity
+	 *            The number of events of the ring (rounded up to a power of two).
+	 * @param maxFileSize
+	 *            The size in bytes beyond which the file is rotated.
+	 * @param maxFiles
+	 *            The number of rotated files kept in addition to the current one.
+	 * @throws IOException
+	 *             If the log file cannot be opened.
+	 * @throws IllegalArgumentException
+	 *             If a size is not strictly positive or if the number of rotated files is negative.
+	 */
+	public AsyncLogWriter(Path path, int capacity, long maxFileSize, int maxFiles) throws IOException {
+		requireNonNull(path);
+		if (capacity < 1 || capacity > (1 << 30) || maxFileSize < 1 || maxFiles < 0) {
+			throw new IllegalArgumentException("Invalid writer settings : " + capacity + " / " + maxFileSize + " / "
+					+ maxFiles);
+		}
+		this.path = path;
+		this.maxFileSize = maxFileSize;
+		this.maxFiles = maxFiles;
+
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		this.ring = new AtomicReferenceArray<>(size);
+		this.mask = size - 1;
+
+		openFile();
+		thread = new Thread(this::run, "async logger " + path.getFileName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Returns the number of events dropped because the ring was full.
+	 *
+	 * @return The number of dropped events.
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/*
+	 * Puts an event in the ring. Returns false if the event was dropped.
+	 */
+	boolean offer(LogEvent event) {
+		if (closed) {
+			dropped.incrementAndGet();
+			return false;
+		}
+		long sequence;
+		do {
+			sequence = tail.get();
+			if (sequence - head >= ring.length()) { // Full
+				dropped.incrementAndGet();
+				return false;
+			}
+		} while (!tail.compareAndSet(sequence, sequence + 1));
+
+		ring.set((int) sequence & mask, event); // Publishes the event
+		if (waiting) {
+			LockSupport.unpark(thread);
+		}
+		return true;
+	}
+
+	/*
+	 * Opens the log file in append mode.
+	 */
+	private void openFile() throws IOException {
+		output = new BufferedOutputStream(Files.newOutputStream(path, StandardOpenOption.CREATE,
+				StandardOpenOption.APPEND));
+		fileSize = Files.size(path);
+	}
+
+	/*
+	 * Closes the current file, shifts the rotated files and opens a new file.
+	 */
+	private void rotate() throws IOException {
+		output.close();
+		if (maxFiles == 0) {
+			Files.delete(path);
+		} else {
+			Path parent = path.toAbsolutePath().getParent();
+			String name = path.getFileName().toString();
+			Files.deleteIfExists(parent.resolve(name + "." + maxFiles));
+			for (int i = maxFiles - 1; i >= 1; i--) {
+				Path source = parent.resolve(name + "." + i);
+				if (Files.exists(source)) {
+					Files.move(source, parent.resolve(name + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+			Files.move(path, parent.resolve(name + ".1"), StandardCopyOption.REPLACE_EXISTING);
+		}
+		openFile();
+	}
+
+	/*
+	 * Writes a line to the current file.
+	 */
+	private void writeLine(String line) throws IOException {
+		byte[] bytes = line.getBytes(CHARSET);
+		output.write(bytes);
+		output.write(LINE_SEPARATOR);
+		fileSize += bytes.length + LINE_SEPARATOR.length;
+		if (fileSize >= maxFileSize) {
+			output.flush();
+			rotate();
+		}
+	}
+
+	/*
+	 * Writes at most one batch of events. Returns the number of events written.
+	 */
+	private int writeBatch() throws IOException {
+		int count = 0;
+		long sequence = head;
+		while (count < BATCH_SIZE) {
+			int index = (int) sequence & mask;
+			LogEvent event = ring.get(index);
+			if (event == null) { // Empty, or claimed but not published yet
+				break;
+			}
+			ring.set(index, null);
+			sequence++;
+			head = sequence; // Frees the slot
+			writeLine(event.format(dateFormat));
+			count++;
+		}
+
+		long drops = dropped.get();
+		if (drops != reportedDrops) {
+			writeLine("[" + (drops - reportedDrops) + " log event(s) dropped]");
+			reportedDrops = drops;
+		}
+
+		if (count > 0) {
+			output.flush();
+		}
+		return count;
+	}
+
+	/*
+	 * Runs the loop of the writer until it is closed.
+	 */
+	private void run() {
+		try {
+			while (!closed) {
+				if (writeBatch() > 0) {
+					continue;
+				}
+				waiting = true;
+				if (ring.get((int) head & mask) == null && !closed) { // Checks again before parking
+					LockSupport.parkNanos(this, PARK_DELAY);
+				}
+				waiting = false;
+			}
+			while (writeBatch() > 0) {
+				// Writes the remaining events
+			}
+		} catch (IOException e) {
+			System.err.println("Async logger failure : " + e);
+		} finally {
+			try {
+				output.close();
+			} catch (IOException e) {
+				System.err.println("Async logger failure : " + e);
+			}
+		}
+	}
+
+	/**
+	 * Closes this writer. The events already in the ring are written before the file is closed.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
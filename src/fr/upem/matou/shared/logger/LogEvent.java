@@ -0,0 +1,53 @@
+package fr.upem.matou.shared.logger;
+
+import java.text.DateFormat;
+import java.util.function.UnaryOperator;
+
+/*
+ * This class represents a log event waiting to be written by an AsyncLogWriter. The event only keeps the raw parts of
+ * the line : the line is formatted by the thread of the writer.
+ */
+final class LogEvent {
+
+	private final String level; // null for a raw event
+	private final UnaryOperator<String> color;
+	private final long time;
+	private final String thread;
+	private final String message;
+	private final boolean header;
+
+	private LogEvent(String level, UnaryOperator<String> color, long time, String thread, String message,
+			boolean header) {
+		this.level = level;
+		this.color = color;
+		this.time = time;
+		this.thread = thread;
+		this.message = message;
+		this.header = header;
+	}
+
+	/*
+	 * Creates an event for a message of the given level, as seen by the current thread.
+	 */
+	static LogEvent of(String level, UnaryOperator<String> color, String message, boolean header) {
+		return new LogEvent(level, color, System.currentTimeMillis(), Thread.currentThread().getName(), message, header);
+	}
+
+	/*
+	 * Creates an event whose text is already formatted.
+	 */
+	static LogEvent raw(String text) {
+		return new LogEvent(null, UnaryOperator.identity(), 0, null, text, false);
+	}
+
+	/*
+	 * Formats this event as a line. The date format is owned by the calling thread.
+	 */
+	String format(DateFormat dateFormat) {
+		if (level == null || !header) {
+			return color.apply(message);
+		}
+		return color.apply(Logger.formatHeader(level, dateFormat.format(time), thread, message));
+	}
+
+}
@@ -1,20 +1,26 @@
 package fr.upem.matou.shared.logger;
 
-import static fr.upem.matou.shared.logger.Colorator.colorGreen;
-import static fr.upem.matou.shared.logger.Colorator.colorPurple;
-import static fr.upem.matou.shared.logger.Colorator.colorRed;
-import static fr.upem.matou.shared.logger.Colorator.colorYellow;
 import static java.util.Objects.requireNonNull;
 
 import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.nio.channels.SocketChannel;
 import java.text.DateFormat;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 /**
  * This class provides static methods in order to log events by priority.
  * 
  * This logger has two output stream : the normal output and the exception output. All logging methods will write in one
  * and only one output.
+ * 
+ * Messages that are expensive to build should be given lazily, either by a supplier or by the parameterized network
+ * methods : they are only formatted if their level is enabled.
+ * 
+ * Each output can be attached to an {@link AsyncLogWriter} : the logging threads then only enqueue their events, which
+ * are formatted and written by the thread of the writer.
  */
 public class Logger {
 
@@ -35,13 +41,18 @@ public class Logger {
 
 	}
 
+	private static final String SEPARATOR_LINE = //
+			"--------------------------------------------------------------------------------";
+
 	private static PrintStream OUTPUT = System.err; // Normal output
+	private static AsyncLogWriter ASYNC_OUTPUT = null; // Asynchronous normal output (replaces OUTPUT if set)
 	private static boolean LOG_ERROR = false;
 	private static boolean LOG_WARNING = false;
 	private static boolean LOG_INFO = false;
 	private static boolean LOG_DEBUG = false;
 
 	private static PrintStream EXCEPT = System.err; // Exception output
+	private static AsyncLogWriter ASYNC_EXCEPT = null; // Asynchronous exception output (replaces EXCEPT if set)
 	private static boolean LOG_EXCEPTION = true;
 
 	private static boolean HEADER_INFO = false; // display more info
@@ -59,6 +70,18 @@ public class Logger {
 	public static void attachOutput(PrintStream out) {
 		requireNonNull(out);
 		OUTPUT = out;
+		ASYNC_OUTPUT = null;
+	}
+
+	/**
+	 * Changes the normal output of the logger to an asynchronous writer.
+	 * 
+	 * @param out
+	 *            The new normal output.
+	 */
+	public static void attachOutput(AsyncLogWriter out) {
+		requireNonNull(out);
+		ASYNC_OUTPUT = out;
 	}
 
 	/**
@@ -70,6 +93,18 @@ public class Logger {
 	public static void attachException(PrintStream except) {
 		requireNonNull(except);
 		EXCEPT = except;
+		ASYNC_EXCEPT = null;
+	}
+
+	/**
+	 * Changes the exception output of the logger to an asynchronous writer.
+	 * 
+	 * @param except
+	 *            The new exception output.
+	 */
+	public static void attachException(AsyncLogWriter except) {
+		requireNonNull(except);
+		ASYNC_EXCEPT = except;
 	}
 
 	/**
@@ -132,6 +167,42 @@ public class Logger {
 		LOG_EXCEPTION = activation;
 	}
 
+	/**
+	 * Returns true if error logging is enabled.
+	 * 
+	 * @return true if error logging is enabled.
+	 */
+	public static boolean isErrorEnabled() {
+		return LOG_ERROR;
+	}
+
+	/**
+	 * Returns true if warning logging is enabled.
+	 * 
+	 * @return true if warning logging is enabled.
+	 */
+	public static boolean isWarningEnabled() {
+		return LOG_WARNING;
+	}
+
+	/**
+	 * Returns true if info logging is enabled.
+	 * 
+	 * @return true if info logging is enabled.
+	 */
+	public static boolean isInfoEnabled() {
+		return LOG_INFO;
+	}
+
+	/**
+	 * Returns true if debug logging is enabled.
+	 * 
+	 * @return true if debug logging is enabled.
+	 */
+	public static boolean isDebugEnabled() {
+		return LOG_DEBUG;
+	}
+
 	private static String localAddressToString(SocketChannel sc) {
 		try {
 			return sc.getLocalAddress().toString();
@@ -162,9 +233,29 @@ public class Logger {
 
 		String thread = Thread.currentThread().getName();
 
+		return formatHeader(level, time, thread, message);
+	}
+
+	/*
+	 * Formats a message with its header info.
+	 */
+	static String formatHeader(String level, String time, String thread, String message) {
 		return String.join(SEPARATOR, level, time, thread, message);
 	}
 
+	/*
+	 * Writes a message to the normal output, or enqueues it if the normal output is asynchronous.
+	 */
+	private static void log(String level, UnaryOperator<String> color, String message) {
+		AsyncLogWriter async = ASYNC_OUTPUT;
+		if (async != null) {
+			requireNonNull(message);
+			async.offer(LogEvent.of(level, color, message, HEADER_INFO));
+			return;
+		}
+		OUTPUT.println(color.apply(formatLog(level, message)));
+	}
+
 	/**
 	 * Formats a message associated with a SocketChannel.
 	 * 
@@ -228,7 +319,7 @@ public class Logger {
 	 */
 	public static void error(String message) {
 		if (LOG_ERROR) {
-			OUTPUT.println(colorRed(formatLog("ERROR", message)));
+			log("ERROR", Colorator::colorRed, message);
 		}
 	}
 
@@ -240,7 +331,7 @@ public class Logger {
 	 */
 	public static void warning(String message) {
 		if (LOG_WARNING) {
-			OUTPUT.println(colorYellow(formatLog("WARNING", message)));
+			log("WARNING", Colorator::colorYellow, message);
 		}
 	}
 
@@ -252,7 +343,7 @@ public class Logger {
 	 */
 	public static void info(String message) {
 		if (LOG_INFO) {
-			OUTPUT.println(colorGreen(formatLog("INFO", message)));
+			log("INFO", Colorator::colorGreen, message);
 		}
 	}
 
@@ -264,7 +355,106 @@ public class Logger {
 	 */
 	public static void debug(String message) {
 		if (LOG_DEBUG) {
-			OUTPUT.println(colorPurple(formatLog("DEBUG", message)));
+			log("DEBUG", Colorator::colorPurple, message);
+		}
+	}
+
+	/**
+	 * Logs an error message to the logger normal output. The message is only built if error logging is enabled.
+	 * 
+	 * @param supplier
+	 *            The supplier of the message.
+	 */
+	public static void error(Supplier<String> supplier) {
+		if (LOG_ERROR) {
+			error(supplier.get());
+		}
+	}
+
+	/**
+	 * Logs a warning message to the logger normal output. The message is only built if warning logging is enabled.
+	 * 
+	 * @param supplier
+	 *            The supplier of the message.
+	 */
+	public static void warning(Supplier<String> supplier) {
+		if (LOG_WARNING) {
+			warning(supplier.get());
+		}
+	}
+
+	/**
+	 * Logs an informative message to the logger normal output. The message is only built if info logging is enabled.
+	 * 
+	 * @param supplier
+	 *            The supplier of the message.
+	 */
+	public static void info(Supplier<String> supplier) {
+		if (LOG_INFO) {
+			info(supplier.get());
+		}
+	}
+
+	/**
+	 * Logs a debug message to the logger normal output. The message is only built if debug logging is enabled.
+	 * 
+	 * @param supplier
+	 *            The supplier of the message.
+	 */
+	public static void debug(Supplier<String> supplier) {
+		if (LOG_DEBUG) {
+			debug(supplier.get());
+		}
+	}
+
+	/**
+	 * Logs a network request argument as an informative message. The message is only formatted if info logging is
+	 * enabled.
+	 * 
+	 * @param sc
+	 *            The channel.
+	 * @param type
+	 *            The direction of the request.
+	 * @param name
+	 *            The name of the argument.
+	 * @param value
+	 *            The value of the argument.
+	 */
+	public static void infoNetworkRequest(SocketChannel sc, NetworkLogType type, String name, Object value) {
+		if (LOG_INFO) {
+			info(formatNetworkRequest(sc, type, name + " : " + value));
+		}
+	}
+
+	/**
+	 * Logs a message associated with a SocketChannel as a debug message. The message is only formatted if debug logging
+	 * is enabled.
+	 * 
+	 * @param sc
+	 *            The channel.
+	 * @param message
+	 *            The message.
+	 */
+	public static void debugNetworkData(SocketChannel sc, String message) {
+		if (LOG_DEBUG) {
+			debug(formatNetworkData(sc, message));
+		}
+	}
+
+	/**
+	 * Logs a named value associated with a SocketChannel as a debug message. The message is only formatted if debug
+	 * logging is enabled.
+	 * 
+	 * @param sc
+	 *            The channel.
+	 * @param name
+	 *            The name of the value.
+	 * @param value
+	 *            The value.
+	 */
+	public static void debugNetworkData(SocketChannel sc, String name, Object value) {
+		if (LOG_DEBUG) {
+			debug(formatNetworkData(sc, name + " : " + value));
 		}
 	}
 
@@ -276,11 +466,23 @@ public class Logger {
 	 */
 	public static void exception(Exception exception) {
 		requireNonNull(exception);
-		if (LOG_EXCEPTION) {
-			EXCEPT.println("--------------------------------------------------------------------------------");
-			exception.printStackTrace(EXCEPT);
-			EXCEPT.println("--------------------------------------------------------------------------------");
+		if (!LOG_EXCEPTION) {
+			return;
+		}
+		AsyncLogWriter async = ASYNC_EXCEPT;
+		if (async != null) {
+			StringWriter trace = new StringWriter();
+			try (PrintWriter writer = new PrintWriter(trace)) {
+				writer.println(SEPARATOR_LINE);
+				exception.printStackTrace(writer);
+				writer.print(SEPARATOR_LINE);
+			}
+			async.offer(LogEvent.raw(trace.toString()));
+			return;
 		}
+		EXCEPT.println(SEPARATOR_LINE);
+		exception.printStackTrace(EXCEPT);
+		EXCEPT.println(SEPARATOR_LINE);
 	}
 
 }
@@ -22,6 +22,26 @@ public enum ErrorType {
 	 */
 	USRNOTPVREQ("USER NOT PRIVATE REQUESTING"),
 
+	/**
+	 * The server has reached its maximum number of clients.
+	 */
+	SRVFULL("SERVER FULL"),
+
+	/**
+	 * The server has too many clients waiting for authentication.
+	 */
+	SRVBUSY("SERVER BUSY"),
+
+	/**
+	 * The address of the client has reached its maximum number of connections.
+	 */
+	ADDRLIMIT("TOO MANY CONNECTIONS FROM THIS ADDRESS"),
+
+	/**
+	 * The client did not authenticate in time.
+	 */
+	AUTHTIMEOUT("AUTHENTICATION TIMEOUT"),
+
 	;
 
 	private final String description;
@@ -0,0 +1,266 @@
+package fr.upem.matou.shared.network;
+
+import static java.util.Objects.requireNonNull;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import fr.upem.matou.shared.network.NetworkProtocol.Argument;
+import fr.upem.matou.shared.network.NetworkProtocol.Communicator;
+
+/**
+ * This class decodes the requests of a connection in place, from its read buffer. The decoding is driven by the
+ * argument schema of each {@link NetworkProtocol} : the decoder checks the type and the size arguments of the request
+ * at the position of the buffer, and records where each argument is. The arguments are then read directly from the
+ * buffer.
+ *
+ * The decoding is incremental : when a request is not complete, the arguments already checked are not checked again by
+ * the next call. The decoder never allocates, except the methods that explicitly return a new object (getString,
+ * getUsername and getAddress).
+ *
+ * This class is not thread-safe.
+ */
+public class FrameDecoder {
+
+	/**
+	 * Describes the result of a decoding.
+	 */
+	public static enum Status {
+
+		/**
+		 * The request is complete : its arguments can be read.
+		 */
+		COMPLETE,
+
+		/**
+		 * The request is not complete yet.
+		 */
+		INCOMPLETE,
+
+		/**
+		 * The type of the request is unknown, or is not expected from this sender.
+		 */
+		INVALID_PROTOCOL,
+
+		/**
+		 * A size argument of the request is not valid.
+		 */
+		INVALID_SIZE;
+
+	}
+
+	private static final Charset PROTOCOL_CHARSET = NetworkCommunication.getProtocolCharset();
+	private static final int MAX_ARGUMENTS = maxArguments();
+
+	private final ByteBuffer bb;
+	private final Communicator source;
+	private final Communicator target;
+	private final int[] offsets = new int[MAX_ARGUMENTS]; // Offsets of the arguments from the start of the request
+	private final int[] sizes = new int[MAX_ARGUMENTS]; // Sizes of the arguments
+
+	private NetworkProtocol protocol = null; // null while the type is not decoded
+	private int start; // Position of the request in the buffer
+	private int argument = 0; // Next argument to check
+	private int checked = 0; // Length of the checked part of the request
+
+	/*
+	 * Returns the largest number of arguments of a request.
+	 */
+	private static int maxArguments() {
+		int max = 0;
+		for (NetworkProtocol protocol : NetworkProtocol.values()) {
+			max = Math.max(max, protocol.getArguments().length);
+		}
+		return max;
+	}
+
+	/**
+	 * Creates a new decoder of the requests sent by "source" to "target".
+	 *
+	 * @param bb
+	 *            The read buffer of the connection. It must be in read mode when the decoder is used.
+	 * @param source
+	 *            The sender of the requests.
+	 * @param target
+	 *            The receiver of the requests.
+	 */
+	public FrameDecoder(ByteBuffer bb, Communicator source, Communicator target) {
+		this.bb = requireNonNull(bb);
+		this.source = requireNonNull(source);
+		this.target = requireNonNull(target);
+	}
+
+	/**
+	 * Decodes the request at the position of the buffer. The buffer is not modified : once the request is processed,
+	 * {@link #next()} moves the position after it. If the request is not complete, the buffer may be compacted before
+	 * the next call.
+	 *
+	 * @return The status of the request.
+	 */
+	public Status decode() {
+		start = bb.position();
+		int available = bb.remaining();
+
+		if (protocol == null) {
+			if (available < Integer.BYTES) {
+				return Status.INCOMPLETE;
+			}
+			NetworkProtocol decoded = NetworkProtocol.byOrdinal(bb.getInt(start));
+			if (decoded == null || !decoded.isSentBy(source, target)) {
+				return Status.INVALID_PROTOCOL;
+			}
+			protocol = decoded;
+			argument = 0;
+			checked = Integer.BYTES;
+		}
+
+		Argument[] arguments = protocol.getArguments();
+		while (argument < arguments.length) {
+			Argument type = arguments[argument];
+			int offset = checked;
+			int size;
+			if (type.isSized()) {
+				if (available - offset < Integer.BYTES) {
+					return Status.INCOMPLETE;
+				}
+				size = bb.getInt(start + offset);
+				if (!type.isValidSize(size)) {
+					return Status.INVALID_SIZE;
+				}
+				offset += Integer.BYTES;
+			} else {
+				size = type.getSize();
+			}
+			if (available - offset < size) {
+				return Status.INCOMPLETE;
+			}
+			offsets[argument] = offset;
+			sizes[argument] = size;
+			checked = offset + size;
+			argument++;
+		}
+		return Status.COMPLETE;
+	}
+
+	/**
+	 * Moves the position of the buffer after the complete request and prepares the decoding of the next request.
+	 */
+	public void next() {
+		bb.position(start + checked);
+		protocol = null;
+		argument = 0;
+		checked = 0;
+	}
+
+	/**
+	 * Returns the type of the current request.
+	 *
+	 * @return The type of the request, or null if it is not decoded yet.
+	 */
+	public NetworkProtocol getProtocol() {
+		return protocol;
+	}
+
+	/**
+	 * Returns the position in the buffer of an argument of the current complete request (after its size).
+	 *
+	 * @param index
+	 *            The index of the argument.
+	 * @return The position of the argument.
+	 */
+	public int getPosition(int index) {
+		return start + offsets[index];
+	}
+
+	/**
+	 * Returns the size of an argument of the current complete request (without its size).
+	 *
+	 * @param index
+	 *            The index of the argument.
+	 * @return The size of the argument in bytes.
+	 */
+	public int getSize(int index) {
+		return sizes[index];
+	}
+
+	/**
+	 * Returns a byte argument of the current complete request.
+	 *
+	 * @param index
+	 *            The index of the argument.
+	 * @return The value of the argument.
+	 */
+	public byte getByte(int index) {
+		return bb.get(getPosition(index));
+	}
+
+	/**
+	 * Returns an integer argument of the current complete request.
+	 *
+	 * @param index
+	 *            The index of the argument.
+	 * @return The value of the argument.
+	 */
+	public int getInt(int index) {
+		return bb.getInt(getPosition(index));
+	}
+
+	/**
+	 * Returns a long argument of the current complete request.
+	 *
+	 * @param index
+	 *            The index of the argument.
+	 * @return The value of the argument.
+	 */
+	public long getLong(int index) {
+		return bb.getLong(getPosition(index));
+	}
+
+	/**
+	 * Decodes a string argument of the current complete request with the protocol charset.
+	 *
+	 * @param index
+	 *            The index of the argument.
+	 * @return A new string.
+	 */
+	public String getString(int index) {
+		ByteBuffer view = bb.duplicate();
+		int position = getPosition(index);
+		view.limit(position + sizes[index]).position(position);
+		return PROTOCOL_CHARSET.decode(view).toString();
+	}
+
+	/**
+	 * Decodes a username argument of the current complete request.
+	 *
+	 * @param index
+	 *            The index of the argument.
+	 * @return A new username.
+	 */
+	public Username getUsername(int index) {
+		return new Username(getString(index));
+	}
+
+	/**
+	 * Decodes an address argument of the current complete request.
+	 *
+	 * @param index
+	 *            The index of the argument.
+	 * @return A new address.
+	 */
+	public InetAddress getAddress(int index) {
+		byte[] address = new byte[sizes[index]];
+		int position = getPosition(index);
+		for (int i = 0; i < address.length; i++) {
+			address[i] = bb.get(position + i);
+		}
+		try {
+			return InetAddress.getByAddress(address);
+		} catch (UnknownHostException e) {
+			throw new AssertionError("The size of the address is checked", e);
+		}
+	}
+
+}
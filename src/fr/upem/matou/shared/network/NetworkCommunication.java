@@ -4,7 +4,7 @@ import static java.util.Objects.requireNonNull;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.SocketChannel;
+import java.nio.channels.Channel;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.util.Optional;
@@ -61,6 +61,65 @@ public class NetworkCommunication {
 		return message.chars().allMatch(NetworkCommunication::isValidMessageCharacter);
 	}
 
+	/**
+	 * Returns whether this encoded message has a valid content or not, without decoding it : the bytes must be
+	 * well-formed UTF-8 and no character may be a control character. The size of the message is not checked and the
+	 * buffer is not altered.
+	 * 
+	 * @param encoded
+	 *            The encoded message (in read mode).
+	 * @return true if the content is valid or false otherwise.
+	 */
+	public static boolean checkEncodedMessageContent(ByteBuffer encoded) { // O(n)
+		requireNonNull(encoded);
+		int limit = encoded.limit();
+		int i = encoded.position();
+		while (i < limit) {
+			int first = encoded.get(i) & 0xFF;
+			int length;
+			int codePoint;
+			int minimum; // Smallest code point of this length (shorter forms are overlong)
+			if (first < 0x80) {
+				length = 1;
+				codePoint = first;
+				minimum = 0;
+			} else if ((first & 0xE0) == 0xC0) {
+				length = 2;
+				codePoint = first & 0x1F;
+				minimum = 0x80;
+			} else if ((first & 0xF0) == 0xE0) {
+				length = 3;
+				codePoint = first & 0x0F;
+				minimum = 0x800;
+			} else if ((first & 0xF8) == 0xF0) {
+				length = 4;
+				codePoint = first & 0x07;
+				minimum = 0x10000;
+			} else { // Continuation byte or invalid byte
+				return false;
+			}
+			if (limit - i < length) { // Truncated sequence
+				return false;
+			}
+			for (int j = 1; j < length; j++) {
+				int next = encoded.get(i + j) & 0xFF;
+				if ((next & 0xC0) != 0x80) {
+					return false;
+				}
+				codePoint = (codePoint << 6) | (next & 0x3F);
+			}
+			if (codePoint < minimum || codePoint > Character.MAX_CODE_POINT
+					|| (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+				return false;
+			}
+			if (!isValidMessageCharacter(codePoint)) {
+				return false;
+			}
+			i += length;
+		}
+		return true;
+	}
+
 	/*
 	 * Returns whether this encoded username is valid or not. The buffer is not decoded or altered.
 	 */
@@ -185,15 +244,15 @@ public class NetworkCommunication {
 	}
 
 	/**
-	 * Closes the SocketChannel without throwing exceptions.
+	 * Closes the channel without throwing exceptions.
 	 * 
-	 * @param sc
-	 *            The SocketChannel to close.
+	 * @param channel
+	 *            The channel to close.
 	 */
-	public static void silentlyClose(SocketChannel sc) {
-		requireNonNull(sc);
+	public static void silentlyClose(Channel channel) {
+		requireNonNull(channel);
 		try {
-			sc.close();
+			channel.close();
 		} catch (@SuppressWarnings("unused") IOException __) {
 			// Ignored
 		}
@@ -3,6 +3,13 @@ package fr.upem.matou.shared.network;
 import static fr.upem.matou.shared.network.NetworkCommunication.FILENAME_MAX_SIZE;
 import static fr.upem.matou.shared.network.NetworkCommunication.MESSAGE_MAX_SIZE;
 import static fr.upem.matou.shared.network.NetworkCommunication.USERNAME_MAX_SIZE;
+import static fr.upem.matou.shared.network.NetworkProtocol.Argument.ADDRESS;
+import static fr.upem.matou.shared.network.NetworkProtocol.Argument.BYTE;
+import static fr.upem.matou.shared.network.NetworkProtocol.Argument.FILENAME;
+import static fr.upem.matou.shared.network.NetworkProtocol.Argument.INT;
+import static fr.upem.matou.shared.network.NetworkProtocol.Argument.LONG;
+import static fr.upem.matou.shared.network.NetworkProtocol.Argument.MESSAGE;
+import static fr.upem.matou.shared.network.NetworkProtocol.Argument.USERNAME;
 import static fr.upem.matou.shared.network.NetworkProtocol.Communicator.CLIENT;
 import static fr.upem.matou.shared.network.NetworkProtocol.Communicator.SERVER;
 import static java.util.Objects.requireNonNull;
@@ -15,84 +22,105 @@ import java.util.Optional;
 
 /**
  * This class defines the communication protocol types that both server and client have to use in order to meet the
- * protocol requirements.
+ * protocol requirements. Each type declares the schema of its arguments, which is used by {@link FrameDecoder} to
+ * decode the requests.
  */
 public enum NetworkProtocol {
 
 	/**
 	 * Error notification.
 	 */
-	ERROR(SERVER, CLIENT, "ERROR_NOTIFICATION", Integer.BYTES),
+	ERROR(SERVER, CLIENT, "ERROR_NOTIFICATION", INT),
 
 	/**
 	 * Connection request.
 	 */
-	COREQ(CLIENT, SERVER, "PUBLIC_CONNECTION_REQUEST", Integer.BYTES, USERNAME_MAX_SIZE),
+	COREQ(CLIENT, SERVER, "PUBLIC_CONNECTION_REQUEST", USERNAME),
 
 	/**
 	 * Connection response.
 	 */
-	CORES(SERVER, CLIENT, "PUBLIC_CONNECTION_RESPONSE", Integer.BYTES, Byte.BYTES),
+	CORES(SERVER, CLIENT, "PUBLIC_CONNECTION_RESPONSE", BYTE),
 
 	/**
 	 * Connection notification.
 	 */
-	CONOTIF(SERVER, CLIENT, "PUBLIC_CONNECTION_NOTIFICATION", Integer.BYTES, USERNAME_MAX_SIZE),
+	CONOTIF(SERVER, CLIENT, "PUBLIC_CONNECTION_NOTIFICATION", USERNAME),
 
 	/**
 	 * Public message.
 	 */
-	MSG(CLIENT, SERVER, "PUBLIC_MESSAGE", Integer.BYTES, MESSAGE_MAX_SIZE),
+	MSG(CLIENT, SERVER, "PUBLIC_MESSAGE", MESSAGE),
 
 	/**
 	 * Public message forwarding.
 	 */
-	MSGBC(SERVER, CLIENT, "PUBLIC_MESSAGE_BROADCAST", Integer.BYTES, USERNAME_MAX_SIZE, Integer.BYTES, MESSAGE_MAX_SIZE),
+	MSGBC(SERVER, CLIENT, "PUBLIC_MESSAGE_BROADCAST", USERNAME, MESSAGE),
 
 	/**
 	 * Disconnection notification.
 	 */
-	DISCONOTIF(SERVER, CLIENT, "PUBLIC_DISCONNECTION_NOTIFICATION", Integer.BYTES, USERNAME_MAX_SIZE),
+	DISCONOTIF(SERVER, CLIENT, "PUBLIC_DISCONNECTION_NOTIFICATION", USERNAME),
 
 	/**
 	 * Private connection request.
 	 */
-	PVCOREQ(CLIENT, SERVER, "PRIVATE_CONNECTION_REQUEST", Integer.BYTES, USERNAME_MAX_SIZE),
+	PVCOREQ(CLIENT, SERVER, "PRIVATE_CONNECTION_REQUEST", USERNAME),
 
 	/**
 	 * Private connection request notification.
 	 */
-	PVCOREQNOTIF(SERVER, CLIENT, "PRIVATE_CONNECTION_REQUEST_NOTIFICATION", Integer.BYTES, USERNAME_MAX_SIZE),
+	PVCOREQNOTIF(SERVER, CLIENT, "PRIVATE_CONNECTION_REQUEST_NOTIFICATION", USERNAME),
 
 	/**
 	 * Private connection acceptation.
 	 */
-	PVCOACC(CLIENT, SERVER, "PRIVATE_CONNECTION_ACCEPTATION", Integer.BYTES, USERNAME_MAX_SIZE),
+	PVCOACC(CLIENT, SERVER, "PRIVATE_CONNECTION_ACCEPTATION", USERNAME),
 
 	/**
 	 * Private connection port transfer.
 	 */
-	PVCOPORT(CLIENT, SERVER, "PRIVATE_CONNECTION_PORT_TRANSFER", Integer.BYTES, USERNAME_MAX_SIZE, Integer.BYTES, Integer.BYTES),
+	PVCOPORT(CLIENT, SERVER, "PRIVATE_CONNECTION_PORT_TRANSFER", USERNAME, INT, INT),
 
 	/**
 	 * Private connection establishement to source.
 	 */
-	PVCOESTASRC(SERVER, CLIENT, "PRIVATE_CONNECTION_ESTABLISHEMENT_SOURCE", Integer.BYTES, USERNAME_MAX_SIZE, Integer.BYTES, 16),
+	PVCOESTASRC(SERVER, CLIENT, "PRIVATE_CONNECTION_ESTABLISHEMENT_SOURCE", USERNAME, ADDRESS),
 
 	/**
 	 * Private connection establishement to destination.
 	 */
-	PVCOESTADST(SERVER, CLIENT, "PRIVATE_CONNECTION_ESTABLISHEMENT_DESTINATION", Integer.BYTES, USERNAME_MAX_SIZE, Integer.BYTES, 16, Integer.BYTES, Integer.BYTES),
+	PVCOESTADST(SERVER, CLIENT, "PRIVATE_CONNECTION_ESTABLISHEMENT_DESTINATION", USERNAME, ADDRESS, INT, INT),
 
 	/**
 	 * Private message.
 	 */
-	PVMSG(CLIENT, CLIENT, "PRIVATE_MESSAGE", Integer.BYTES, MESSAGE_MAX_SIZE),
+	PVMSG(CLIENT, CLIENT, "PRIVATE_MESSAGE", MESSAGE),
 
 	/**
 	 * Private file.
 	 */
-	PVFILE(CLIENT, CLIENT, "PRIVATE_FILE", Integer.BYTES, FILENAME_MAX_SIZE, Long.BYTES), /* + FileChunks */
+	PVFILE(CLIENT, CLIENT, "PRIVATE_FILE", FILENAME, LONG), /* + FileChunks */
+
+	/**
+	 * Part of a private file sent over several connections.
+	 */
+	PVFILEPART(CLIENT, CLIENT, "PRIVATE_FILE_PART", INT, FILENAME, LONG, LONG, LONG, BYTE), /* + FileChunks */
+
+	/**
+	 * Request for a missing part of a private file.
+	 */
+	PVFILERESUME(CLIENT, CLIENT, "PRIVATE_FILE_RESUME", INT, FILENAME, LONG, LONG, LONG),
+
+	/**
+	 * Checksum of the content of the last private file or part of a private file.
+	 */
+	PVFILECHECKSUM(CLIENT, CLIENT, "PRIVATE_FILE_CHECKSUM", BYTE, LONG),
+
+	/**
+	 * Private file followed by its checksum.
+	 */
+	PVFILECHECKED(CLIENT, CLIENT, "PRIVATE_FILE_CHECKED", FILENAME, LONG, BYTE), /* + FileChunks */
 
 	;
 
@@ -113,23 +141,128 @@ public enum NetworkProtocol {
 
 	}
 
+	/**
+	 * Describes the type of a request argument.
+	 */
+	public static enum Argument {
+
+		/**
+		 * A byte.
+		 */
+		BYTE(Byte.BYTES, false),
+
+		/**
+		 * An integer.
+		 */
+		INT(Integer.BYTES, false),
+
+		/**
+		 * A long.
+		 */
+		LONG(Long.BYTES, false),
+
+		/**
+		 * An encoded username, preceded by its size.
+		 */
+		USERNAME(USERNAME_MAX_SIZE, true),
+
+		/**
+		 * An encoded message, preceded by its size.
+		 */
+		MESSAGE(MESSAGE_MAX_SIZE, true),
+
+		/**
+		 * An encoded file name, preceded by its size.
+		 */
+		FILENAME(FILENAME_MAX_SIZE, true),
+
+		/**
+		 * An IPv4 or IPv6 address, preceded by its size.
+		 */
+		ADDRESS(16, true);
+
+		private final int size; // Size of a fixed argument, or maximum size of a sized argument
+		private final boolean sized; // If the argument is preceded by its size
+
+		private Argument(int size, boolean sized) {
+			this.size = size;
+			this.sized = sized;
+		}
+
+		/*
+		 * Returns true if this argument is preceded by its size.
+		 */
+		boolean isSized() {
+			return sized;
+		}
+
+		/*
+		 * Returns the size of a fixed argument, or the maximum size of a sized argument.
+		 */
+		int getSize() {
+			return size;
+		}
+
+		/*
+		 * Returns true if the given size is valid for a sized argument.
+		 */
+		boolean isValidSize(int value) {
+			if (this == ADDRESS) {
+				return value == 4 || value == 16;
+			}
+			return value > 0 && value <= size;
+		}
+
+	}
+
+	private static final NetworkProtocol[] VALUES = values();
+
 	private final Communicator source;
 	private final Communicator target;
 	private final String description;
+	private final Argument[] arguments;
 	private final List<Integer> argumentSizes;
 
-	private NetworkProtocol(Communicator source, Communicator target, String description, Integer... sizes) {
+	private NetworkProtocol(Communicator source, Communicator target, String description, Argument... arguments) {
 		this.source = source;
 		this.target = target;
 		this.description = description;
+		this.arguments = arguments;
 		ArrayList<Integer> args = new ArrayList<>();
 		args.add(Integer.BYTES); // Size of the protocol type (minimal request size)
-		for (int size : sizes) {
-			args.add(size);
+		for (Argument argument : arguments) {
+			if (argument.isSized()) {
+				args.add(Integer.BYTES);
+			}
+			args.add(argument.getSize());
 		}
 		argumentSizes = Collections.unmodifiableList(args);
 	}
 
+	/*
+	 * Returns the schema of the arguments of this type. The array must not be modified.
+	 */
+	Argument[] getArguments() {
+		return arguments;
+	}
+
+	/*
+	 * Returns true if requests of this type are sent by "source" to "target".
+	 */
+	boolean isSentBy(Communicator from, Communicator to) {
+		return source == from && target == to;
+	}
+
+	/*
+	 * Returns the protocol associated with this ordinal number, or null if it is not valid.
+	 */
+	static NetworkProtocol byOrdinal(int ordinal) {
+		if (ordinal < 0 || ordinal >= VALUES.length) {
+			return null;
+		}
+		return VALUES[ordinal];
+	}
+
 	@Override
 	public String toString() {
 		return "[" + ordinal() + " - " + name() + " - " + source + " => " + target + " - " + description + "]";
@@ -143,12 +276,7 @@ public enum NetworkProtocol {
 	 * @return The protocol if the ordinal number is valid.
 	 */
 	public static Optional<NetworkProtocol> getProtocol(int ordinal) {
-		NetworkProtocol[] values = values();
-		if (ordinal < 0 || ordinal >= values.length) {
-			return Optional.empty();
-		}
-		NetworkProtocol protocol = values[ordinal];
-		return Optional.of(protocol);
+		return Optional.ofNullable(byOrdinal(ordinal));
 	}
 
 	/**
@@ -2,34 +2,72 @@ package fr.upem.matou.shared.network;
 
 import static java.util.Objects.requireNonNull;
 
+import java.nio.ByteBuffer;
+
 /**
  * This object represents a Username. A username is a string where case is ignored.
+ *
+ * A Username is an immutable value : its case-folded key, its hash code and its encoding with the protocol charset are
+ * computed once, when it is created. Comparing, hashing and encoding a username therefore never allocates. A program
+ * should keep one instance per user and reuse it.
  */
 public class Username {
 	private final String name;
+	private final String key; // Case-folded name
+	private final int hash;
+	private final byte[] encoded;
 
 	/**
 	 * Returns a new username from a string.
-	 * 
+	 *
 	 * @param name
 	 *            The username
 	 */
 	public Username(String name) {
 		this.name = requireNonNull(name);
+		this.key = name.toLowerCase();
+		this.hash = key.hashCode();
+		ByteBuffer bb = NetworkCommunication.getProtocolCharset().encode(name);
+		this.encoded = new byte[bb.remaining()];
+		bb.get(encoded);
+	}
+
+	/**
+	 * Returns the size of this username encoded with the protocol charset.
+	 *
+	 * @return The size in bytes.
+	 */
+	public int getEncodedSize() {
+		return encoded.length;
+	}
+
+	/**
+	 * Appends this username encoded with the protocol charset to a buffer, without any allocation.
+	 *
+	 * @param bb
+	 *            The buffer (in write mode).
+	 * @throws java.nio.BufferOverflowException
+	 *             If there is not enough space in the buffer.
+	 */
+	public void putEncoded(ByteBuffer bb) {
+		bb.put(encoded);
 	}
 
 	@Override
 	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
 		if (!(obj instanceof Username)) {
 			return false;
 		}
 		Username username = (Username) obj;
-		return name.toLowerCase().equals(username.name.toLowerCase());
+		return hash == username.hash && key.equals(username.key);
 	}
 
 	@Override
 	public int hashCode() {
-		return name.toLowerCase().hashCode();
+		return hash;
 	}
 
 	@Override